@@ -0,0 +1,180 @@
+package com.rsquared.taskmaster;
+
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// With write-ahead logging, reads on one thread should finish while another thread is in the
+// middle of a long batched write, seeing the tasks as they were before it; a checkpoint should
+// leave the WAL file no bigger than the journal size limit; and a new task queued for writing
+// should get an ID straight away that no other insert can take
+@RunWith(AndroidJUnit4.class)
+public class TaskDatabaseConcurrencyTest {
+
+  private static final String logTag = "TaskDatabaseConcurrency";
+  private static final int taskCount = 2_000;
+  private static final int readCount = 20;
+  private static final long writeTimeoutSeconds = 60;
+  private static final long journalSizeLimit = 1_048_576; // PRAGMA_JOURNAL_SIZE_LIMIT
+
+  private Context context;
+  private TaskDatabaseHelper taskDatabaseHelper;
+
+  @Before
+  public void createDatabase() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (int i = 0; i < taskCount; i++) {
+            taskDatabaseHelper.addTask(new Task("Before " + i, i % 100 + 1, i % 97 + 1, false));
+          }
+        });
+  }
+
+  @After
+  public void closeAndDeleteDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  @Test
+  public void readsDoNotWaitForALongWrite() throws InterruptedException {
+    assertTrue(taskDatabaseHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+    List<Task> tasks = new ArrayList<>(taskDatabaseHelper.getTasks(true));
+    CountDownLatch writeStarted = new CountDownLatch(1);
+    CountDownLatch readsDone = new CountDownLatch(1);
+    CountDownLatch writeCommitted = new CountDownLatch(1);
+    Throwable[] writeError = {null};
+
+    // Rename every task in one transaction, which is held open until the reads are done (the
+    // timeout only keeps a broken test from hanging)
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                taskDatabaseHelper.runInTransaction(
+                    () -> {
+                      for (Task task : tasks) {
+                        task.setLabel("After");
+                        taskDatabaseHelper.updateTask(task);
+                      }
+                      writeStarted.countDown();
+                      try {
+                        readsDone.await(writeTimeoutSeconds, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                      }
+                    });
+                writeCommitted.countDown();
+              } catch (Throwable e) {
+                writeError[0] = e;
+                writeStarted.countDown();
+              }
+            });
+    writer.start();
+    assertTrue(writeStarted.await(writeTimeoutSeconds, TimeUnit.SECONDS));
+    assertNull(writeError[0]);
+
+    try {
+      for (int read = 0; read < readCount; read++) {
+        List<Task> readTasks = new ArrayList<>(taskDatabaseHelper.getTasks(true));
+
+        // Nothing of the open transaction shows
+        assertEquals(taskCount, readTasks.size());
+        for (Task task : readTasks) {
+          assertTrue(task.getLabel(), task.getLabel().startsWith("Before"));
+        }
+      }
+
+      // Every read finished with the write still open: a read that waited for the writer would
+      // only have returned after the timeout let the transaction commit
+      assertEquals(1, writeCommitted.getCount());
+      assertTrue(writer.isAlive());
+    } finally {
+      readsDone.countDown();
+      writer.join(writeTimeoutSeconds * 1_000);
+    }
+    assertNull(writeError[0]);
+    assertEquals(0, writeCommitted.getCount());
+
+    // Once committed, the write is seen
+    for (Task task : taskDatabaseHelper.getTasks(true)) {
+      assertEquals("After", task.getLabel());
+    }
+  }
+
+  @Test
+  public void checkpointKeepsTheLogBounded() {
+    // Write well past the autocheckpoint size, so the WAL file grows
+    StringBuilder longLabel = new StringBuilder();
+    for (int i = 0; i < 1_000; i++) {
+      longLabel.append('x');
+    }
+    List<Task> tasks = new ArrayList<>(taskDatabaseHelper.getTasks(true));
+    for (int round = 0; round < 5; round++) {
+      String label = longLabel.toString() + round;
+      taskDatabaseHelper.runInTransaction(
+          () -> {
+            for (Task task : tasks) {
+              task.setLabel(label);
+              taskDatabaseHelper.updateTask(task);
+            }
+          });
+    }
+
+    // After a checkpoint, the next write starts the log over and trims it to the limit (with
+    // TRUNCATE it is emptied right away)
+    taskDatabaseHelper.checkpoint();
+    taskDatabaseHelper.addTask(new Task("After the checkpoint", 50, 50, false));
+    File logFile = new File(context.getDatabasePath(DATABASE_NAME).getPath() + "-wal");
+    Log.i(logTag, "WAL file after the checkpoint: " + logFile.length() + " bytes");
+    assertTrue(logFile.length() + " bytes", logFile.length() <= journalSizeLimit);
+  }
+
+  @Test
+  public void queuedNewTasksKeepTheirReservedIDs() {
+    TaskWriteQueue taskWriteQueue = new TaskWriteQueue(taskDatabaseHelper);
+    try {
+      Task queued = new Task("Queued", 50, 50, false);
+      taskWriteQueue.enqueueAdd(queued);
+      assertEquals(taskCount + 1, queued.getID());
+      assertTrue(taskWriteQueue.hasUnwrittenChanges(queued.getID()));
+
+      // An ordinary insert in the meantime goes past the whole reserved block
+      long addedID = taskDatabaseHelper.addTask(new Task("Added", 50, 50, false));
+      assertEquals(taskCount + TaskWriteQueue.reservedIDCount + 1, addedID);
+
+      // Changes before the insert is written are merged into it
+      queued.setLabel("Queued and edited");
+      taskWriteQueue.enqueue(queued);
+      taskWriteQueue.flush();
+      String label = null;
+      for (Task task : taskDatabaseHelper.getTasks(false)) {
+        if (task.getID() == queued.getID()) {
+          label = task.getLabel();
+        }
+      }
+      assertEquals("Queued and edited", label);
+      assertEquals(taskCount + 2, taskDatabaseHelper.getTasks(false).size());
+    } finally {
+      taskWriteQueue.close();
+    }
+  }
+}
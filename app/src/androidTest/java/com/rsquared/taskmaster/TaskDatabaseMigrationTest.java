@@ -0,0 +1,276 @@
+package com.rsquared.taskmaster;
+
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Upgrading a populated version 1 database should keep every task and leave the same schema a
+// fresh install gets, and the incomplete-task query should go from a table scan to an index
+// search (checked with EXPLAIN QUERY PLAN).  Replaying migrations must change nothing, and an
+// older version must refuse to open a newer database.
+@RunWith(AndroidJUnit4.class)
+public class TaskDatabaseMigrationTest {
+
+  private static final int taskCount = 500;
+
+  private Context context;
+  private TaskDatabaseHelper taskDatabaseHelper;
+
+  @Before
+  public void deleteDatabase() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  @After
+  public void closeAndDeleteDatabase() {
+    if (taskDatabaseHelper != null) {
+      taskDatabaseHelper.close();
+    }
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  // A database as version 1 of the app left it: just the tasks table, every third task done
+  private void createVersion1Database() {
+    File file = context.getDatabasePath(DATABASE_NAME);
+    file.getParentFile().mkdirs();
+    SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null);
+    try {
+      database.execSQL(TaskDatabaseContract.Table.CREATE_TABLE);
+      database.beginTransaction();
+      try {
+        for (int id = 1; id <= taskCount; id++) {
+          database.execSQL(
+              "INSERT INTO tasks (_id, task, urgency, importance, completed) VALUES (?,?,?,?,?)",
+              new Object[] {id, "Task " + id, id % 100 + 1, id * 7 % 100 + 1, id % 3 == 0 ? 1 : 0});
+        }
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
+      }
+      database.setVersion(1);
+    } finally {
+      database.close();
+    }
+  }
+
+  private static String queryPlan(SQLiteDatabase database, String query, String... args) {
+    StringBuilder plan = new StringBuilder();
+    Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+    try {
+      int detailColumn = cursor.getColumnIndexOrThrow("detail");
+      while (cursor.moveToNext()) {
+        plan.append(cursor.getString(detailColumn)).append('\n');
+      }
+    } finally {
+      cursor.close();
+    }
+    return plan.toString();
+  }
+
+  // Every table, index and trigger, by type and name
+  private static String schema(SQLiteDatabase database) {
+    StringBuilder schema = new StringBuilder();
+    Cursor cursor =
+        database.rawQuery(
+            "SELECT type, name FROM sqlite_master WHERE name NOT LIKE 'sqlite_%' ORDER BY name",
+            null);
+    try {
+      while (cursor.moveToNext()) {
+        schema.append(cursor.getString(0)).append(' ').append(cursor.getString(1)).append('\n');
+      }
+    } finally {
+      cursor.close();
+    }
+    return schema.toString();
+  }
+
+  @Test
+  public void upgradeKeepsEveryTask() {
+    createVersion1Database();
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+
+    Map<Long, Task> tasks = new HashMap<>();
+    for (Task task : taskDatabaseHelper.getTasks(false)) {
+      tasks.put(task.getID(), task);
+    }
+    assertEquals(taskCount, tasks.size());
+    for (long id = 1; id <= taskCount; id++) {
+      Task task = tasks.get(id);
+      assertNotNull(task);
+      assertEquals("Task " + id, task.getLabel());
+      assertEquals(id % 100 + 1, task.getUrgency());
+      assertEquals(id * 7 % 100 + 1, task.getImportance());
+      assertEquals(id % 3 == 0, task.getCompleted());
+    }
+    assertEquals(taskCount - taskCount / 3, taskDatabaseHelper.getTasks(true).size());
+  }
+
+  @Test
+  public void incompleteQuerySwitchesFromScanToIndex() {
+    createVersion1Database();
+    SQLiteDatabase version1 =
+        SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DATABASE_NAME), null);
+    String planBefore;
+    try {
+      planBefore = queryPlan(version1, TaskDatabaseContract.Table.QUERY_TABLE_INCOMPLETE);
+    } finally {
+      version1.close();
+    }
+    assertTrue(planBefore, planBefore.contains("SCAN"));
+    assertFalse(planBefore, planBefore.contains("INDEX"));
+
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    SQLiteDatabase database = taskDatabaseHelper.getReadableDatabase();
+    String planAfter = queryPlan(database, TaskDatabaseContract.Table.QUERY_TABLE_INCOMPLETE);
+    assertTrue(
+        planAfter, planAfter.contains(TaskDatabaseContract.Table.INDEX_INCOMPLETE_RATINGS));
+    assertFalse(planAfter, planAfter.contains("SCAN"));
+
+    // Pages come straight off the index in order, with no sorting step
+    String pagePlan =
+        queryPlan(database, TaskDatabaseContract.Table.QUERY_INCOMPLETE_FIRST_PAGE, "100");
+    assertTrue(pagePlan, pagePlan.contains(TaskDatabaseContract.Table.INDEX_INCOMPLETE_RATINGS));
+    assertFalse(pagePlan, pagePlan.contains("TEMP B-TREE"));
+  }
+
+  @Test
+  public void upgradedSchemaMatchesAFreshOne() {
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    String freshSchema = schema(taskDatabaseHelper.getReadableDatabase());
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+
+    createVersion1Database();
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    assertEquals(freshSchema, schema(taskDatabaseHelper.getReadableDatabase()));
+  }
+
+  @Test
+  public void upgradeRetokenizesTheSearchIndex() {
+    // A version 7 database, whose index only folds ASCII letters
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    taskDatabaseHelper.addTask(new Task("\u00c9lan vital", 50, 50, false));
+    SQLiteDatabase database = taskDatabaseHelper.getWritableDatabase();
+    database.execSQL(TaskDatabaseContract.Search.DROP_TABLE);
+    database.execSQL(TaskDatabaseContract.Search.CREATE_TABLE);
+    database.execSQL(TaskDatabaseContract.Search.REBUILD);
+    database.setVersion(7);
+    assertEquals(0, taskDatabaseHelper.searchTasks("\u00e9lan", 10).size());
+    taskDatabaseHelper.close();
+
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    assertEquals(1, taskDatabaseHelper.searchTasks("\u00e9lan", 10).size());
+    taskDatabaseHelper.addTask(new Task("\u00c9tude", 50, 50, false));
+    assertEquals(1, taskDatabaseHelper.searchTasks("\u00e9tude", 10).size());
+  }
+
+  // Every task's ID and completion time, in ID order
+  private static String completionTimes(SQLiteDatabase database) {
+    StringBuilder completionTimes = new StringBuilder();
+    Cursor cursor = database.rawQuery("SELECT _id, completed_at FROM tasks ORDER BY _id", null);
+    try {
+      while (cursor.moveToNext()) {
+        completionTimes
+            .append(cursor.getLong(0))
+            .append(' ')
+            .append(cursor.isNull(1) ? "null" : cursor.getString(1))
+            .append('\n');
+      }
+    } finally {
+      cursor.close();
+    }
+    return completionTimes.toString();
+  }
+
+  @Test
+  public void replayingMigrationsKeepsTheData() {
+    // Earlier builds left the newer schema in place when downgraded, so a later upgrade runs
+    // over it
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    for (int i = 1; i <= 50; i++) {
+      taskDatabaseHelper.addTask(new Task("Replayed task " + i, i, 101 - i, i % 2 == 0));
+    }
+    SQLiteDatabase database = taskDatabaseHelper.getWritableDatabase();
+    database.execSQL("UPDATE tasks SET completed_at=_id*1000 WHERE completed=1"); // long ago
+    String schemaBefore = schema(database);
+    String completionTimesBefore = completionTimes(database);
+    database.setVersion(1);
+    taskDatabaseHelper.close();
+
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    Set<Task> tasks = taskDatabaseHelper.getTasks(false);
+    assertEquals(50, tasks.size());
+    assertEquals(schemaBefore, schema(taskDatabaseHelper.getReadableDatabase()));
+    assertEquals(
+        completionTimesBefore, completionTimes(taskDatabaseHelper.getReadableDatabase()));
+    assertEquals(25, taskDatabaseHelper.getTasks(true).size());
+    assertEquals(50, taskDatabaseHelper.searchTasks("replayed", 100).size());
+  }
+
+  @Test
+  public void upgradeGivesCompletedTasksACompletionTime() {
+    createVersion1Database();
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    Cursor cursor =
+        taskDatabaseHelper
+            .getReadableDatabase()
+            .rawQuery(
+                "SELECT COUNT(*), COUNT(completed_at) FROM tasks WHERE completed=1", null);
+    try {
+      assertTrue(cursor.moveToFirst());
+      assertEquals(taskCount / 3, cursor.getInt(0));
+      assertEquals(taskCount / 3, cursor.getInt(1));
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void downgradeIsRefused() {
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    taskDatabaseHelper.addTask(new Task("Kept", 50, 50, false));
+    taskDatabaseHelper.getWritableDatabase().setVersion(DATABASE_VERSION + 1);
+    taskDatabaseHelper.close();
+
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+    try {
+      taskDatabaseHelper.getWritableDatabase();
+      fail("Opened a database from a newer version");
+    } catch (SQLiteException e) {
+      // expected
+    }
+    taskDatabaseHelper.close();
+
+    // The data is still there for the newer version
+    SQLiteDatabase database =
+        SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DATABASE_NAME), null);
+    try {
+      assertEquals(DATABASE_VERSION + 1, database.getVersion());
+      assertEquals(1, DatabaseUtils.queryNumEntries(database, "tasks"));
+    } finally {
+      database.close();
+    }
+    taskDatabaseHelper = null;
+  }
+}
@@ -0,0 +1,198 @@
+package com.rsquared.taskmaster;
+
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.ID_CLAUSE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.TABLE_NAME;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Label search through the full-text index: prefix matching, case folding beyond ASCII,
+// relevance order, and the index following the tasks table as it changes.  The last test only
+// reports how long searches take on a large table, since timings vary too much from device to
+// device to assert on.
+@RunWith(AndroidJUnit4.class)
+public class TaskSearchTest {
+
+  private static final String logTag = "TaskSearch";
+  private static final int largeTaskCount = 100_000;
+  private static final int timedSearchCount = 21;
+
+  private Context context;
+  private TaskDatabaseHelper taskDatabaseHelper;
+
+  @Before
+  public void createDatabase() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+  }
+
+  @After
+  public void closeAndDeleteDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  private Task addTask(String label) {
+    Task task = new Task(label, 50, 50, false);
+    task.setID(taskDatabaseHelper.addTask(task));
+    return task;
+  }
+
+  private List<String> search(String query, int limit) {
+    List<String> labels = new ArrayList<>();
+    for (Task task : taskDatabaseHelper.searchTasks(query, limit)) {
+      labels.add(task.getLabel());
+    }
+    return labels;
+  }
+
+  // Labels found, in any order
+  private List<String> searchUnordered(String query) {
+    List<String> labels = search(query, 100);
+    Collections.sort(labels);
+    return labels;
+  }
+
+  @Test
+  public void everyQueryWordMustStartAWord() {
+    addTask("Buy groceries and milk");
+    addTask("Milk the goat");
+    addTask("Call grandma");
+    addTask("Semi-skimmed milk");
+
+    assertEquals(Arrays.asList("Buy groceries and milk"), search("gro mil", 10));
+    assertEquals(
+        Arrays.asList("Buy groceries and milk", "Milk the goat", "Semi-skimmed milk"),
+        searchUnordered("MILK"));
+    assertEquals(Arrays.asList("Buy groceries and milk", "Call grandma"), searchUnordered("gr"));
+    assertEquals(Collections.emptyList(), search("ilk", 10)); // not the start of a word
+    assertEquals(Collections.emptyList(), search("milk goat grandma", 10));
+  }
+
+  @Test
+  public void caseAndAccentsAreIgnoredBeyondAscii() {
+    addTask("\u00c9lan vital"); // capital E with an acute accent
+    addTask("Caf\u00e9 au lait");
+    addTask("Clan meeting");
+
+    assertEquals(Arrays.asList("\u00c9lan vital"), search("\u00e9lan", 10));
+    assertEquals(Arrays.asList("\u00c9lan vital"), search("\u00c9LAN", 10));
+    assertEquals(Arrays.asList("\u00c9lan vital"), search("ela", 10));
+    assertEquals(Arrays.asList("Caf\u00e9 au lait"), search("CAF\u00c9", 10));
+    assertEquals(Arrays.asList("Caf\u00e9 au lait"), search("cafe", 10));
+  }
+
+  @Test
+  public void punctuationInTheQueryIsIgnored() {
+    addTask("Fix the car");
+    addTask("Fix or replace the fence");
+
+    assertEquals(Arrays.asList("Fix the car"), search("\"car\" -", 10));
+    assertEquals(Arrays.asList("Fix the car"), search("(fix* car)", 10));
+    assertEquals(Arrays.asList("Fix or replace the fence"), search("fix OR fence", 10));
+    assertEquals(Collections.emptyList(), search("!?* \"\"", 10));
+    assertEquals(Collections.emptyList(), search("", 10));
+  }
+
+  @Test
+  public void moreHitsRankFirst() {
+    addTask("Paint paint paint the shed");
+    addTask("Paint the shed");
+    addTask("Paint the fence");
+    addTask("Tidy the shed");
+
+    // Three hits beat one, and equal scores go to the newest task
+    assertEquals(
+        Arrays.asList("Paint paint paint the shed", "Paint the fence", "Paint the shed"),
+        search("paint", 10));
+    assertEquals(
+        Arrays.asList("Paint paint paint the shed", "Paint the shed"), search("paint shed", 10));
+    assertEquals(
+        Arrays.asList("Tidy the shed", "Paint the shed", "Paint paint paint the shed"),
+        search("the shed", 10));
+  }
+
+  @Test
+  public void indexFollowsUpdatesAndDeletes() {
+    Task task = addTask("Book the dentist");
+    assertEquals(1, search("dentist", 10).size());
+
+    task.setLabel("Book the vet");
+    taskDatabaseHelper.updateTask(task);
+    assertEquals(Collections.emptyList(), search("dentist", 10));
+    assertEquals(Arrays.asList("Book the vet"), search("vet", 10));
+
+    taskDatabaseHelper
+        .getWritableDatabase()
+        .delete(TABLE_NAME, ID_CLAUSE, new String[] {String.valueOf(task.getID())});
+    assertEquals(Collections.emptyList(), search("vet", 10));
+    assertEquals(Collections.emptyList(), search("book", 10));
+  }
+
+  @Test
+  public void archivedTasksAreNotSearched() {
+    addTask("Renew the passport");
+    Task task = new Task("Renew the licence", 50, 50, true);
+    taskDatabaseHelper.addTask(task);
+    taskDatabaseHelper.archiveCompletedTasks(Long.MAX_VALUE, 100);
+    assertEquals(Arrays.asList("Renew the passport"), search("renew", 10));
+  }
+
+  @Test
+  public void limitKeepsTheBestMatches() {
+    for (int i = 1; i <= 30; i++) {
+      addTask("Water plant " + i);
+    }
+    addTask("Water water water the garden");
+
+    List<String> labels = search("water", 5);
+    assertEquals(5, labels.size());
+    assertEquals("Water water water the garden", labels.get(0));
+    assertEquals(Arrays.asList("Water plant 30", "Water plant 29"), labels.subList(1, 3));
+    assertEquals(Collections.emptyList(), search("water", 0));
+  }
+
+  private void logMedianSearchTime(String query, int limit, int expectedCount) {
+    long[] times = new long[timedSearchCount];
+    for (int i = 0; i < timedSearchCount; i++) {
+      long start = SystemClock.elapsedRealtimeNanos();
+      List<Task> results = taskDatabaseHelper.searchTasks(query, limit);
+      times[i] = SystemClock.elapsedRealtimeNanos() - start;
+      assertEquals(query, expectedCount, results.size());
+    }
+    Arrays.sort(times);
+    double median = times[timedSearchCount / 2] / 1_000_000.0;
+    Log.i(logTag, "\"" + query + "\": median " + median + " ms over " + timedSearchCount);
+  }
+
+  @Test
+  public void searchLargeTable() {
+    // Every label has a word shared by 100 tasks and a word of its own
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (int i = 0; i < largeTaskCount; i++) {
+            taskDatabaseHelper.addTask(
+                new Task("Task tag" + (i % 1_000) + " code" + i, i % 100 + 1, 50, false));
+          }
+        });
+    taskDatabaseHelper.searchTasks("tag1", 1); // warm up the page cache
+
+    logMedianSearchTime("code54321", 20, 1);
+    logMedianSearchTime("tag512", 20, 20); // 100 matches
+    logMedianSearchTime("tag512 code4", 20, 11); // code4512 ... code49512
+  }
+}
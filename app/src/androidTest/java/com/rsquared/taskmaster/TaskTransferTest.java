@@ -0,0 +1,249 @@
+package com.rsquared.taskmaster;
+
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Boards should come back from an export/import round trip as they went in, in either format,
+// with awkward labels intact; unreadable records should be skipped and counted
+@RunWith(AndroidJUnit4.class)
+public class TaskTransferTest {
+
+  private static final String logTag = "TaskTransfer";
+  private static final int benchmarkTaskCount = 100_000;
+
+  private Context context;
+  private TaskDatabaseHelper taskDatabaseHelper;
+
+  @Before
+  public void createDatabase() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+  }
+
+  @After
+  public void closeAndDeleteDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  private void resetDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+  }
+
+  private static List<Task> awkwardTasks() {
+    return Arrays.asList(
+        new Task("Plain", 1, 100, false),
+        new Task("Commas, and more, commas", 50, 50, true),
+        new Task("\"Quoted\" and \"\"doubled\"\"", 100, 1, false),
+        new Task("Line one\nline two\r\nline three", 20, 80, false),
+        new Task("Caf\u00e9 \u2014 \u00fcber \u2713 \ud83d\ude80", 33, 66, true),
+        new Task("  padded  ", 70, 30, false),
+        new Task("", 10, 90, false));
+  }
+
+  // Every task as "label/urgency/importance/completed", sorted, since IDs and order change
+  private static List<String> describe(Iterable<Task> taskList) {
+    List<String> tasks = new ArrayList<>();
+    for (Task task : taskList) {
+      tasks.add(describe(task));
+    }
+    Collections.sort(tasks);
+    return tasks;
+  }
+
+  private static String describe(Task task) {
+    return task.getLabel()
+        + "/"
+        + task.getUrgency()
+        + "/"
+        + task.getImportance()
+        + "/"
+        + task.getCompleted();
+  }
+
+  private void addTasks(List<Task> tasks) {
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (Task task : tasks) {
+            taskDatabaseHelper.addTask(task);
+          }
+        });
+  }
+
+  private byte[] export(TaskTransfer.Format format) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new TaskTransfer(taskDatabaseHelper).exportTasks(output, format);
+    return output.toByteArray();
+  }
+
+  private TaskTransfer.Result importBytes(byte[] bytes, TaskTransfer.Format format)
+      throws IOException {
+    TaskTransfer transfer = new TaskTransfer(taskDatabaseHelper);
+    return transfer.importTasks(new ByteArrayInputStream(bytes), format);
+  }
+
+  private TaskTransfer.Result importString(String text, TaskTransfer.Format format)
+      throws IOException {
+    return importBytes(text.getBytes("UTF-8"), format);
+  }
+
+  private void assertRoundTrip(TaskTransfer.Format format) throws IOException {
+    addTasks(awkwardTasks());
+    List<String> before = describe(taskDatabaseHelper.getTasks(false));
+    byte[] bytes = export(format);
+
+    resetDatabase();
+    TaskTransfer.Result result = importBytes(bytes, format);
+    assertEquals(awkwardTasks().size(), result.taskCount);
+    assertEquals(0, result.skippedCount);
+    assertEquals(before, describe(taskDatabaseHelper.getTasks(false)));
+  }
+
+  @Test
+  public void jsonRoundTrip() throws IOException {
+    assertRoundTrip(TaskTransfer.Format.JSON_LINES);
+  }
+
+  @Test
+  public void csvRoundTrip() throws IOException {
+    assertRoundTrip(TaskTransfer.Format.CSV);
+  }
+
+  @Test
+  public void nullLabelSurvivesJsonButBecomesEmptyInCsv() throws IOException {
+    addTasks(Collections.singletonList(new Task(null, 40, 60, false)));
+    byte[] json = export(TaskTransfer.Format.JSON_LINES);
+    byte[] csv = export(TaskTransfer.Format.CSV);
+
+    resetDatabase();
+    importBytes(json, TaskTransfer.Format.JSON_LINES);
+    assertNull(taskDatabaseHelper.getTasks(false).iterator().next().getLabel());
+
+    resetDatabase();
+    importBytes(csv, TaskTransfer.Format.CSV);
+    assertEquals("", taskDatabaseHelper.getTasks(false).iterator().next().getLabel());
+  }
+
+  @Test
+  public void exportIncludesArchivedTasks() throws IOException {
+    addTasks(awkwardTasks());
+    List<String> before = describe(taskDatabaseHelper.getTasks(false));
+    taskDatabaseHelper.archiveCompletedTasks(Long.MAX_VALUE, 100);
+    assertEquals(
+        awkwardTasks().size() - 2, taskDatabaseHelper.getTasks(true).size()); // 2 completed
+    byte[] bytes = export(TaskTransfer.Format.JSON_LINES);
+
+    resetDatabase();
+    importBytes(bytes, TaskTransfer.Format.JSON_LINES);
+    assertEquals(before, describe(taskDatabaseHelper.getTasks(false)));
+  }
+
+  @Test
+  public void jsonImportSkipsBadRecords() throws IOException {
+    String input =
+        "{\"id\":7,\"label\":\"Good\",\"urgency\":10,\"importance\":20,\"completed\":true}\n"
+            + "\n"
+            + "not json\n"
+            + "{\"label\":\"No importance\",\"urgency\":10}\n"
+            + "{\"label\":\"Too urgent\",\"urgency\":101,\"importance\":20}\n"
+            + "{\"label\":\"Not rated\",\"urgency\":0,\"importance\":20}\n"
+            + "{\"label\":\"Wordy\",\"urgency\":\"high\",\"importance\":20}\n"
+            + "{\"label\":\"Also good\",\"urgency\":100,\"importance\":1}\n";
+    TaskTransfer.Result result = importString(input, TaskTransfer.Format.JSON_LINES);
+    assertEquals(2, result.taskCount);
+    assertEquals(5, result.skippedCount);
+    assertEquals(
+        Arrays.asList("Also good/100/1/false", "Good/10/20/true"),
+        describe(taskDatabaseHelper.getTasks(false)));
+
+    // The ID in the file is ignored
+    assertTrue(taskDatabaseHelper.getTasks(false).iterator().next().getID() != 7);
+  }
+
+  @Test
+  public void csvImportSkipsBadRecords() throws IOException {
+    String input =
+        "label,urgency,importance,completed\n"
+            + "Good,10,20,1\n"
+            + "Too few,10,20\n"
+            + "Too,many,10,20,0\n"
+            + "Not a number,ten,20,0\n"
+            + "Out of range,10,0,0\n"
+            + "\"Also, good\",100,1,true\n";
+    TaskTransfer.Result result = importString(input, TaskTransfer.Format.CSV);
+    assertEquals(2, result.taskCount);
+    assertEquals(4, result.skippedCount);
+    assertEquals(
+        Arrays.asList("Also, good/100/1/true", "Good/10/20/true"),
+        describe(taskDatabaseHelper.getTasks(false)));
+  }
+
+  @Test
+  public void progressIsReportedAfterEachBatch() throws IOException {
+    List<Task> tasks = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      tasks.add(new Task("Task " + i, i, 101 - i, false));
+    }
+    addTasks(tasks);
+    List<Long> exportProgress = new ArrayList<>();
+    TaskTransfer transfer = new TaskTransfer(taskDatabaseHelper);
+    transfer.setBatchSize(3);
+    transfer.setProgressListener(exportProgress::add);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertEquals(10, transfer.exportTasks(output, TaskTransfer.Format.CSV).taskCount);
+    assertEquals(Arrays.asList(3L, 6L, 9L, 10L), exportProgress);
+
+    resetDatabase();
+    List<Long> importProgress = new ArrayList<>();
+    transfer = new TaskTransfer(taskDatabaseHelper);
+    transfer.setBatchSize(3);
+    transfer.setProgressListener(importProgress::add);
+    transfer.importTasks(new ByteArrayInputStream(output.toByteArray()), TaskTransfer.Format.CSV);
+    assertEquals(Arrays.asList(3L, 6L, 9L, 10L), importProgress);
+    assertEquals(describe(tasks), describe(taskDatabaseHelper.getTasks(false)));
+  }
+
+  @Test
+  public void largeBoardRoundTrip() throws IOException {
+    List<Task> tasks = new ArrayList<>(benchmarkTaskCount);
+    for (int i = 0; i < benchmarkTaskCount; i++) {
+      String label = "Task " + i + ", with \"some\" text";
+      tasks.add(new Task(label, i % 100 + 1, i * 7 % 100 + 1, i % 4 == 0));
+    }
+    addTasks(tasks);
+
+    for (TaskTransfer.Format format : TaskTransfer.Format.values()) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      TaskTransfer.Result exported =
+          new TaskTransfer(taskDatabaseHelper).exportTasks(output, format);
+      resetDatabase();
+
+      TaskTransfer.Result imported = importBytes(output.toByteArray(), format);
+      Log.i(logTag, format + " export: " + exported + "; import: " + imported);
+      assertEquals(benchmarkTaskCount, exported.taskCount);
+      assertEquals(benchmarkTaskCount, imported.taskCount);
+      assertEquals(describe(tasks), describe(taskDatabaseHelper.getTasks(false)));
+    }
+  }
+}
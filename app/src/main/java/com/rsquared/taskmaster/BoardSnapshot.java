@@ -0,0 +1,372 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+// A versioned picture of the laid-out board: the ungrouped tasks and the groups, with everything
+// needed to draw and hit-test them (labels, check marks, graphics) copied out at the time it was
+// taken.  TaskViewModel publishes one after every layout, and drawing and touch handling read
+// whichever is current, so they never see the task sets half-rebuilt and could run alongside a
+// layout building the next version.
+//
+// Every version is a new snapshot, filled (or copied from the current one and patched where part
+// of the board changed) before it is published and never changed after.  So a reader on any
+// thread can keep using the snapshot it got for as long as it likes; it is collected once nobody
+// holds it any more.  The arrays are sized to the board, so a version costs about one copy of
+// the board's values.
+//
+// Task entries run from 0 to taskCount - 1 and group entries from groupStart on, and each array
+// below is indexed by entry (the task-only arrays are indexed by task).
+public final class BoardSnapshot {
+
+  // PRIVATE MEMBERS
+
+  public static final BoardSnapshot EMPTY = new BoardSnapshot(); // never filled
+
+  private long version = 0;
+  int taskCount = 0;
+  int groupCount = 0;
+  int groupStart = 0; // entry of the first group (tasks have room for this many entries)
+
+  // What each entry stands for (returned from hit tests)
+  Task[] tasks = new Task[0];
+  TaskGroup[] taskGroups = new TaskGroup[0];
+
+  // Task values
+  long[] ids = new long[0];
+  boolean[] completed = new boolean[0];
+  boolean[] moving = new boolean[0];
+
+  // Entry values
+  String[] labels = new String[0];
+  float[] baselines = new float[0];
+  float[] checkBoxStarts = new float[0];
+  float[] textStarts = new float[0];
+  int[] touchLefts = new int[0];
+  int[] touchTops = new int[0];
+  int[] touchRights = new int[0];
+  int[] touchBottoms = new int[0];
+
+  // Each task's entry + 1 by TaskStore slot (0 when it isn't an ungrouped task on this board)
+  private int[] entryBySlot = new int[0];
+
+  // CONSTRUCTORS
+
+  BoardSnapshot() {
+    // Purposefully empty (filled by TaskViewModel)
+  }
+
+  // A copy of another snapshot, as the starting point for patching in a change to part of the
+  // board (a bulk copy, with no per-task work)
+  BoardSnapshot(@NotNull BoardSnapshot other, long newVersion) {
+    allocate(other.taskCount, other.groupCount);
+    version = newVersion;
+    taskCount = other.taskCount;
+    groupCount = other.groupCount;
+    System.arraycopy(other.tasks, 0, tasks, 0, taskCount);
+    System.arraycopy(other.ids, 0, ids, 0, taskCount);
+    System.arraycopy(other.completed, 0, completed, 0, taskCount);
+    System.arraycopy(other.moving, 0, moving, 0, taskCount);
+    System.arraycopy(other.taskGroups, 0, taskGroups, 0, groupCount);
+    copyEntries(other, 0, 0, taskCount);
+    copyEntries(other, other.groupStart, groupStart, groupCount);
+    entryBySlot = other.entryBySlot.clone();
+  }
+
+  // SETTER FUNCTIONS (ONLY FOR A SNAPSHOT THAT ISN'T PUBLISHED)
+
+  // Copy the current state of the board into a new snapshot (the caller must keep the board from
+  // changing meanwhile)
+  void fill(
+      long newVersion,
+      @NotNull Collection<Task> newTasks,
+      @NotNull Collection<TaskGroup> newTaskGroups) {
+    allocate(newTasks.size(), newTaskGroups.size());
+    version = newVersion;
+    taskCount = 0;
+    for (Task task : newTasks) {
+      copyTask(taskCount++, task);
+    }
+    groupCount = 0;
+    for (TaskGroup taskGroup : newTaskGroups) {
+      copyTaskGroup(groupCount++, taskGroup);
+    }
+  }
+
+  // Copy a task's values again after it changed without moving (a check mark, being dragged),
+  // if it is an ungrouped task on this board
+  void updateTask(@NotNull Task task) {
+    int entry = findEntry(task);
+    if (entry >= 0) {
+      copyTask(entry, task);
+    }
+  }
+
+  // Take an ungrouped task off this board (the last task's entry takes its place)
+  void removeTask(@NotNull Task task) {
+    int entry = findEntry(task);
+    if (entry < 0) {
+      return;
+    }
+    int slot = task.getSlot();
+    if (slot >= 0) {
+      entryBySlot[slot] = 0;
+    }
+    int last = --taskCount;
+    if (entry != last) {
+      tasks[entry] = tasks[last];
+      ids[entry] = ids[last];
+      completed[entry] = completed[last];
+      moving[entry] = moving[last];
+      moveEntry(last, entry);
+      int movedSlot = tasks[entry].getSlot();
+      if (movedSlot >= 0) {
+        entryBySlot[movedSlot] = entry + 1;
+      }
+    }
+    tasks[last] = null;
+    labels[last] = null;
+  }
+
+  // Put an ungrouped task on this board
+  void addTask(@NotNull Task task) {
+    if (findEntry(task) >= 0) {
+      updateTask(task);
+      return;
+    }
+    ensureCapacity(taskCount + 1, groupCount);
+    copyTask(taskCount++, task);
+  }
+
+  // Take a group off this board (the last group's entry takes its place).  Groups are found by
+  // looking through them, since there are few of them next to the tasks.
+  void removeTaskGroup(@NotNull TaskGroup taskGroup) {
+    for (int i = 0; i < groupCount; i++) {
+      if (taskGroups[i] == taskGroup) {
+        int last = --groupCount;
+        if (i != last) {
+          taskGroups[i] = taskGroups[last];
+          moveEntry(groupStart + last, groupStart + i);
+        }
+        taskGroups[last] = null;
+        labels[groupStart + last] = null;
+        return;
+      }
+    }
+  }
+
+  void addTaskGroup(@NotNull TaskGroup taskGroup) {
+    ensureCapacity(taskCount, groupCount + 1);
+    copyTaskGroup(groupCount++, taskGroup);
+  }
+
+  // GETTER FUNCTIONS
+
+  public long getVersion() {
+    return version;
+  }
+
+  public int getTaskCount() {
+    return taskCount;
+  }
+
+  public int getTaskGroupCount() {
+    return groupCount;
+  }
+
+  public @NotNull Task getTask(int index) {
+    return tasks[index];
+  }
+
+  public @NotNull TaskGroup getTaskGroup(int index) {
+    return taskGroups[index];
+  }
+
+  // Entry of a group, for the entry arrays
+  int groupEntry(int index) {
+    return groupStart + index;
+  }
+
+  // HIT TESTS
+
+  // Index of the first task whose touch area holds the point, or -1
+  public int findTask(int x, int y) {
+    for (int i = 0; i < taskCount; i++) {
+      if (touchAreaContains(i, x, y)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Index of the first group whose touch area holds the point, or -1
+  public int findTaskGroup(int x, int y) {
+    for (int i = 0; i < groupCount; i++) {
+      if (touchAreaContains(groupStart + i, x, y)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Entry of an ungrouped task on this board, or -1 (found by slot; a task without one, which
+  // can't be on the board anyway, is looked for the slow way)
+  private int findEntry(@NotNull Task task) {
+    int slot = task.getSlot();
+    if (slot >= 0) {
+      int entry = slot < entryBySlot.length ? entryBySlot[slot] - 1 : -1;
+      return entry >= 0 && entry < taskCount && tasks[entry] == task ? entry : -1;
+    }
+    for (int i = 0; i < taskCount; i++) {
+      if (tasks[i] == task) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void copyTask(int entry, @NotNull Task task) {
+    tasks[entry] = task;
+    ids[entry] = task.getID();
+    completed[entry] = task.getCompleted();
+    moving[entry] = task.getMoving();
+    copyEntry(entry, task.getLabel(), task.getTaskGraphic());
+    int slot = task.getSlot();
+    if (slot >= 0) {
+      if (slot >= entryBySlot.length) {
+        int[] oldEntryBySlot = entryBySlot;
+        entryBySlot = new int[Math.max(slot + 1, oldEntryBySlot.length << 1)];
+        System.arraycopy(oldEntryBySlot, 0, entryBySlot, 0, oldEntryBySlot.length);
+      }
+      entryBySlot[slot] = entry + 1;
+    }
+  }
+
+  private void copyTaskGroup(int index, @NotNull TaskGroup taskGroup) {
+    taskGroups[index] = taskGroup;
+    copyEntry(groupStart + index, taskGroup.getLabel(), taskGroup.getTaskGraphic());
+  }
+
+  private void copyEntry(int entry, String label, TaskGraphic graphic) {
+    labels[entry] = label;
+    if (graphic != null) {
+      baselines[entry] = graphic.getBaseline();
+      checkBoxStarts[entry] = graphic.getCheckBoxStart();
+      textStarts[entry] = graphic.getTextStart();
+      touchLefts[entry] = graphic.getTouchLeft();
+      touchTops[entry] = graphic.getTouchTop();
+      touchRights[entry] = graphic.getTouchRight();
+      touchBottoms[entry] = graphic.getTouchBottom();
+    } else {
+      baselines[entry] = 0;
+      checkBoxStarts[entry] = 0;
+      textStarts[entry] = 0;
+      touchLefts[entry] = 0;
+      touchTops[entry] = 0;
+      touchRights[entry] = 0;
+      touchBottoms[entry] = 0;
+    }
+  }
+
+  private void moveEntry(int from, int to) {
+    labels[to] = labels[from];
+    baselines[to] = baselines[from];
+    checkBoxStarts[to] = checkBoxStarts[from];
+    textStarts[to] = textStarts[from];
+    touchLefts[to] = touchLefts[from];
+    touchTops[to] = touchTops[from];
+    touchRights[to] = touchRights[from];
+    touchBottoms[to] = touchBottoms[from];
+  }
+
+  private void copyEntries(@NotNull BoardSnapshot other, int from, int to, int count) {
+    System.arraycopy(other.labels, from, labels, to, count);
+    System.arraycopy(other.baselines, from, baselines, to, count);
+    System.arraycopy(other.checkBoxStarts, from, checkBoxStarts, to, count);
+    System.arraycopy(other.textStarts, from, textStarts, to, count);
+    System.arraycopy(other.touchLefts, from, touchLefts, to, count);
+    System.arraycopy(other.touchTops, from, touchTops, to, count);
+    System.arraycopy(other.touchRights, from, touchRights, to, count);
+    System.arraycopy(other.touchBottoms, from, touchBottoms, to, count);
+  }
+
+  // Give a new snapshot arrays with room for exactly this many tasks and groups
+  private void allocate(int taskCapacity, int groupCapacity) {
+    tasks = new Task[taskCapacity];
+    ids = new long[taskCapacity];
+    completed = new boolean[taskCapacity];
+    moving = new boolean[taskCapacity];
+    taskGroups = new TaskGroup[groupCapacity];
+    int entryCount = taskCapacity + groupCapacity;
+    labels = new String[entryCount];
+    baselines = new float[entryCount];
+    checkBoxStarts = new float[entryCount];
+    textStarts = new float[entryCount];
+    touchLefts = new int[entryCount];
+    touchTops = new int[entryCount];
+    touchRights = new int[entryCount];
+    touchBottoms = new int[entryCount];
+    groupStart = taskCapacity;
+  }
+
+  // Make room for the given numbers of tasks and groups, keeping the current entries (the
+  // arrays grow to twice what is needed, so a board growing a task at a time rarely copies)
+  private void ensureCapacity(int neededTasks, int neededGroups) {
+    int groupCapacity = labels.length - groupStart;
+    if (neededTasks <= groupStart && neededGroups <= groupCapacity) {
+      return;
+    }
+    int newTaskCapacity = neededTasks <= groupStart ? groupStart : 2 * neededTasks;
+    int newGroupCapacity = neededGroups <= groupCapacity ? groupCapacity : 2 * neededGroups;
+    if (newTaskCapacity != groupStart) {
+      tasks = copyOf(tasks, new Task[newTaskCapacity], taskCount);
+      long[] oldIDs = ids;
+      ids = new long[newTaskCapacity];
+      System.arraycopy(oldIDs, 0, ids, 0, taskCount);
+      boolean[] oldCompleted = completed;
+      completed = new boolean[newTaskCapacity];
+      System.arraycopy(oldCompleted, 0, completed, 0, taskCount);
+      boolean[] oldMoving = moving;
+      moving = new boolean[newTaskCapacity];
+      System.arraycopy(oldMoving, 0, moving, 0, taskCount);
+    }
+    if (newGroupCapacity != groupCapacity) {
+      taskGroups = copyOf(taskGroups, new TaskGroup[newGroupCapacity], groupCount);
+    }
+
+    // The groups' entries move along with the end of the tasks' ones
+    int entryCount = newTaskCapacity + newGroupCapacity;
+    labels = moveEntries(labels, new String[entryCount], newTaskCapacity);
+    baselines = moveEntries(baselines, new float[entryCount], newTaskCapacity);
+    checkBoxStarts = moveEntries(checkBoxStarts, new float[entryCount], newTaskCapacity);
+    textStarts = moveEntries(textStarts, new float[entryCount], newTaskCapacity);
+    touchLefts = moveEntries(touchLefts, new int[entryCount], newTaskCapacity);
+    touchTops = moveEntries(touchTops, new int[entryCount], newTaskCapacity);
+    touchRights = moveEntries(touchRights, new int[entryCount], newTaskCapacity);
+    touchBottoms = moveEntries(touchBottoms, new int[entryCount], newTaskCapacity);
+    groupStart = newTaskCapacity;
+  }
+
+  // Copy an entry array's tasks and groups into a bigger one whose groups start elsewhere
+  private <A> A moveEntries(@NotNull A from, @NotNull A to, int newGroupStart) {
+    System.arraycopy(from, 0, to, 0, taskCount);
+    System.arraycopy(from, groupStart, to, newGroupStart, groupCount);
+    return to;
+  }
+
+  private static <T> T @NotNull [] copyOf(T @NotNull [] from, T @NotNull [] to, int count) {
+    System.arraycopy(from, 0, to, 0, count);
+    return to;
+  }
+
+  // Same test as TaskGraphic.touchAreaContains
+  private boolean touchAreaContains(int entry, int x, int y) {
+    return x >= touchLefts[entry]
+        && x < touchRights[entry]
+        && y >= touchTops[entry]
+        && y < touchBottoms[entry];
+  }
+}
@@ -144,13 +144,18 @@ public class FragmentAddOrModifyTask extends Fragment implements Parcelable {
             } else {
               if (existingTask != null) { // Possible that value went stale
 
-                // Update existing task with new values from inputs
-                existingTask.setLabel(editTextTask.getText().toString());
-                existingTask.setUrgency(seekBarUrgency.getProgress());
-                existingTask.setImportance(seekBarImportance.getProgress());
+                // Copy the existing task with new values from inputs (the arguments may hand
+                // back the very instance in memory, which must keep its old values for undo)
+                Task editedTask =
+                    new Task(
+                        existingTask.getID(),
+                        editTextTask.getText().toString(),
+                        seekBarUrgency.getProgress(),
+                        seekBarImportance.getProgress(),
+                        existingTask.getCompleted());
 
                 // Commit changes to ViewModel and database
-                taskViewModel.updateTask(existingTask);
+                taskViewModel.updateTask(editedTask);
               }
             }
 
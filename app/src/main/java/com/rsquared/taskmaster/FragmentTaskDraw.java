@@ -4,9 +4,10 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Point;
-import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.DragEvent;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
@@ -16,6 +17,7 @@ import android.view.View;
 import android.view.View.DragShadowBuilder;
 import android.view.View.OnDragListener;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.ImageView;
 
 import androidx.fragment.app.Fragment;
@@ -24,6 +26,8 @@ import androidx.lifecycle.ViewModelProvider;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Set;
+
 // Task Draw fragment (canvas with interactive task listings, plus a popup, if necessary)
 public class FragmentTaskDraw extends Fragment {
 
@@ -34,6 +38,7 @@ public class FragmentTaskDraw extends Fragment {
   private ImageView popupBackground; // Object for drawing pop up background
   private TaskViewModel taskViewModel; // For accessing and modifying task information
   private final float scaleFactor = (float) 3; // How much bigger should the task appear while dragging?
+  private int drawnTaskLoadVersion = -1; // Which batch of downloaded tasks is currently laid out
 
   // Provide an instance of this class
   @Contract(" -> new")
@@ -66,6 +71,56 @@ public class FragmentTaskDraw extends Fragment {
           // Set up taskDraw, related views, and canvases
           setupViews();
 
+          // Tasks are downloaded in the background, so lay everything out again once they arrive
+          // (tasks that were only edited are laid out again where they are, one at a time)
+          taskViewModel
+              .getTaskLoadVersion()
+              .observe(
+                  getViewLifecycleOwner(),
+                  (Integer taskLoadVersion) -> {
+                    if (taskLoadVersion != drawnTaskLoadVersion) {
+                      Set<Long> editedTaskIDs = taskViewModel.takeEditedTaskIDs();
+                      if (editedTaskIDs == null) {
+                        setupViews();
+                      } else {
+                        drawnTaskLoadVersion = taskLoadVersion;
+                        for (long id : editedTaskIDs) {
+                          taskDraw.relayoutTask(id);
+                        }
+                      }
+                    }
+                  });
+
+          // Highlight tasks matching the current search
+          taskViewModel
+              .getSearchMatches()
+              .observe(
+                  getViewLifecycleOwner(),
+                  (Set<Long> matchingIDs) -> {
+                    taskDraw.setHighlightedTaskIDs(matchingIDs);
+                    groupPopup.setHighlightedTaskIDs(matchingIDs);
+                  });
+
+          // Search as the user types (clearing the field clears the highlighting)
+          EditText searchField = requireActivity().findViewById(R.id.edit_text_search);
+          searchField.addTextChangedListener(
+              new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+                  // Purposefully empty
+                }
+
+                @Override
+                public void onTextChanged(CharSequence text, int start, int before, int count) {
+                  // Purposefully empty
+                }
+
+                @Override
+                public void afterTextChanged(Editable text) {
+                  taskViewModel.searchTasks(text.toString());
+                }
+              });
+
           // Initialize private members
           final float[] startCoordinates = new float[2];
 
@@ -102,7 +157,7 @@ public class FragmentTaskDraw extends Fragment {
                   // If tapping a task, then check/uncheck the test
                   if (touchedTask != null) {
                     touchedTask.setCompleted(!touchedTask.getCompleted());
-                    taskViewModel.updateTask(touchedTask);
+                    taskViewModel.updateTaskCompleted(touchedTask);
                     taskDraw.invalidate(); // update image
                   }
 
@@ -173,7 +228,7 @@ public class FragmentTaskDraw extends Fragment {
               // Refresh screen (without dragged task) at drag beginning
               case DragEvent.ACTION_DRAG_STARTED:
                 newTask.setMoving(true);
-                setupViews();
+                taskDraw.refreshTask(newTask);
                 break;
 
               // Grab the location of the dropped task and assign new urgency and importance levels
@@ -181,16 +236,15 @@ public class FragmentTaskDraw extends Fragment {
                 float x = event.getX();
                 float y = event.getY() - (TaskDraw.padding + TaskDraw.fontBottom) * scaleFactor;
                 int[] ratings = taskDraw.getRatings(x, y);
-                newTask.setUrgency(ratings[0]);
-                newTask.setImportance(ratings[1]);
-                newTask.setTaskGraphic(taskDraw.setGraphic(newTask.getLabel(), newTask.getUrgency(), newTask.getImportance()));
+                taskViewModel.moveTask(newTask, ratings[0], ratings[1]);
+                taskDraw.relayoutTask(newTask.getID()); // only around the old and new spots
                 break;
 
-              // Stop drag process and update the new information up the chain, refresh screen
+              // Stop drag process and refresh screen (a drop already saved the new ratings and
+              // laid the task out)
               case DragEvent.ACTION_DRAG_ENDED:
                 newTask.setMoving(false);
-                taskViewModel.updateTask(newTask);
-                setupViews();
+                taskDraw.refreshTask(newTask);
                 break;
             }
             return true;
@@ -216,7 +270,7 @@ public class FragmentTaskDraw extends Fragment {
                       groupPopup.getTouchedTask(motionEvent.getX(), motionEvent.getY());
                   if (touchedTask != null) {
                     touchedTask.setCompleted(!touchedTask.getCompleted());
-                    taskViewModel.updateTask(touchedTask);
+                    taskViewModel.updateTaskCompleted(touchedTask);
                     groupPopup.invalidate();
                   }
                   return true;
@@ -303,9 +357,9 @@ public class FragmentTaskDraw extends Fragment {
     public void onProvideShadowMetrics(@NotNull Point shadowSize, @NotNull Point shadowTouchPoint) {
 
       // Get outline of task touch area for measurement
-      Rect touchArea = new Rect(movedTask.getTaskGraphic().getTouchArea());
-      float shadowWidth = scaleFactor * (touchArea.right - touchArea.left);
-      float shadowHeight = scaleFactor * (touchArea.bottom - touchArea.top);
+      TaskGraphic graphic = movedTask.getTaskGraphic();
+      float shadowWidth = scaleFactor * (graphic.getTouchRight() - graphic.getTouchLeft());
+      float shadowHeight = scaleFactor * (graphic.getTouchBottom() - graphic.getTouchTop());
       // Needs to be slightly bigger than image to avoid flickering
       shadowSize.set((int) shadowWidth + 1, (int) shadowHeight + 1);
       // Finger at bottom left corner:
@@ -325,6 +379,8 @@ public class FragmentTaskDraw extends Fragment {
     groupPopup = requireActivity().findViewById(R.id.group_popup);
     popupBackground = requireActivity().findViewById(R.id.popup_background);
     taskViewModel = new ViewModelProvider(requireActivity()).get(TaskViewModel.class);
+    drawnTaskLoadVersion = taskViewModel.getTaskLoadVersion().getValue();
+    taskViewModel.takeEditedTaskIDs(); // a full layout covers them
     taskViewModel.deGroupTasks();
     taskDraw.initialize(taskViewModel, taskDraw.getWidth(), taskDraw.getHeight());
   }
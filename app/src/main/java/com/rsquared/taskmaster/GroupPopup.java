@@ -52,18 +52,18 @@ public class GroupPopup extends TaskDraw {
     if (taskGroup.getTasks().size() > 0) {
       boolean first = true;
       for (Task task : taskGroup.getTasks()) {
-        Rect touchArea = task.getTaskGraphic().getTouchArea();
+        TaskGraphic graphic = task.getTaskGraphic();
         if (first) {
           first = false;
-          leftest = touchArea.left;
-          rightest = touchArea.right;
-          highest = touchArea.top;
-          lowest = touchArea.bottom;
+          leftest = graphic.getTouchLeft();
+          rightest = graphic.getTouchRight();
+          highest = graphic.getTouchTop();
+          lowest = graphic.getTouchBottom();
         } else {
-          leftest = min(leftest, touchArea.left);
-          rightest = max(rightest, touchArea.right);
-          highest = min(highest, touchArea.top);
-          lowest = max(lowest, touchArea.bottom);
+          leftest = min(leftest, graphic.getTouchLeft());
+          rightest = max(rightest, graphic.getTouchRight());
+          highest = min(highest, graphic.getTouchTop());
+          lowest = max(lowest, graphic.getTouchBottom());
         }
       }
 
@@ -90,8 +90,10 @@ public class GroupPopup extends TaskDraw {
 
     // Get the minimum size of the popup by joining each tasks' touch area
     Rect groupArea = new Rect();
+    Rect touchArea = new Rect();
     for (Task task : this.taskGroup.getTasks()) {
-      groupArea.union(new Rect(task.getTaskGraphic().getTouchArea()));
+      task.getTaskGraphic().getTouchArea(touchArea);
+      groupArea.union(touchArea);
     }
 
     // Determine where to move each task based on the area gathered above
@@ -136,7 +138,7 @@ public class GroupPopup extends TaskDraw {
     for (Task task : taskGroup.getTasks()) {
 
       // If the tap coordinates were inside the touch area for a task, then save the task
-      if (task.getTaskGraphic().getTouchArea().contains((int) x, (int) y)) {
+      if (task.getTaskGraphic().touchAreaContains((int) x, (int) y)) {
         return task;
       }
     }
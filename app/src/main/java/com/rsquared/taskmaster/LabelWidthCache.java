@@ -0,0 +1,103 @@
+package com.rsquared.taskmaster;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.util.LruCache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Objects;
+
+// Measured label widths (from Paint.getTextBounds), so laying out a board whose labels haven't
+// changed measures no text at all.  Entries are keyed by label; the font they were measured with
+// (text size, scale, typeface and locale) is remembered, and the cache is emptied whenever a
+// different font is asked about.  Least recently used labels are evicted first once the
+// estimated memory use passes the budget.  Main thread only.
+public class LabelWidthCache {
+
+  // PRIVATE MEMBERS
+
+  protected static final int defaultMaxBytes = 256 * 1024;
+  private static final int entryOverheadBytes = 80; // map entry, string and Integer headers
+
+  private static LabelWidthCache sharedInstance;
+
+  private final LruCache<String, Integer> widths;
+  private final Rect textBounds = new Rect();
+  // The font every cached width was measured with
+  private float textSize = -1;
+  private float textScaleX = -1;
+  private Typeface typeface;
+  private Locale locale;
+
+  // CONSTRUCTORS
+
+  public LabelWidthCache(int maxBytes) {
+    widths =
+        new LruCache<String, Integer>(maxBytes) {
+          @Override
+          protected int sizeOf(String label, Integer width) {
+            return entryOverheadBytes + 2 * label.length();
+          }
+        };
+  }
+
+  // The cache used by TaskDraw and GroupPopup (which lay out the same labels in the same font)
+  public static synchronized @NotNull LabelWidthCache getInstance() {
+    if (sharedInstance == null) {
+      sharedInstance = new LabelWidthCache(defaultMaxBytes);
+    }
+    return sharedInstance;
+  }
+
+  // GETTER FUNCTIONS
+
+  // Width of the label's text bounds in the paint's font, measured only if not already cached
+  public int getWidth(@NotNull Paint paint, @NotNull String label) {
+    checkFont(paint);
+    Integer width = widths.get(label);
+    if (width == null) {
+      paint.getTextBounds(label, 0, label.length(), textBounds);
+      width = textBounds.width();
+      widths.put(label, width);
+    }
+    return width;
+  }
+
+  public int getHitCount() {
+    return widths.hitCount();
+  }
+
+  public int getMissCount() {
+    return widths.missCount();
+  }
+
+  // SETTER FUNCTIONS
+
+  public void clear() {
+    widths.evictAll();
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Forget every width if the paint's font isn't the one they were measured with
+  private void checkFont(@NotNull Paint paint) {
+    Locale paintLocale =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+            ? paint.getTextLocale()
+            : Locale.getDefault();
+    if (paint.getTextSize() != textSize
+        || paint.getTextScaleX() != textScaleX
+        || paint.getTypeface() != typeface
+        || !Objects.equals(paintLocale, locale)) {
+      widths.evictAll();
+      textSize = paint.getTextSize();
+      textScaleX = paint.getTextScaleX();
+      typeface = paint.getTypeface();
+      locale = paintLocale;
+    }
+  }
+}
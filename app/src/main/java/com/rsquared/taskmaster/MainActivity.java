@@ -20,6 +20,7 @@ import java.util.Objects;
 
 // Todo: possibly move from 0-100 selection to 0-10
 // Todo: Permanent notification for most important and urgent item (maybe next release)
+//  (TaskViewModel.setOnTopTaskChangedListener says when the item changes)
 
 // Main activity that initializes all items, including database helpers, and sets listeners to
 // trigger functions
@@ -37,7 +38,7 @@ public class MainActivity extends AppCompatActivity {
     // taskViewModel holds task information between views, activities, etc.
     TaskViewModel taskViewModel = new ViewModelProvider(this).get(TaskViewModel.class);
 
-    // Get all the unfinished tasks for display
+    // Get all the unfinished tasks for display (loaded in the background, drawn once they arrive)
     taskViewModel.downloadIncompleteTasks();
   }
 
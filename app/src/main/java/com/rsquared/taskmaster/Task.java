@@ -6,8 +6,12 @@ import android.os.Parcelable;
 import org.jetbrains.annotations.NotNull;
 
 // Task class: holds all the information for an individual task
+// A task on the board is attached to the view model's TaskStore, and is then just a view onto
+// one slot of the store's columns; other tasks (copies, parcelled tasks) hold their own values
 public class Task implements Parcelable {
 
+  private TaskStore store; // null unless attached
+  private int slot = -1;
   private long _id;
   private String label;
   private int urgency; // (1-100)
@@ -58,54 +62,127 @@ public class Task implements Parcelable {
     }
   };
 
-  private void setID(long newID) {
-    this._id = newID;
+  // Only the view model sets an ID after construction, once the database has assigned one
+  void setID(long newID) {
+    if (store == null) {
+      _id = newID;
+    } else {
+      store.ids[slot] = newID;
+    }
   }
 
   public void setLabel(String newLabel) {
-    label = newLabel;
+    if (store == null) {
+      label = newLabel;
+    } else {
+      store.labels[slot] = newLabel;
+    }
   }
 
   public void setUrgency(int newUrgency) {
-    urgency = sanitizeRating(newUrgency);
+    if (store == null) {
+      urgency = sanitizeRating(newUrgency);
+    } else {
+      store.urgencies[slot] = sanitizeRating(newUrgency);
+    }
   }
 
   public void setImportance(int newImportance) {
+    if (store == null) {
       importance = sanitizeRating(newImportance);
+    } else {
+      store.importances[slot] = sanitizeRating(newImportance);
+    }
   }
 
   public void setCompleted(boolean newCompleted) {
-    completed = newCompleted;
+    if (store == null) {
+      completed = newCompleted;
+    } else {
+      store.completed.set(slot, newCompleted);
+    }
   }
 
+  // Attached tasks keep their graphic in the store, so the values are copied in
   public void setTaskGraphic(TaskGraphic newTaskGraphic) {
-    taskGraphic = newTaskGraphic;
+    if (store == null || newTaskGraphic == null) {
+      taskGraphic = newTaskGraphic;
+    } else {
+      taskGraphic.set(newTaskGraphic);
+    }
   }
 
   public void setMoving(boolean entry) {
-    this.moving = entry;
+    if (store == null) {
+      moving = entry;
+    } else {
+      store.moving.set(slot, entry);
+    }
+  }
+
+  // STORE FUNCTIONS
+
+  // Move this task's values into a slot of the store, after which the task is a view onto it
+  void attachTo(@NotNull TaskStore newStore) {
+    if (store != null) {
+      return;
+    }
+    int newSlot = newStore.allocateSlot();
+    newStore.ids[newSlot] = _id;
+    newStore.labels[newSlot] = label;
+    newStore.urgencies[newSlot] = urgency;
+    newStore.importances[newSlot] = importance;
+    newStore.completed.set(newSlot, completed);
+    newStore.moving.set(newSlot, moving);
+    TaskGraphic storeGraphic = new TaskGraphic(newStore, newSlot);
+    if (taskGraphic != null) {
+      storeGraphic.set(taskGraphic);
+    }
+    store = newStore;
+    slot = newSlot;
+    label = null;
+    taskGraphic = storeGraphic;
+  }
+
+  // Copy the values back out of the store and give up the slot (the task stays usable)
+  void detach() {
+    if (store == null) {
+      return;
+    }
+    _id = store.ids[slot];
+    label = store.labels[slot];
+    urgency = store.urgencies[slot];
+    importance = store.importances[slot];
+    completed = store.completed.get(slot);
+    moving = store.moving.get(slot);
+    TaskGraphic ownGraphic = new TaskGraphic();
+    ownGraphic.set(taskGraphic);
+    taskGraphic = ownGraphic;
+    store.freeSlot(slot);
+    store = null;
+    slot = -1;
   }
 
   // GETTER FUNCTIONS
 
   public long getID() {
-    return _id;
+    return store == null ? _id : store.ids[slot];
   }
 
   public String getLabel() {
-    return label;
+    return store == null ? label : store.labels[slot];
   }
 
   public int getUrgency() {
-    return urgency;
+    return store == null ? urgency : store.urgencies[slot];
   }
 
   public int getImportance() {
-    return importance;
+    return store == null ? importance : store.importances[slot];
   }
 
   public boolean getCompleted() {
-    return completed;
+    return store == null ? completed : store.completed.get(slot);
   }
 
   public TaskGraphic getTaskGraphic() {
@@ -113,7 +190,12 @@ public class Task implements Parcelable {
   }
 
   public boolean getMoving() {
-    return moving;
+    return store == null ? moving : store.moving.get(slot);
+  }
+
+  // The task's slot in the store, or -1 if it isn't attached
+  int getSlot() {
+    return slot;
   }
 
   // VALIDATION & SANITATION FUNCTIONS
@@ -131,11 +213,11 @@ public class Task implements Parcelable {
   public @NotNull String toString() {
     String output = "";
     output = output.concat("CONTENTS OF Task INSTANCE:\n");
-    output = output.concat("-id: " + _id + "\n");
-    output = output.concat("-label: " + label + "\n");
-    output = output.concat("-urgency: " + urgency + "\n");
-    output = output.concat("-importance: " + importance + "\n");
-    output = output.concat("-completed " + completed + "\n");
+    output = output.concat("-id: " + getID() + "\n");
+    output = output.concat("-label: " + getLabel() + "\n");
+    output = output.concat("-urgency: " + getUrgency() + "\n");
+    output = output.concat("-importance: " + getImportance() + "\n");
+    output = output.concat("-completed " + getCompleted() + "\n");
     output = output.concat(taskGraphic.toString());
     return output;
   }
@@ -147,11 +229,11 @@ public class Task implements Parcelable {
 
   @Override
   public void writeToParcel(Parcel dest, int flags) {
-    dest.writeLong(_id);
-    dest.writeString(label);
-    dest.writeInt(urgency);
-    dest.writeInt(importance);
-    dest.writeByte((byte) (completed ? 1 : 0));
-    dest.writeByte((byte) (moving ? 1 : 0));
+    dest.writeLong(getID());
+    dest.writeString(getLabel());
+    dest.writeInt(getUrgency());
+    dest.writeInt(getImportance());
+    dest.writeByte((byte) (getCompleted() ? 1 : 0));
+    dest.writeByte((byte) (getMoving() ? 1 : 0));
   }
 }
@@ -0,0 +1,270 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+// Groups tasks whose touch areas overlap, for TaskDraw's layout, exactly as the grouping in
+// overlappingTasks always has: find the first pair of ungrouped tasks (in list order) that
+// overlap and make them a group, then go once through the other ungrouped tasks in order, taking
+// in each one the group's touch area overlaps (the group is laid out again after each one, so
+// what it covers moves as it grows).  Repeat until no pair is left.  The result depends on the
+// order of the tasks, as it did before.  Only the cost differs: the tasks are bucketed in a
+// uniform grid sized to their touch areas, so every search looks at nearby tasks only, and since
+// grouping only ever takes tasks away, the search for the next pair carries on from where the
+// last one stopped instead of starting over.  Arrays are kept between calls.  Main thread only.
+public class TaskClusterer {
+
+  // PRIVATE MEMBERS
+
+  private static final int maxCellsPerTask = 4; // grid size limit, for widely spread boards
+
+  // Per task (by position in the list)
+  private int[] lefts = new int[0];
+  private int[] tops = new int[0];
+  private int[] rights = new int[0];
+  private int[] bottoms = new int[0];
+  private boolean[] grouped = new boolean[0];
+
+  // The grid: the tasks in cell c are cellTasks[cellStarts[c]] to cellTasks[cellStarts[c + 1]]
+  // (exclusive), in list order
+  private int gridLeft;
+  private int gridTop;
+  private int cellWidth;
+  private int cellHeight;
+  private int columns;
+  private int rows;
+  private int[] cellStarts = new int[1];
+  private int[] cellTasks = new int[0];
+
+  private final Stats stats = new Stats();
+
+  // Lays out a group's graphic (TaskDraw.setTaskGroupGraphic)
+  public interface GroupLayout {
+    void layOut(@NotNull TaskGroup taskGroup);
+  }
+
+  // CLUSTERING
+
+  // Put every group of overlapping tasks into taskGroups (emptied first), each laid out with
+  // groupLayout.  The tasks' graphics must be up to date.
+  public void cluster(
+      @NotNull List<Task> tasks,
+      @NotNull GroupLayout groupLayout,
+      @NotNull List<TaskGroup> taskGroups) {
+    stats.reset();
+    taskGroups.clear();
+    int taskCount = tasks.size();
+    if (taskCount > lefts.length) {
+      lefts = new int[taskCount];
+      tops = new int[taskCount];
+      rights = new int[taskCount];
+      bottoms = new int[taskCount];
+      grouped = new boolean[taskCount];
+    }
+    for (int i = 0; i < taskCount; i++) {
+      TaskGraphic graphic = tasks.get(i).getTaskGraphic();
+      lefts[i] = graphic.getTouchLeft();
+      tops[i] = graphic.getTouchTop();
+      rights[i] = graphic.getTouchRight();
+      bottoms[i] = graphic.getTouchBottom();
+      grouped[i] = false;
+    }
+    buildGrid(taskCount);
+
+    // A task with no ungrouped task after it to pair with never gets one later (grouping only
+    // takes tasks away), and the tasks before it had none either, so the search never goes back
+    for (int i = 0; i < taskCount; i++) {
+      if (grouped[i]) {
+        continue;
+      }
+      int partner = firstOverlapping(lefts[i], tops[i], rights[i], bottoms[i], i);
+      if (partner < 0) {
+        continue;
+      }
+      TaskGroup taskGroup = new TaskGroup();
+      taskGroup.addTask(tasks.get(i));
+      taskGroup.addTask(tasks.get(partner));
+      groupLayout.layOut(taskGroup);
+      grouped[i] = true;
+      grouped[partner] = true;
+
+      // One pass through the rest: the next task taken in is the first after the last one whose
+      // area overlaps the group as it now is
+      int next = -1;
+      while (true) {
+        TaskGraphic graphic = taskGroup.getTaskGraphic();
+        next =
+            firstOverlapping(
+                graphic.getTouchLeft(),
+                graphic.getTouchTop(),
+                graphic.getTouchRight(),
+                graphic.getTouchBottom(),
+                next);
+        if (next < 0) {
+          break;
+        }
+        taskGroup.addTask(tasks.get(next));
+        groupLayout.layOut(taskGroup);
+        grouped[next] = true;
+      }
+      taskGroups.add(taskGroup);
+    }
+    stats.groupCount = taskGroups.size();
+  }
+
+  // What the last call to cluster did
+  public @NotNull Stats getStats() {
+    return stats;
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Bucket the tasks into cells about the size of an average touch area, over the box that
+  // holds them all
+  private void buildGrid(int taskCount) {
+    if (taskCount == 0) {
+      columns = 0;
+      rows = 0;
+      return;
+    }
+    int right = Integer.MIN_VALUE;
+    int bottom = Integer.MIN_VALUE;
+    long totalWidth = 0;
+    long totalHeight = 0;
+    gridLeft = Integer.MAX_VALUE;
+    gridTop = Integer.MAX_VALUE;
+    for (int i = 0; i < taskCount; i++) {
+      gridLeft = Math.min(gridLeft, lefts[i]);
+      gridTop = Math.min(gridTop, tops[i]);
+      right = Math.max(right, rights[i]);
+      bottom = Math.max(bottom, bottoms[i]);
+      totalWidth += Math.max(0, rights[i] - lefts[i]);
+      totalHeight += Math.max(0, bottoms[i] - tops[i]);
+    }
+    long width = Math.max(1L, (long) right - gridLeft);
+    long height = Math.max(1L, (long) bottom - gridTop);
+    long newCellWidth = Math.max(1L, totalWidth / taskCount);
+    long newCellHeight = Math.max(1L, totalHeight / taskCount);
+    while (ceilDiv(width, newCellWidth) * ceilDiv(height, newCellHeight)
+        > (long) maxCellsPerTask * taskCount) {
+      newCellWidth <<= 1;
+      newCellHeight <<= 1;
+    }
+    cellWidth = (int) Math.min(Integer.MAX_VALUE, newCellWidth);
+    cellHeight = (int) Math.min(Integer.MAX_VALUE, newCellHeight);
+    columns = (int) ceilDiv(width, cellWidth);
+    rows = (int) ceilDiv(height, cellHeight);
+    int cellCount = columns * rows;
+    if (cellCount + 1 > cellStarts.length) {
+      cellStarts = new int[cellCount + 1];
+    }
+
+    // Count the tasks in each cell, turn the counts into starts, then fill the cells in order
+    for (int cell = 0; cell <= cellCount; cell++) {
+      cellStarts[cell] = 0;
+    }
+    for (int i = 0; i < taskCount; i++) {
+      int lastRow = getRow(bottoms[i] - 1, tops[i]);
+      int lastColumn = getColumn(rights[i] - 1, lefts[i]);
+      for (int row = getRow(tops[i], tops[i]); row <= lastRow; row++) {
+        for (int column = getColumn(lefts[i], lefts[i]); column <= lastColumn; column++) {
+          cellStarts[row * columns + column + 1]++;
+        }
+      }
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      cellStarts[cell + 1] += cellStarts[cell];
+    }
+    if (cellStarts[cellCount] > cellTasks.length) {
+      cellTasks = new int[cellStarts[cellCount]];
+    }
+    for (int i = 0; i < taskCount; i++) {
+      int lastRow = getRow(bottoms[i] - 1, tops[i]);
+      int lastColumn = getColumn(rights[i] - 1, lefts[i]);
+      for (int row = getRow(tops[i], tops[i]); row <= lastRow; row++) {
+        for (int column = getColumn(lefts[i], lefts[i]); column <= lastColumn; column++) {
+          cellTasks[cellStarts[row * columns + column]++] = i;
+        }
+      }
+    }
+    // (Filling moved each start up to the next cell's, so shift them back)
+    for (int cell = cellCount; cell > 0; cell--) {
+      cellStarts[cell] = cellStarts[cell - 1];
+    }
+    cellStarts[0] = 0;
+  }
+
+  // The first ungrouped task after the given position whose touch area intersects the given one
+  // (same test as Rect.intersects), or -1 if there is none
+  private int firstOverlapping(int left, int top, int right, int bottom, int after) {
+    stats.searches++;
+    if (columns == 0
+        || right <= gridLeft
+        || bottom <= gridTop
+        || left >= gridLeft + (long) columns * cellWidth
+        || top >= gridTop + (long) rows * cellHeight) {
+      return -1;
+    }
+    int first = -1;
+    int lastRow = getRow(bottom - 1, top);
+    int lastColumn = getColumn(right - 1, left);
+    for (int row = getRow(top, top); row <= lastRow; row++) {
+      for (int column = getColumn(left, left); column <= lastColumn; column++) {
+        int cell = row * columns + column;
+        for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+          int i = cellTasks[k];
+          if (first >= 0 && i >= first) {
+            break; // (cells are in list order, so nothing later in this one can come first)
+          }
+          if (i <= after || grouped[i]) {
+            continue;
+          }
+          stats.comparisons++;
+          if (lefts[i] < right && left < rights[i] && tops[i] < bottom && top < bottoms[i]) {
+            first = i;
+            break;
+          }
+        }
+      }
+    }
+    return first;
+  }
+
+  // The column of x (for an empty range ending before its start, the start's column)
+  private int getColumn(int x, int start) {
+    long column = ((long) Math.max(x, start) - gridLeft) / cellWidth;
+    return (int) Math.min(columns - 1, Math.max(0, column));
+  }
+
+  private int getRow(int y, int start) {
+    long row = ((long) Math.max(y, start) - gridTop) / cellHeight;
+    return (int) Math.min(rows - 1, Math.max(0, row));
+  }
+
+  private static long ceilDiv(long a, long b) {
+    return (a + b - 1) / b;
+  }
+
+  // NESTED TYPES
+
+  // Work done by one call to cluster, to keep an eye on layout cost
+  public static final class Stats {
+    public int searches; // looks through the grid for an overlapping task
+    public long comparisons; // pairs of touch areas tested for overlap
+    public int groupCount;
+
+    private void reset() {
+      searches = 0;
+      comparisons = 0;
+      groupCount = 0;
+    }
+
+    @Override
+    public @NotNull String toString() {
+      return String.format(
+          Locale.US, "%d groups in %d searches (%d comparisons)", groupCount, searches, comparisons);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+// Undo/redo history of task changes.  Each entry is a small delta holding only what the change
+// touched (an ID and a flag for a check mark, before and after ratings for a move, and so on),
+// so the history is cheap to keep.  It is capped both by entry count and by estimated size, and
+// the oldest entries are dropped first.  Main thread only.
+public class TaskCommandLog {
+
+  // PRIVATE MEMBERS
+
+  protected static final int maxEntries = 200;
+  protected static final long maxBytes = 64 * 1024;
+
+  private final Deque<Command> undoCommands = new ArrayDeque<>();
+  private final Deque<Command> redoCommands = new ArrayDeque<>();
+  private long undoBytes = 0;
+  private long redoBytes = 0;
+
+  // SETTER FUNCTIONS
+
+  // Record a change that was just made (anything that could have been redone is forgotten)
+  public void record(@NotNull Command command) {
+    undoCommands.addLast(command);
+    undoBytes += command.getSizeInBytes();
+    redoCommands.clear();
+    redoBytes = 0;
+    while (undoCommands.size() > maxEntries
+        || (undoBytes > maxBytes && undoCommands.size() > 1)) {
+      undoBytes -= undoCommands.removeFirst().getSizeInBytes();
+    }
+  }
+
+  // Take the most recent change to undo (null if there is none); it becomes redoable
+  public Command takeUndo() {
+    Command command = undoCommands.pollLast();
+    if (command != null) {
+      undoBytes -= command.getSizeInBytes();
+      redoCommands.addLast(command);
+      redoBytes += command.getSizeInBytes();
+    }
+    return command;
+  }
+
+  // Take the most recently undone change to apply again (null if there is none)
+  public Command takeRedo() {
+    Command command = redoCommands.pollLast();
+    if (command != null) {
+      redoBytes -= command.getSizeInBytes();
+      undoCommands.addLast(command);
+      undoBytes += command.getSizeInBytes();
+    }
+    return command;
+  }
+
+  public void clear() {
+    undoCommands.clear();
+    redoCommands.clear();
+    undoBytes = 0;
+    redoBytes = 0;
+  }
+
+  // GETTER FUNCTIONS
+
+  public boolean canUndo() {
+    return !undoCommands.isEmpty();
+  }
+
+  public boolean canRedo() {
+    return !redoCommands.isEmpty();
+  }
+
+  public long getSizeInBytes() {
+    return undoBytes + redoBytes;
+  }
+
+  // COMMANDS
+
+  // One change to one task, with what is needed to apply it in either direction
+  public static final class Command {
+    public static final byte TOGGLE = 0; // checked or unchecked
+    public static final byte MOVE = 1; // ratings changed
+    public static final byte EDIT = 2; // label, ratings and/or check mark changed
+    public static final byte ADD = 3; // created
+
+    private static final int fixedSizeInBytes = 48; // object header, fields, and deque slot
+
+    public final byte type;
+    public final long id;
+    // Ratings are 1-100, so each fits in a byte
+    private final byte oldUrgency;
+    private final byte oldImportance;
+    private final byte newUrgency;
+    private final byte newImportance;
+    public final boolean oldCompleted;
+    public final boolean newCompleted;
+    public final String oldLabel; // only kept for edits
+    public final String newLabel; // only kept for edits and adds
+
+    private Command(
+        byte type,
+        long id,
+        int oldUrgency,
+        int oldImportance,
+        int newUrgency,
+        int newImportance,
+        boolean oldCompleted,
+        boolean newCompleted,
+        String oldLabel,
+        String newLabel) {
+      this.type = type;
+      this.id = id;
+      this.oldUrgency = (byte) oldUrgency;
+      this.oldImportance = (byte) oldImportance;
+      this.newUrgency = (byte) newUrgency;
+      this.newImportance = (byte) newImportance;
+      this.oldCompleted = oldCompleted;
+      this.newCompleted = newCompleted;
+      this.oldLabel = oldLabel;
+      this.newLabel = newLabel;
+    }
+
+    public static @NotNull Command toggle(long id, boolean newCompleted) {
+      return new Command(TOGGLE, id, 0, 0, 0, 0, !newCompleted, newCompleted, null, null);
+    }
+
+    public static @NotNull Command move(
+        long id, int oldUrgency, int oldImportance, int newUrgency, int newImportance) {
+      return new Command(
+          MOVE,
+          id,
+          oldUrgency,
+          oldImportance,
+          newUrgency,
+          newImportance,
+          false,
+          false,
+          null,
+          null);
+    }
+
+    // A label that didn't change is not kept twice
+    public static @NotNull Command edit(@NotNull Task oldTask, @NotNull Task newTask) {
+      boolean labelChanged = !Objects.equals(oldTask.getLabel(), newTask.getLabel());
+      return new Command(
+          EDIT,
+          newTask.getID(),
+          oldTask.getUrgency(),
+          oldTask.getImportance(),
+          newTask.getUrgency(),
+          newTask.getImportance(),
+          oldTask.getCompleted(),
+          newTask.getCompleted(),
+          labelChanged ? oldTask.getLabel() : null,
+          labelChanged ? newTask.getLabel() : null);
+    }
+
+    public static @NotNull Command add(@NotNull Task task) {
+      return new Command(
+          ADD,
+          task.getID(),
+          0,
+          0,
+          task.getUrgency(),
+          task.getImportance(),
+          false,
+          task.getCompleted(),
+          null,
+          task.getLabel());
+    }
+
+    public int getOldUrgency() {
+      return oldUrgency;
+    }
+
+    public int getOldImportance() {
+      return oldImportance;
+    }
+
+    public int getNewUrgency() {
+      return newUrgency;
+    }
+
+    public int getNewImportance() {
+      return newImportance;
+    }
+
+    // Rough memory use (strings count two bytes per character)
+    public long getSizeInBytes() {
+      long size = fixedSizeInBytes;
+      if (oldLabel != null) {
+        size += 40 + 2L * oldLabel.length();
+      }
+      if (newLabel != null) {
+        size += 40 + 2L * newLabel.length();
+      }
+      return size;
+    }
+  }
+}
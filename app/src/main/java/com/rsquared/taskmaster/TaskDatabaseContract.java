@@ -6,11 +6,28 @@ import android.provider.BaseColumns;
 public final class TaskDatabaseContract {
 
   // Define basic database information, types, and syntax
-  public static final int DATABASE_VERSION = 1;
+  public static final int DATABASE_VERSION = 8;
   public static final String DATABASE_NAME = "TaskMaster.db";
   private static final String TEXT_TYPE = " TEXT";
   private static final String INT_TYPE = " INTEGER";
   private static final String COMMA_SEP = ",";
+  private static final String NOW_MILLIS = "CAST(strftime('%s','now') AS INTEGER)*1000";
+
+  // Define connection tuning (applied in onConfigure, which only runs for the primary connection;
+  // the extra read-only connections WAL opens keep the defaults, which only costs them the larger
+  // page cache, since all writing, syncing and checkpointing happens on the primary connection)
+  // WAL lets readers keep going while a batch of writes is being committed; NORMAL sync is
+  // safe in WAL mode (a power loss can drop the last commits but never corrupts the file)
+  public static final String PRAGMA_SYNCHRONOUS = "PRAGMA synchronous=NORMAL";
+  public static final String PRAGMA_CACHE_SIZE = "PRAGMA cache_size=-4096"; // 4 MiB page cache
+  // Checkpoint policy: copy the WAL back into the database every 1000 pages (~4 MiB), and trim
+  // the WAL file back down to 1 MiB afterwards so it stays bounded on disk
+  public static final String PRAGMA_WAL_AUTOCHECKPOINT = "PRAGMA wal_autocheckpoint=1000";
+  public static final String PRAGMA_JOURNAL_SIZE_LIMIT = "PRAGMA journal_size_limit=1048576";
+  // Fully checkpoint and empty the WAL (used when the app is idle).  TRUNCATE needs SQLite 3.8.8
+  // (Android 7.0 on); older versions get RESTART, after which the journal size limit trims the WAL
+  public static final String PRAGMA_WAL_CHECKPOINT = "PRAGMA wal_checkpoint(TRUNCATE)";
+  public static final String PRAGMA_WAL_CHECKPOINT_RESTART = "PRAGMA wal_checkpoint(RESTART)";
 
   // To prevent someone from accidentally instantiating the contract class,
   // give it an empty constructor.
@@ -27,8 +44,24 @@ public final class TaskDatabaseContract {
     public static final String COLUMN_NAME_URGENCY = "urgency";
     public static final String COLUMN_NAME_IMPORTANCE = "importance";
     public static final String COLUMN_NAME_COMPLETED = "completed";
+    public static final String COLUMN_NAME_COMPLETED_AT = "completed_at"; // ms, null if incomplete
 
-    // Define table creation query
+    // Every column, in table order (version 4 onward)
+    public static final String ALL_COLUMNS =
+        _ID
+            + COMMA_SEP
+            + COLUMN_NAME_TASK
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED_AT;
+
+    // Define table creation query (version 1; later versions are reached through the
+    // migrations in TaskDatabaseHelper)
     public static final String CREATE_TABLE =
         "CREATE TABLE "
             + TABLE_NAME
@@ -49,16 +82,759 @@ public final class TaskDatabaseContract {
             + INT_TYPE
             + " )";
 
+    // Define index creation queries (version 2), so incomplete tasks and rating ranges can be
+    // found without scanning the whole table
+    public static final String INDEX_COMPLETED = TABLE_NAME + "_" + COLUMN_NAME_COMPLETED;
+    public static final String INDEX_RATINGS = TABLE_NAME + "_ratings";
+
+    public static final String CREATE_INDEX_COMPLETED =
+        "CREATE INDEX IF NOT EXISTS "
+            + INDEX_COMPLETED
+            + " ON "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_COMPLETED
+            + ")";
+
+    public static final String CREATE_INDEX_RATINGS =
+        "CREATE INDEX IF NOT EXISTS "
+            + INDEX_RATINGS
+            + " ON "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + ")";
+
+    // Define index for walking incomplete tasks in rating order (version 3), which also
+    // covers everything the version 2 completed index was used for
+    public static final String INDEX_INCOMPLETE_RATINGS = TABLE_NAME + "_incomplete_ratings";
+
+    public static final String CREATE_INDEX_INCOMPLETE_RATINGS =
+        "CREATE INDEX IF NOT EXISTS "
+            + INDEX_INCOMPLETE_RATINGS
+            + " ON "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_COMPLETED
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + ")";
+
+    public static final String DROP_INDEX_COMPLETED = "DROP INDEX IF EXISTS " + INDEX_COMPLETED;
+
+    // Define table rebuild queries (version 4): IDs become AUTOINCREMENT so an ID is never
+    // handed out twice (archived tasks keep theirs), and completion times are recorded
+    private static final String REBUILD_TABLE_NAME = TABLE_NAME + "_rebuild";
+
+    public static final String CREATE_REBUILD_TABLE =
+        "CREATE TABLE "
+            + REBUILD_TABLE_NAME
+            + " ("
+            + _ID
+            + INT_TYPE
+            + " PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_NAME_TASK
+            + TEXT_TYPE
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + INT_TYPE
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + INT_TYPE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + INT_TYPE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED_AT
+            + INT_TYPE
+            + " )";
+
+    // (completion times start out empty and are filled in by BACKFILL_COMPLETED_AT)
+    public static final String COPY_INTO_REBUILD_TABLE =
+        "INSERT INTO "
+            + REBUILD_TABLE_NAME
+            + " ("
+            + _ID
+            + COMMA_SEP
+            + COLUMN_NAME_TASK
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + ") SELECT "
+            + _ID
+            + COMMA_SEP
+            + COLUMN_NAME_TASK
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + " FROM "
+            + TABLE_NAME;
+
+    public static final String RENAME_REBUILD_TABLE =
+        "ALTER TABLE " + REBUILD_TABLE_NAME + " RENAME TO " + TABLE_NAME;
+
+    // Tasks completed before completion times were recorded count as completed now.  Only
+    // missing times are filled in, so running this again never moves a recorded one.
+    public static final String BACKFILL_COMPLETED_AT =
+        "UPDATE "
+            + TABLE_NAME
+            + " SET "
+            + COLUMN_NAME_COMPLETED_AT
+            + "="
+            + NOW_MILLIS
+            + " WHERE "
+            + COLUMN_NAME_COMPLETED
+            + ">=1 AND "
+            + COLUMN_NAME_COMPLETED_AT
+            + " IS NULL";
+
+    // List the table's columns (one row each, with the name in the "name" column), to tell
+    // whether it has been rebuilt already
+    public static final String QUERY_TABLE_COLUMNS = "PRAGMA table_info(" + TABLE_NAME + ")";
+
+    // Define completion time index and triggers (version 4) that keep completed_at current no
+    // matter which statement changes the completed flag
+    public static final String INDEX_COMPLETED_AT = TABLE_NAME + "_" + COLUMN_NAME_COMPLETED_AT;
+
+    public static final String CREATE_INDEX_COMPLETED_AT =
+        "CREATE INDEX IF NOT EXISTS "
+            + INDEX_COMPLETED_AT
+            + " ON "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_COMPLETED_AT
+            + ")";
+
+    public static final String CREATE_TRIGGER_COMPLETED_AT_UPDATE =
+        "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_NAME
+            + "_completed_at_update AFTER UPDATE OF "
+            + COLUMN_NAME_COMPLETED
+            + " ON "
+            + TABLE_NAME
+            + " WHEN new."
+            + COLUMN_NAME_COMPLETED
+            + " IS NOT old."
+            + COLUMN_NAME_COMPLETED
+            + " BEGIN UPDATE "
+            + TABLE_NAME
+            + " SET "
+            + COLUMN_NAME_COMPLETED_AT
+            + "=CASE WHEN new."
+            + COLUMN_NAME_COMPLETED
+            + ">=1 THEN "
+            + NOW_MILLIS
+            + " END WHERE "
+            + _ID
+            + "=new."
+            + _ID
+            + "; END";
+
+    public static final String CREATE_TRIGGER_COMPLETED_AT_INSERT =
+        "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_NAME
+            + "_completed_at_insert AFTER INSERT ON "
+            + TABLE_NAME
+            + " WHEN new."
+            + COLUMN_NAME_COMPLETED
+            + ">=1 AND new."
+            + COLUMN_NAME_COMPLETED_AT
+            + " IS NULL BEGIN UPDATE "
+            + TABLE_NAME
+            + " SET "
+            + COLUMN_NAME_COMPLETED_AT
+            + "="
+            + NOW_MILLIS
+            + " WHERE "
+            + _ID
+            + "=new."
+            + _ID
+            + "; END";
+
     // Define table destruction query
     public static final String DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
 
-    // Get all tasks
-    public static final String QUERY_TABLE = "SELECT * FROM " + TABLE_NAME;
+    // Get all tasks, including the ones that have been archived
+    public static final String QUERY_TABLE =
+        "SELECT "
+            + ALL_COLUMNS
+            + " FROM "
+            + TABLE_NAME
+            + " UNION ALL SELECT "
+            + ALL_COLUMNS
+            + " FROM "
+            + Archive.TABLE_NAME;
+
+    // Count tasks (archived ones included) per quadrant of the matrix, in one pass.  Quadrant
+    // numbers: 2 for important (over 50) plus 1 for urgent (over 50), so 3 is "do first"
+    public static final String COLUMN_NAME_QUADRANT = "quadrant";
+    public static final String COLUMN_NAME_TASK_COUNT = "task_count";
+    public static final String COLUMN_NAME_COMPLETED_COUNT = "completed_count";
+    public static final String COLUMN_NAME_IMPORTANCE_SUM = "importance_sum";
+    public static final String COLUMN_NAME_URGENCY_SUM = "urgency_sum";
+    public static final String QUERY_QUADRANT_SUMMARY =
+        "SELECT ("
+            + COLUMN_NAME_IMPORTANCE
+            + ">50)*2+("
+            + COLUMN_NAME_URGENCY
+            + ">50) AS "
+            + COLUMN_NAME_QUADRANT
+            + ", COUNT(*) AS "
+            + COLUMN_NAME_TASK_COUNT
+            + ", SUM("
+            + COLUMN_NAME_COMPLETED
+            + "!=0) AS "
+            + COLUMN_NAME_COMPLETED_COUNT
+            + ", SUM("
+            + COLUMN_NAME_IMPORTANCE
+            + ") AS "
+            + COLUMN_NAME_IMPORTANCE_SUM
+            + ", SUM("
+            + COLUMN_NAME_URGENCY
+            + ") AS "
+            + COLUMN_NAME_URGENCY_SUM
+            + " FROM ("
+            + QUERY_TABLE
+            + ") GROUP BY "
+            + COLUMN_NAME_QUADRANT;
 
     // Get only incomplete tasks
     public static final String QUERY_TABLE_INCOMPLETE =
         "SELECT * FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_COMPLETED + "=0";
 
     public static final String ID_CLAUSE = _ID + "=?";
+
+    // Get one page of incomplete tasks, most important (then most urgent) first.  Pages are
+    // found by key (the last row of the previous page) rather than OFFSET, so each page costs
+    // the same no matter how deep into the table it is.  Ties go to the newest task so the
+    // order matches a straight backwards walk of the incomplete ratings index.
+    private static final String PAGE_ORDER =
+        " ORDER BY "
+            + COLUMN_NAME_IMPORTANCE
+            + " DESC,"
+            + COLUMN_NAME_URGENCY
+            + " DESC,"
+            + _ID
+            + " DESC LIMIT ?";
+
+    public static final String QUERY_INCOMPLETE_FIRST_PAGE = QUERY_TABLE_INCOMPLETE + PAGE_ORDER;
+
+    // Parameters: importance, importance, importance, urgency, urgency, id, page size
+    public static final String QUERY_INCOMPLETE_NEXT_PAGE =
+        QUERY_TABLE_INCOMPLETE
+            + " AND "
+            + COLUMN_NAME_IMPORTANCE
+            + "<=? AND ("
+            + COLUMN_NAME_IMPORTANCE
+            + "<? OR ("
+            + COLUMN_NAME_IMPORTANCE
+            + "=? AND ("
+            + COLUMN_NAME_URGENCY
+            + "<? OR ("
+            + COLUMN_NAME_URGENCY
+            + "=? AND "
+            + _ID
+            + "<?))))"
+            + PAGE_ORDER;
+
+    // Statements compiled once by the database helper and reused for every write
+    public static final String INSERT_TASK =
+        "INSERT INTO "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_TASK
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + ") VALUES (?,?,?,?)";
+
+    // Insert a task under an ID it already has (one it had before it was deleted, or one
+    // reserved for it).  A plain insert, since REPLACE wouldn't fire the delete triggers for a
+    // row still there (the row must be deleted first)
+    public static final String INSERT_TASK_WITH_ID =
+        "INSERT INTO "
+            + TABLE_NAME
+            + " ("
+            + _ID
+            + COMMA_SEP
+            + COLUMN_NAME_TASK
+            + COMMA_SEP
+            + COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_COMPLETED
+            + ") VALUES (?,?,?,?,?)";
+
+    // New tasks get their IDs before they are written, from blocks reserved ahead of time.
+    // AUTOINCREMENT never hands out an ID at or below the highest one recorded in
+    // sqlite_sequence, so raising that record reserves every ID up to it (the record only
+    // exists once something has been inserted, so it may have to be added instead)
+    public static final String QUERY_LAST_ID =
+        "SELECT MAX(IFNULL((SELECT seq FROM sqlite_sequence WHERE name='"
+            + TABLE_NAME
+            + "'),0),IFNULL((SELECT MAX("
+            + _ID
+            + ") FROM "
+            + TABLE_NAME
+            + "),0))";
+    public static final String UPDATE_LAST_ID =
+        "UPDATE sqlite_sequence SET seq=? WHERE name='" + TABLE_NAME + "'";
+    public static final String INSERT_LAST_ID =
+        "INSERT INTO sqlite_sequence (name, seq) VALUES ('" + TABLE_NAME + "',?)";
+
+    public static final String DELETE_TASK = "DELETE FROM " + TABLE_NAME + " WHERE " + ID_CLAUSE;
+
+    public static final String UPDATE_TASK =
+        "UPDATE "
+            + TABLE_NAME
+            + " SET "
+            + COLUMN_NAME_TASK
+            + "=?,"
+            + COLUMN_NAME_URGENCY
+            + "=?,"
+            + COLUMN_NAME_IMPORTANCE
+            + "=?,"
+            + COLUMN_NAME_COMPLETED
+            + "=? WHERE "
+            + ID_CLAUSE;
+
+    public static final String UPDATE_TASK_COMPLETED =
+        "UPDATE " + TABLE_NAME + " SET " + COLUMN_NAME_COMPLETED + "=? WHERE " + ID_CLAUSE;
+  }
+
+  // Inner class for the archive of long-completed tasks (version 4).  Moving them out keeps the
+  // tasks table, which the app actually reads, small no matter how much history builds up.
+  public abstract static class Archive implements BaseColumns {
+
+    // Define table name (columns are the same as the tasks table)
+    public static final String TABLE_NAME = Table.TABLE_NAME + "_archive";
+
+    // Define table creation query
+    public static final String CREATE_TABLE =
+        "CREATE TABLE IF NOT EXISTS "
+            + TABLE_NAME
+            + " ("
+            + _ID
+            + INT_TYPE
+            + " PRIMARY KEY,"
+            + Table.COLUMN_NAME_TASK
+            + TEXT_TYPE
+            + COMMA_SEP
+            + Table.COLUMN_NAME_URGENCY
+            + INT_TYPE
+            + COMMA_SEP
+            + Table.COLUMN_NAME_IMPORTANCE
+            + INT_TYPE
+            + COMMA_SEP
+            + Table.COLUMN_NAME_COMPLETED
+            + INT_TYPE
+            + COMMA_SEP
+            + Table.COLUMN_NAME_COMPLETED_AT
+            + INT_TYPE
+            + " )";
+
+    // Which tasks are old enough to archive (parameter: completed before this time, in ms)
+    private static final String ARCHIVABLE_CLAUSE =
+        Table.COLUMN_NAME_COMPLETED + ">=1 AND " + Table.COLUMN_NAME_COMPLETED_AT + "<?";
+
+    // Find the last ID of the next batch to archive (parameters: completion time, batch size)
+    public static final String QUERY_BATCH_END =
+        "SELECT MAX("
+            + _ID
+            + ") FROM (SELECT "
+            + _ID
+            + " FROM "
+            + Table.TABLE_NAME
+            + " WHERE "
+            + ARCHIVABLE_CLAUSE
+            + " ORDER BY "
+            + _ID
+            + " LIMIT ?)";
+
+    // Copy, then remove, one batch (parameters: completion time, last ID of the batch)
+    public static final String ARCHIVE_BATCH =
+        "INSERT INTO "
+            + TABLE_NAME
+            + " ("
+            + Table.ALL_COLUMNS
+            + ") SELECT "
+            + Table.ALL_COLUMNS
+            + " FROM "
+            + Table.TABLE_NAME
+            + " WHERE "
+            + ARCHIVABLE_CLAUSE
+            + " AND "
+            + _ID
+            + "<=?";
+
+    public static final String DELETE_ARCHIVED_BATCH =
+        "DELETE FROM " + Table.TABLE_NAME + " WHERE " + ARCHIVABLE_CLAUSE + " AND " + _ID + "<=?";
+
+    // Move a single task back out of the archive (parameter: ID)
+    public static final String RESTORE_TASK =
+        "INSERT INTO "
+            + Table.TABLE_NAME
+            + " ("
+            + Table.ALL_COLUMNS
+            + ") SELECT "
+            + Table.ALL_COLUMNS
+            + " FROM "
+            + TABLE_NAME
+            + " WHERE "
+            + Table.ID_CLAUSE;
+
+    public static final String DELETE_RESTORED_TASK =
+        "DELETE FROM " + TABLE_NAME + " WHERE " + Table.ID_CLAUSE;
+
+    // Remove a task from the archive for good
+    public static final String DELETE_TASK = DELETE_RESTORED_TASK;
+  }
+
+  // Inner class for the change log (version 5).  Triggers append the task ID to the log on
+  // every insert, update, or delete, so readers can catch up on just what changed since the
+  // last sequence number they saw.
+  public abstract static class ChangeLog {
+
+    // Define table and column names
+    public static final String TABLE_NAME = "task_changes";
+    public static final String COLUMN_NAME_SEQ = "seq";
+    public static final String COLUMN_NAME_TASK_ID = "task_id";
+
+    // Define table creation query
+    public static final String CREATE_TABLE =
+        "CREATE TABLE IF NOT EXISTS "
+            + TABLE_NAME
+            + " ("
+            + COLUMN_NAME_SEQ
+            + INT_TYPE
+            + " PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_NAME_TASK_ID
+            + INT_TYPE
+            + " NOT NULL )";
+
+    // Define trigger creation queries (one per kind of change to the tasks table)
+    public static final String CREATE_TRIGGER_INSERT = createTrigger("insert", "INSERT", "new");
+    public static final String CREATE_TRIGGER_UPDATE = createTrigger("update", "UPDATE", "new");
+    public static final String CREATE_TRIGGER_DELETE = createTrigger("delete", "DELETE", "old");
+
+    private static String createTrigger(String name, String event, String row) {
+      return "CREATE TRIGGER IF NOT EXISTS "
+          + TABLE_NAME
+          + "_"
+          + name
+          + " AFTER "
+          + event
+          + " ON "
+          + Table.TABLE_NAME
+          + " BEGIN INSERT INTO "
+          + TABLE_NAME
+          + " ("
+          + COLUMN_NAME_TASK_ID
+          + ") VALUES ("
+          + row
+          + "."
+          + Table._ID
+          + "); END";
+    }
+
+    // Get the newest sequence number (0 if nothing has been logged)
+    public static final String QUERY_LATEST_SEQ =
+        "SELECT IFNULL(MAX(" + COLUMN_NAME_SEQ + "),0) FROM " + TABLE_NAME;
+
+    // Get the newest sequence number ever handed out, even if it has since been pruned
+    public static final String QUERY_LAST_ASSIGNED_SEQ =
+        "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name='" + TABLE_NAME + "'),0)";
+
+    // Get the oldest sequence number still in the log (-1 if the log is empty)
+    public static final String QUERY_OLDEST_SEQ =
+        "SELECT IFNULL(MIN(" + COLUMN_NAME_SEQ + "),-1) FROM " + TABLE_NAME;
+
+    // Get the current row of every task changed after a sequence number, along with the newest
+    // sequence number for it.  Task columns are null for tasks that are no longer in the table.
+    public static final String QUERY_CHANGES_SINCE =
+        "SELECT c."
+            + COLUMN_NAME_TASK_ID
+            + ", MAX(c."
+            + COLUMN_NAME_SEQ
+            + ") AS "
+            + COLUMN_NAME_SEQ
+            + ", t.* FROM "
+            + TABLE_NAME
+            + " c LEFT JOIN "
+            + Table.TABLE_NAME
+            + " t ON t."
+            + Table._ID
+            + "=c."
+            + COLUMN_NAME_TASK_ID
+            + " WHERE c."
+            + COLUMN_NAME_SEQ
+            + ">? GROUP BY c."
+            + COLUMN_NAME_TASK_ID;
+
+    // Forget changes that have already been read
+    public static final String DELETE_THROUGH_SEQ =
+        "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_SEQ + "<=?";
+  }
+
+  // Inner class for the full-text label index (version 6, tokenized with unicode61 since
+  // version 8).  The FTS4 table stores only the index and reads labels from the tasks table
+  // itself ("external content"); triggers keep the index in step with every insert, label
+  // change, and delete (archiving included).
+  public abstract static class Search {
+
+    // Define table and column names
+    public static final String TABLE_NAME = Table.TABLE_NAME + "_fts";
+    public static final String COLUMN_NAME_MATCH_INFO = "match_info";
+
+    // Define table creation queries (the prefix option keeps 2 and 3 letter prefix lookups
+    // from scanning every term that starts with them).  The version 6 table uses the default
+    // "simple" tokenizer, which only folds ASCII letters to lower case; unicode61 folds case
+    // (and drops accents) in every script, so a lower case query finds an accented capital.
+    // Not every build of SQLite has unicode61, so the simple table stays where it is missing.
+    public static final String CREATE_TABLE = createTable(null);
+    public static final String CREATE_TABLE_UNICODE61 = createTable("unicode61");
+
+    // Define table deletion query (the index is rebuilt from the tasks table afterwards)
+    public static final String DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+    // Index whatever is already in the tasks table
+    public static final String REBUILD =
+        "INSERT INTO " + TABLE_NAME + "(" + TABLE_NAME + ") VALUES('rebuild')";
+
+    // Define trigger creation queries.  With external content, an old label has to be removed
+    // from the index before the row changes, and the new one added after.
+    public static final String CREATE_TRIGGER_INSERT =
+        createTrigger("insert", "AFTER INSERT", "", addNewLabel());
+    public static final String CREATE_TRIGGER_BEFORE_UPDATE =
+        createTrigger(
+            "before_update",
+            "BEFORE UPDATE OF " + Table.COLUMN_NAME_TASK,
+            " WHEN old." + Table.COLUMN_NAME_TASK + " IS NOT new." + Table.COLUMN_NAME_TASK,
+            removeOldLabel());
+    public static final String CREATE_TRIGGER_AFTER_UPDATE =
+        createTrigger(
+            "after_update",
+            "AFTER UPDATE OF " + Table.COLUMN_NAME_TASK,
+            " WHEN old." + Table.COLUMN_NAME_TASK + " IS NOT new." + Table.COLUMN_NAME_TASK,
+            addNewLabel());
+    public static final String CREATE_TRIGGER_DELETE =
+        createTrigger("delete", "BEFORE DELETE", "", removeOldLabel());
+
+    private static String createTable(String tokenizer) {
+      return "CREATE VIRTUAL TABLE IF NOT EXISTS "
+          + TABLE_NAME
+          + " USING fts4(content=\""
+          + Table.TABLE_NAME
+          + "\", "
+          + Table.COLUMN_NAME_TASK
+          + (tokenizer == null ? "" : ", tokenize=" + tokenizer)
+          + ", prefix=\"2,3\")";
+    }
+
+    private static String addNewLabel() {
+      return "INSERT INTO "
+          + TABLE_NAME
+          + "(docid,"
+          + Table.COLUMN_NAME_TASK
+          + ") VALUES (new."
+          + Table._ID
+          + ",new."
+          + Table.COLUMN_NAME_TASK
+          + ");";
+    }
+
+    private static String removeOldLabel() {
+      return "DELETE FROM " + TABLE_NAME + " WHERE docid=old." + Table._ID + ";";
+    }
+
+    private static String createTrigger(String name, String event, String when, String action) {
+      return "CREATE TRIGGER IF NOT EXISTS "
+          + TABLE_NAME
+          + "_"
+          + name
+          + " "
+          + event
+          + " ON "
+          + Table.TABLE_NAME
+          + when
+          + " BEGIN "
+          + action
+          + " END";
+    }
+
+    // Find tasks whose labels match an FTS query, with the match statistics needed to rank
+    // them (matchinfo 'pcnx': phrase count, column count, row count, then per phrase the hits
+    // in this row, hits in all rows, and rows with a hit)
+    public static final String QUERY_MATCHES =
+        "SELECT t.*, matchinfo("
+            + TABLE_NAME
+            + ",'pcnx') AS "
+            + COLUMN_NAME_MATCH_INFO
+            + " FROM "
+            + TABLE_NAME
+            + " JOIN "
+            + Table.TABLE_NAME
+            + " t ON t."
+            + Table._ID
+            + "="
+            + TABLE_NAME
+            + ".docid WHERE "
+            + TABLE_NAME
+            + " MATCH ?";
+  }
+
+  // Inner class for the spatial index over the rating plane (version 7).  Each task is stored
+  // as a single point (urgency, importance) in an R*Tree, so the tasks inside any rectangle of
+  // the matrix can be found without scanning.  Not every build of SQLite has the R*Tree module,
+  // so the table may be missing; region queries then use the ratings index instead.
+  public abstract static class Region {
+
+    // Define table and column names
+    public static final String TABLE_NAME = Table.TABLE_NAME + "_rtree";
+    public static final String COLUMN_NAME_ID = "id";
+    public static final String COLUMN_NAME_MIN_URGENCY = "min_urgency";
+    public static final String COLUMN_NAME_MAX_URGENCY = "max_urgency";
+    public static final String COLUMN_NAME_MIN_IMPORTANCE = "min_importance";
+    public static final String COLUMN_NAME_MAX_IMPORTANCE = "max_importance";
+
+    // Define table creation query
+    public static final String CREATE_TABLE =
+        "CREATE VIRTUAL TABLE IF NOT EXISTS "
+            + TABLE_NAME
+            + " USING rtree("
+            + COLUMN_NAME_ID
+            + COMMA_SEP
+            + COLUMN_NAME_MIN_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_MAX_URGENCY
+            + COMMA_SEP
+            + COLUMN_NAME_MIN_IMPORTANCE
+            + COMMA_SEP
+            + COLUMN_NAME_MAX_IMPORTANCE
+            + ")";
+
+    // Whether the table exists (it won't if SQLite lacked the module when migrating)
+    public static final String QUERY_TABLE_EXISTS =
+        "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='" + TABLE_NAME + "'";
+
+    // Store a task's ratings as a point (replacing any earlier point for it)
+    private static String storePoint(String row) {
+      return "INSERT OR REPLACE INTO "
+          + TABLE_NAME
+          + " VALUES ("
+          + row
+          + "."
+          + Table._ID
+          + COMMA_SEP
+          + row
+          + "."
+          + Table.COLUMN_NAME_URGENCY
+          + COMMA_SEP
+          + row
+          + "."
+          + Table.COLUMN_NAME_URGENCY
+          + COMMA_SEP
+          + row
+          + "."
+          + Table.COLUMN_NAME_IMPORTANCE
+          + COMMA_SEP
+          + row
+          + "."
+          + Table.COLUMN_NAME_IMPORTANCE
+          + ");";
+    }
+
+    // Copy every task already in the table into the index
+    public static final String POPULATE =
+        "INSERT OR REPLACE INTO "
+            + TABLE_NAME
+            + " SELECT "
+            + Table._ID
+            + COMMA_SEP
+            + Table.COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + Table.COLUMN_NAME_URGENCY
+            + COMMA_SEP
+            + Table.COLUMN_NAME_IMPORTANCE
+            + COMMA_SEP
+            + Table.COLUMN_NAME_IMPORTANCE
+            + " FROM "
+            + Table.TABLE_NAME;
+
+    // Define trigger creation queries (moving a task only touches the index if its ratings
+    // changed; archiving deletes the row, so archived tasks leave the index too)
+    public static final String CREATE_TRIGGER_INSERT =
+        createTrigger("insert", "AFTER INSERT", storePoint("new"));
+    public static final String CREATE_TRIGGER_UPDATE =
+        createTrigger(
+            "update",
+            "AFTER UPDATE OF "
+                + Table.COLUMN_NAME_URGENCY
+                + COMMA_SEP
+                + Table.COLUMN_NAME_IMPORTANCE,
+            storePoint("new"));
+    public static final String CREATE_TRIGGER_DELETE =
+        createTrigger(
+            "delete",
+            "AFTER DELETE",
+            "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_ID + "=old." + Table._ID + ";");
+
+    private static String createTrigger(String name, String event, String action) {
+      return "CREATE TRIGGER IF NOT EXISTS "
+          + TABLE_NAME
+          + "_"
+          + name
+          + " "
+          + event
+          + " ON "
+          + Table.TABLE_NAME
+          + " BEGIN "
+          + action
+          + " END";
+    }
+
+    // Get the tasks inside a rectangle of ratings (urgency from, to, importance from, to)
+    public static final String QUERY_REGION =
+        "SELECT t.* FROM "
+            + TABLE_NAME
+            + " r JOIN "
+            + Table.TABLE_NAME
+            + " t ON t."
+            + Table._ID
+            + "=r."
+            + COLUMN_NAME_ID
+            + " WHERE r."
+            + COLUMN_NAME_MAX_URGENCY
+            + ">=? AND r."
+            + COLUMN_NAME_MIN_URGENCY
+            + "<=? AND r."
+            + COLUMN_NAME_MAX_IMPORTANCE
+            + ">=? AND r."
+            + COLUMN_NAME_MIN_IMPORTANCE
+            + "<=?";
+
+    // Same as above, but through the ratings index (for when there is no R*Tree)
+    public static final String QUERY_REGION_FALLBACK =
+        "SELECT * FROM "
+            + Table.TABLE_NAME
+            + " WHERE "
+            + Table.COLUMN_NAME_URGENCY
+            + " BETWEEN ? AND ? AND "
+            + Table.COLUMN_NAME_IMPORTANCE
+            + " BETWEEN ? AND ?";
   }
 }
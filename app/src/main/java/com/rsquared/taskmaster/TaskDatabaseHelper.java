@@ -3,28 +3,82 @@ package com.rsquared.taskmaster;
 import static android.provider.BaseColumns._ID;
 import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
 import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_VERSION;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_CACHE_SIZE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_JOURNAL_SIZE_LIMIT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_SYNCHRONOUS;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_WAL_AUTOCHECKPOINT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_WAL_CHECKPOINT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.PRAGMA_WAL_CHECKPOINT_RESTART;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.BACKFILL_COMPLETED_AT;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_COMPLETED;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_COMPLETED_AT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_COMPLETED_COUNT;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_IMPORTANCE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_IMPORTANCE_SUM;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_QUADRANT;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_TASK;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_TASK_COUNT;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_URGENCY;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_URGENCY_SUM;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COPY_INTO_REBUILD_TABLE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_INDEX_COMPLETED;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_INDEX_COMPLETED_AT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_INDEX_INCOMPLETE_RATINGS;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_INDEX_RATINGS;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_REBUILD_TABLE;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_TABLE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_TRIGGER_COMPLETED_AT_INSERT;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.CREATE_TRIGGER_COMPLETED_AT_UPDATE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.DELETE_TASK;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.DROP_INDEX_COMPLETED;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.DROP_TABLE;
-import static com.rsquared.taskmaster.TaskDatabaseContract.Table.ID_CLAUSE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.INSERT_TASK;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.INSERT_LAST_ID;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.INSERT_TASK_WITH_ID;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_INCOMPLETE_FIRST_PAGE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_INCOMPLETE_NEXT_PAGE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_LAST_ID;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_QUADRANT_SUMMARY;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_TABLE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_TABLE_COLUMNS;
 import static com.rsquared.taskmaster.TaskDatabaseContract.Table.QUERY_TABLE_INCOMPLETE;
-import static com.rsquared.taskmaster.TaskDatabaseContract.Table.TABLE_NAME;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.RENAME_REBUILD_TABLE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.UPDATE_LAST_ID;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.UPDATE_TASK;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.UPDATE_TASK_COMPLETED;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.CancellationSignal;
+import com.rsquared.taskmaster.TaskDatabaseContract.Archive;
+import com.rsquared.taskmaster.TaskDatabaseContract.ChangeLog;
+import com.rsquared.taskmaster.TaskDatabaseContract.Region;
+import com.rsquared.taskmaster.TaskDatabaseContract.Search;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
 import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 
 // This class serves as the entry point to the database in activities, using info from
 // TaskDatabaseContract
+//
+// Threading: the database runs in write-ahead logging mode, so one writer and any number of
+// readers can work at the same time on different threads.  Readers (getTasks, forEachTask)
+// never block on a writer and see the last committed state.  Writers are serialized by
+// writeLock; a writer that needs a transaction must go through runInTransaction() rather than
+// calling beginTransaction() itself.  Long reads and write batches belong on background threads.
 public class TaskDatabaseHelper extends SQLiteOpenHelper {
 
   // CONSTRUCTORS
@@ -32,9 +86,24 @@ public class TaskDatabaseHelper extends SQLiteOpenHelper {
   // Use singleton method to provide only one instance of a database helper at a time
   private static TaskDatabaseHelper singletonTaskDatabaseHelper;
 
+  // Compiled insert/update statements, reused across calls.  SQLite only allows one writer at a
+  // time anyway, so writers share these statements by holding writeLock (which must be taken
+  // before starting a transaction, never inside one, to avoid deadlocking against other writers)
+  private final Object writeLock = new Object();
+  private SQLiteDatabase statementDatabase; // the connection the statements were compiled for
+  private SQLiteStatement insertStatement;
+  private SQLiteStatement updateStatement;
+  private SQLiteStatement updateCompletedStatement;
+  // Bumped after every committed write, so cached summaries know when they are out of date
+  private volatile long writeGeneration = 0;
+  private volatile QuadrantSummary cachedQuadrantSummary;
+  // Whether the R*Tree for region queries exists (looked up on first use)
+  private volatile Boolean hasRegionIndex;
+
   // If you change the database schema, you must increment the database version.
   public TaskDatabaseHelper(Context context) {
     super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    setWriteAheadLoggingEnabled(true);
   }
 
   public static synchronized TaskDatabaseHelper getInstance(Context context) {
@@ -50,101 +119,896 @@ public class TaskDatabaseHelper extends SQLiteOpenHelper {
 
   // Delete the data (be careful!)
   public void dropTable() {
-    getWritableDatabase().execSQL(DROP_TABLE);
+    synchronized (writeLock) {
+      getWritableDatabase().execSQL(DROP_TABLE);
+      writeGeneration++;
+    }
+  }
+
+  // Run several writes as one transaction, committing only if all of them succeed
+  public void runInTransaction(@NotNull Runnable writes) {
+    synchronized (writeLock) {
+      SQLiteDatabase database = getWritableDatabase();
+      database.beginTransaction();
+      try {
+        writes.run();
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
+        writeGeneration++; // the writes inside only became visible now
+      }
+    }
+  }
+
+  // Copy everything in the write-ahead log into the database and shrink the log file back down
+  // (a good time is when the app goes idle; it waits for any writer to finish first)
+  public void checkpoint() {
+    synchronized (writeLock) {
+      runPragma(
+          getWritableDatabase(),
+          Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+              ? PRAGMA_WAL_CHECKPOINT
+              : PRAGMA_WAL_CHECKPOINT_RESTART);
+    }
+  }
+
+  // Run a pragma that reports a result row, which execSQL() refuses to do
+  private static void runPragma(@NotNull SQLiteDatabase database, @NotNull String pragma) {
+    Cursor cursor = database.rawQuery(pragma, null);
+    try {
+      cursor.moveToFirst();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  // ARCHIVE METHODS
+
+  // Move tasks completed before the given time (in ms) into the archive table.  Each batch is
+  // its own transaction so readers and other writers get a turn in between.  Returns how many
+  // tasks were moved.
+  public int archiveCompletedTasks(long completedBefore, int batchSize) {
+    int archivedCount = 0;
+    int[] batchCount = new int[1];
+    do {
+      runInTransaction(
+          () -> {
+            SQLiteDatabase database = getWritableDatabase();
+            batchCount[0] = 0;
+
+            // Pin down the batch by its last ID so the copy and delete see the same rows
+            long batchEnd =
+                DatabaseUtils.longForQuery(
+                    database,
+                    Archive.QUERY_BATCH_END,
+                    new String[] {Long.toString(completedBefore), Integer.toString(batchSize)});
+            if (batchEnd <= 0) {
+              return; // nothing left to archive
+            }
+
+            SQLiteStatement archiveStatement = database.compileStatement(Archive.ARCHIVE_BATCH);
+            SQLiteStatement deleteStatement =
+                database.compileStatement(Archive.DELETE_ARCHIVED_BATCH);
+            try {
+              archiveStatement.bindLong(1, completedBefore);
+              archiveStatement.bindLong(2, batchEnd);
+              archiveStatement.executeUpdateDelete();
+              deleteStatement.bindLong(1, completedBefore);
+              deleteStatement.bindLong(2, batchEnd);
+              batchCount[0] = deleteStatement.executeUpdateDelete();
+            } finally {
+              archiveStatement.close();
+              deleteStatement.close();
+            }
+          });
+      archivedCount += batchCount[0];
+    } while (batchCount[0] > 0);
+    return archivedCount;
+  }
+
+  // Bring an archived task back into the tasks table, so it can be changed again.  Returns false
+  // if there was no such task in the archive.  (must be called while holding writeLock)
+  private boolean restoreFromArchive(long id) {
+    boolean[] restored = new boolean[1];
+    runInTransaction(
+        () -> {
+          SQLiteDatabase database = getWritableDatabase();
+          database.execSQL(Archive.RESTORE_TASK, new Object[] {id});
+          SQLiteStatement deleteStatement =
+              database.compileStatement(Archive.DELETE_RESTORED_TASK);
+          try {
+            deleteStatement.bindLong(1, id);
+            restored[0] = deleteStatement.executeUpdateDelete() > 0;
+          } finally {
+            deleteStatement.close();
+          }
+        });
+    return restored[0];
+  }
+
+  // Compile the write statements if they don't exist yet or the database has been reopened
+  // (must be called while holding writeLock)
+  private void prepareStatements() {
+    SQLiteDatabase database = getWritableDatabase();
+    if (database != statementDatabase) {
+      releaseStatements();
+      insertStatement = database.compileStatement(INSERT_TASK);
+      updateStatement = database.compileStatement(UPDATE_TASK);
+      updateCompletedStatement = database.compileStatement(UPDATE_TASK_COMPLETED);
+      statementDatabase = database;
+    }
+  }
+
+  // Must be called while holding writeLock
+  private void releaseStatements() {
+    if (statementDatabase != null) {
+      insertStatement.close();
+      updateStatement.close();
+      updateCompletedStatement.close();
+      statementDatabase = null;
+    }
+  }
+
+  // Bind a task label, which SQLiteStatement doesn't accept as null
+  private static void bindLabel(@NotNull SQLiteStatement statement, int index, String label) {
+    if (label == null) {
+      statement.bindNull(index);
+    } else {
+      statement.bindString(index, label);
+    }
+  }
+
+  // SCHEMA MIGRATIONS
+
+  // One step in the schema history, changing the tables in place without losing any rows
+  private interface Migration {
+    void migrate(@NotNull SQLiteDatabase database);
+  }
+
+  // Every schema change, in order: MIGRATIONS[i] takes version i + 1 to version i + 2.
+  // To change the schema, append a migration here and increment DATABASE_VERSION.
+  // Migrations must be safe to run again on a database that already has them: earlier builds
+  // of the app kept the newer schema when downgraded, so a database can be at a lower version
+  // than its tables, and the next upgrade replays over them.
+  private static final Migration[] MIGRATIONS = {
+    // Version 2: indices for the incomplete-task query and for rating ranges
+    (SQLiteDatabase database) -> {
+      database.execSQL(CREATE_INDEX_COMPLETED);
+      database.execSQL(CREATE_INDEX_RATINGS);
+    },
+    // Version 3: index for paging through incomplete tasks in rating order
+    (SQLiteDatabase database) -> {
+      database.execSQL(CREATE_INDEX_INCOMPLETE_RATINGS);
+      database.execSQL(DROP_INDEX_COMPLETED);
+    },
+    // Version 4: AUTOINCREMENT IDs and completion times (the table is rebuilt to get them,
+    // unless it already has been), plus the archive table for long-completed tasks
+    (SQLiteDatabase database) -> {
+      if (!hasColumn(database, QUERY_TABLE_COLUMNS, COLUMN_NAME_COMPLETED_AT)) {
+        database.execSQL(CREATE_REBUILD_TABLE);
+        database.execSQL(COPY_INTO_REBUILD_TABLE);
+        database.execSQL(DROP_TABLE);
+        database.execSQL(RENAME_REBUILD_TABLE);
+      }
+      database.execSQL(BACKFILL_COMPLETED_AT);
+      database.execSQL(CREATE_INDEX_RATINGS);
+      database.execSQL(CREATE_INDEX_INCOMPLETE_RATINGS);
+      database.execSQL(CREATE_INDEX_COMPLETED_AT);
+      database.execSQL(CREATE_TRIGGER_COMPLETED_AT_UPDATE);
+      database.execSQL(CREATE_TRIGGER_COMPLETED_AT_INSERT);
+      database.execSQL(Archive.CREATE_TABLE);
+    },
+    // Version 5: change log, so readers can catch up on changes without a full reload
+    (SQLiteDatabase database) -> {
+      database.execSQL(ChangeLog.CREATE_TABLE);
+      database.execSQL(ChangeLog.CREATE_TRIGGER_INSERT);
+      database.execSQL(ChangeLog.CREATE_TRIGGER_UPDATE);
+      database.execSQL(ChangeLog.CREATE_TRIGGER_DELETE);
+    },
+    // Version 6: full-text index over task labels
+    (SQLiteDatabase database) -> {
+      database.execSQL(Search.CREATE_TABLE);
+      database.execSQL(Search.CREATE_TRIGGER_INSERT);
+      database.execSQL(Search.CREATE_TRIGGER_BEFORE_UPDATE);
+      database.execSQL(Search.CREATE_TRIGGER_AFTER_UPDATE);
+      database.execSQL(Search.CREATE_TRIGGER_DELETE);
+      database.execSQL(Search.REBUILD);
+    },
+    // Version 7: R*Tree over the ratings, for region queries.  Where SQLite was built without
+    // the R*Tree module this does nothing (no table, so no triggers that would break writes),
+    // and queryRegion() uses the ratings index instead.
+    (SQLiteDatabase database) -> {
+      try {
+        database.execSQL(Region.CREATE_TABLE);
+      } catch (SQLiteException e) {
+        return;
+      }
+      database.execSQL(Region.CREATE_TRIGGER_INSERT);
+      database.execSQL(Region.CREATE_TRIGGER_UPDATE);
+      database.execSQL(Region.CREATE_TRIGGER_DELETE);
+      database.execSQL(Region.POPULATE);
+    },
+    // Version 8: the full-text index again, tokenized with unicode61 so that searches ignore
+    // case beyond ASCII.  Where SQLite was built without unicode61 the simple tokenizer is kept.
+    // (The triggers belong to the tasks table, so they outlive the index being replaced.)
+    (SQLiteDatabase database) -> {
+      database.execSQL(Search.DROP_TABLE);
+      try {
+        database.execSQL(Search.CREATE_TABLE_UNICODE61);
+      } catch (SQLiteException e) {
+        database.execSQL(Search.CREATE_TABLE);
+      }
+      database.execSQL(Search.REBUILD);
+    },
+  };
+
+  // Whether a table has a column, given its PRAGMA table_info query
+  private static boolean hasColumn(
+      @NotNull SQLiteDatabase database, @NotNull String tableInfoQuery, @NotNull String column) {
+    Cursor cursor = database.rawQuery(tableInfoQuery, null);
+    try {
+      int nameColumn = cursor.getColumnIndexOrThrow("name");
+      while (cursor.moveToNext()) {
+        if (column.equals(cursor.getString(nameColumn))) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  // Run the migrations between two versions (the open helper wraps this in a transaction)
+  private static void migrate(@NotNull SQLiteDatabase database, int oldVersion, int newVersion) {
+    for (int version = oldVersion; version < newVersion; version++) {
+      MIGRATIONS[version - 1].migrate(database);
+    }
   }
 
   // OVER-RIDDEN METHODS
 
+  // Tune the primary connection as it opens (see TaskDatabaseContract for the reasoning)
+  @Override
+  public void onConfigure(@NotNull SQLiteDatabase database) {
+    super.onConfigure(database);
+    database.execSQL(PRAGMA_SYNCHRONOUS);
+    database.execSQL(PRAGMA_CACHE_SIZE);
+    runPragma(database, PRAGMA_WAL_AUTOCHECKPOINT);
+    runPragma(database, PRAGMA_JOURNAL_SIZE_LIMIT);
+  }
+
+  // New databases start from the version 1 table and replay every migration, so a fresh install
+  // and an upgraded one always end up with the same schema
   @Override
   public void onCreate(@NotNull SQLiteDatabase database) {
     database.execSQL(CREATE_TABLE);
+    migrate(database, 1, DATABASE_VERSION);
   }
 
   @Override
   public void onUpgrade(@NotNull SQLiteDatabase database, int oldVersion, int newVersion) {
-    // This database is only a cache for online data, so its upgrade policy is
-    // to simply to discard the data and start over
-    dropTable();
-    onCreate(database);
+    migrate(database, oldVersion, newVersion);
   }
 
+  // An older version of the app can't know what the newer schema means (its triggers and
+  // indices would be out of step with what it writes), so it refuses to open the database
+  // rather than guess; the data stays as it is for when the newer version is back
   @Override
   public void onDowngrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-    onUpgrade(database, oldVersion, newVersion);
+    throw new SQLiteException(
+        "Can't downgrade the task database from version " + oldVersion + " to " + newVersion);
+  }
+
+  // Statements must be released before the connection they were compiled against
+  // (writeLock is taken first, the same order every writer takes it in)
+  @Override
+  public void close() {
+    synchronized (writeLock) {
+      releaseStatements();
+      super.close();
+    }
   }
 
   // GETTER METHODS
 
   // Retrieve all tasks from the database that have yet to be completed
+  // (or every task, archived ones included, if incompleteTasksOnly is false)
   public Set<Task> getTasks(boolean incompleteTasksOnly) {
+    return getTasks(incompleteTasksOnly, null);
+  }
+
+  // Same as above, but the query can be abandoned part way through by cancelling the signal
+  // (an OperationCanceledException is thrown in that case)
+  public Set<Task> getTasks(boolean incompleteTasksOnly, CancellationSignal cancellationSignal) {
+    Set<Task> tasks = new HashSet<>();
+    forEachTask(incompleteTasksOnly, cancellationSignal, (TaskRow row) -> tasks.add(row.toTask()));
+    return tasks;
+  }
+
+  // Stream tasks from the database one row at a time, without collecting them first
+  public void forEachTask(boolean incompleteTasksOnly, @NotNull TaskConsumer taskConsumer) {
+    forEachTask(incompleteTasksOnly, null, taskConsumer);
+  }
+
+  // Same as above, but the query can be abandoned part way through by cancelling the signal
+  public void forEachTask(
+      boolean incompleteTasksOnly,
+      CancellationSignal cancellationSignal,
+      @NotNull TaskConsumer taskConsumer) {
 
     // Get database
     SQLiteDatabase database = getReadableDatabase();
 
-    // Initialize task list return object
-    Set<Task> tasks = new HashSet<>();
-
     // Set up query (either all tasks are downloaded or only incomplete tasks)
     Cursor cursor;
     if (incompleteTasksOnly) {
-      cursor = database.rawQuery(QUERY_TABLE_INCOMPLETE, null);
+      cursor = database.rawQuery(QUERY_TABLE_INCOMPLETE, null, cancellationSignal);
+    } else {
+      cursor = database.rawQuery(QUERY_TABLE, null, cancellationSignal);
+    }
+    readTasks(cursor, taskConsumer);
+  }
+
+  // Stream one page of incomplete tasks, most important and urgent first.  Pass null for the
+  // first page, then the key returned by the previous call; null comes back once nothing is left
+  public PageKey forEachIncompleteTaskPage(
+      PageKey after,
+      int pageSize,
+      CancellationSignal cancellationSignal,
+      @NotNull TaskConsumer taskConsumer) {
+
+    // Get database
+    SQLiteDatabase database = getReadableDatabase();
+
+    // Set up query, continuing from just after the given key
+    Cursor cursor;
+    if (after == null) {
+      cursor =
+          database.rawQuery(
+              QUERY_INCOMPLETE_FIRST_PAGE,
+              new String[] {Integer.toString(pageSize)},
+              cancellationSignal);
     } else {
-      cursor = database.rawQuery(QUERY_TABLE, null);
+      String importance = Integer.toString(after.importance);
+      String urgency = Integer.toString(after.urgency);
+      cursor =
+          database.rawQuery(
+              QUERY_INCOMPLETE_NEXT_PAGE,
+              new String[] {
+                importance,
+                importance,
+                importance,
+                urgency,
+                urgency,
+                Long.toString(after.id),
+                Integer.toString(pageSize)
+              },
+              cancellationSignal);
+    }
+
+    // Pass rows along while remembering the last one, which is where the next page starts
+    TaskRow lastRow = new TaskRow();
+    lastRow.id = -1;
+    readTasks(
+        cursor,
+        (TaskRow row) -> {
+          lastRow.id = row.id;
+          lastRow.urgency = row.urgency;
+          lastRow.importance = row.importance;
+          taskConsumer.accept(row);
+        });
+    return lastRow.id == -1 ? null : new PageKey(lastRow.importance, lastRow.urgency, lastRow.id);
+  }
+
+  // Hand every row of a task query to the consumer, then close the cursor
+  // (the cursor is closed even if the query is cancelled part way through)
+  private static void readTasks(@NotNull Cursor cursor, @NotNull TaskConsumer taskConsumer) {
+    try {
+      // Look up the column positions once rather than once per row
+      int[] columns = getTaskColumns(cursor);
+
+      // The same row holder is refilled for every row
+      TaskRow row = new TaskRow();
+      while (cursor.moveToNext()) {
+        readTaskRow(cursor, columns, row);
+        taskConsumer.accept(row);
+      }
+    } finally {
+      // Close database connection
+      cursor.close();
+    }
+  }
+
+  // Positions of the task columns in a cursor, in the order readTaskRow() expects them
+  private static int @NotNull [] getTaskColumns(@NotNull Cursor cursor) {
+    return new int[] {
+      cursor.getColumnIndexOrThrow(_ID),
+      cursor.getColumnIndexOrThrow(COLUMN_NAME_TASK),
+      cursor.getColumnIndexOrThrow(COLUMN_NAME_URGENCY),
+      cursor.getColumnIndexOrThrow(COLUMN_NAME_IMPORTANCE),
+      cursor.getColumnIndexOrThrow(COLUMN_NAME_COMPLETED)
+    };
+  }
+
+  // Copy the cursor's current row into the row holder
+  private static void readTaskRow(
+      @NotNull Cursor cursor, int @NotNull [] columns, @NotNull TaskRow row) {
+    row.id = cursor.getLong(columns[0]);
+    row.label = cursor.getString(columns[1]);
+    row.urgency = cursor.getInt(columns[2]);
+    row.importance = cursor.getInt(columns[3]);
+    row.completed = cursor.getInt(columns[4]) >= 1;
+  }
+
+  // SUMMARY METHODS
+
+  // Task counts, completion, and average ratings per quadrant of the matrix, from one grouped
+  // query.  The result is kept until the next write, so calling this often is cheap.
+  public @NotNull QuadrantSummary getQuadrantSummary() {
+    long generation = writeGeneration;
+    QuadrantSummary summary = cachedQuadrantSummary;
+    if (summary != null && summary.generation == generation) {
+      return summary;
     }
 
-    // Pull information from database and store
-    if (cursor.moveToFirst()) {
-      while (!cursor.isAfterLast()) {
-        long id = cursor.getLong(cursor.getColumnIndexOrThrow(_ID));
-        String taskName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME_TASK));
-        int urgency = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_NAME_URGENCY));
-        int importance = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_NAME_IMPORTANCE));
-        boolean completed = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_NAME_COMPLETED)) >= 1;
-        tasks.add(new Task(id, taskName, urgency, importance, completed));
-        cursor.moveToNext();
+    // (the generation is read before querying, so a write that lands meanwhile makes this
+    // result look out of date rather than letting it pass for current)
+    summary = new QuadrantSummary(generation);
+    Cursor cursor = getReadableDatabase().rawQuery(QUERY_QUADRANT_SUMMARY, null);
+    try {
+      int quadrantColumn = cursor.getColumnIndexOrThrow(COLUMN_NAME_QUADRANT);
+      int taskCountColumn = cursor.getColumnIndexOrThrow(COLUMN_NAME_TASK_COUNT);
+      int completedCountColumn = cursor.getColumnIndexOrThrow(COLUMN_NAME_COMPLETED_COUNT);
+      int importanceSumColumn = cursor.getColumnIndexOrThrow(COLUMN_NAME_IMPORTANCE_SUM);
+      int urgencySumColumn = cursor.getColumnIndexOrThrow(COLUMN_NAME_URGENCY_SUM);
+      while (cursor.moveToNext()) {
+        int quadrant = cursor.getInt(quadrantColumn);
+        summary.taskCounts[quadrant] = cursor.getInt(taskCountColumn);
+        summary.completedCounts[quadrant] = cursor.getInt(completedCountColumn);
+        summary.importanceSums[quadrant] = cursor.getLong(importanceSumColumn);
+        summary.urgencySums[quadrant] = cursor.getLong(urgencySumColumn);
       }
+    } finally {
+      cursor.close();
     }
+    cachedQuadrantSummary = summary;
+    return summary;
+  }
 
-    // Close database connection
-    cursor.close();
+  // REGION METHODS
 
-    // Return query results
+  // Get the tasks whose ratings fall inside a rectangle of the matrix (bounds inclusive), such
+  // as a quadrant or the part of the board on screen.  Archived tasks are not included.
+  public @NotNull List<Task> queryRegion(
+      int minUrgency, int maxUrgency, int minImportance, int maxImportance) {
+    List<Task> tasks = new ArrayList<>();
+    forEachTaskInRegion(
+        minUrgency,
+        maxUrgency,
+        minImportance,
+        maxImportance,
+        (TaskRow row) -> tasks.add(row.toTask()));
     return tasks;
   }
 
-  // SETTER METHODS
+  // Same as above, but streamed one row at a time
+  public void forEachTaskInRegion(
+      int minUrgency,
+      int maxUrgency,
+      int minImportance,
+      int maxImportance,
+      @NotNull TaskConsumer taskConsumer) {
+    SQLiteDatabase database = getReadableDatabase();
+    if (hasRegionIndex == null) {
+      hasRegionIndex =
+          DatabaseUtils.longForQuery(database, Region.QUERY_TABLE_EXISTS, null) > 0;
+    }
+    Cursor cursor =
+        database.rawQuery(
+            hasRegionIndex ? Region.QUERY_REGION : Region.QUERY_REGION_FALLBACK,
+            new String[] {
+              Integer.toString(minUrgency),
+              Integer.toString(maxUrgency),
+              Integer.toString(minImportance),
+              Integer.toString(maxImportance)
+            });
+    readTasks(cursor, taskConsumer);
+  }
 
-  // Add a new task to the database
-  public void addTask(@NotNull Task newTask) {
+  // SEARCH METHODS
 
-    // Get the database
-    SQLiteDatabase database = getWritableDatabase();
+  // Find up to limit tasks whose labels contain words starting with every word of the query
+  // ("gro mil" finds "Buy groceries and milk"), most relevant first.  Archived tasks are not
+  // searched.  Punctuation in the query is ignored, so user input can be passed straight in.
+  public @NotNull List<Task> searchTasks(@NotNull String query, int limit) {
+    List<Task> results = new ArrayList<>();
+    String matchQuery = toMatchQuery(query);
+    if (matchQuery == null || limit <= 0) {
+      return results;
+    }
+
+    // Keep only the best matches seen so far (the weakest is at the head, ready to be replaced)
+    PriorityQueue<SearchResult> bestResults = new PriorityQueue<>();
+    Cursor cursor =
+        getReadableDatabase().rawQuery(Search.QUERY_MATCHES, new String[] {matchQuery});
+    try {
+      int[] columns = getTaskColumns(cursor);
+      int matchInfoColumn = cursor.getColumnIndexOrThrow(Search.COLUMN_NAME_MATCH_INFO);
+      TaskRow row = new TaskRow();
+      while (cursor.moveToNext()) {
+        double score = scoreMatch(cursor.getBlob(matchInfoColumn));
+        long id = cursor.getLong(columns[0]);
+        SearchResult weakest = bestResults.peek();
+        if (bestResults.size() == limit && !weakest.isBeatenBy(score, id)) {
+          continue; // not good enough to make the list, so don't bother reading the row
+        }
+        readTaskRow(cursor, columns, row);
+        if (bestResults.size() == limit) {
+          bestResults.poll();
+        }
+        bestResults.add(new SearchResult(row.toTask(), score));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    // Best first
+    while (!bestResults.isEmpty()) {
+      results.add(bestResults.poll().task);
+    }
+    Collections.reverse(results);
+    return results;
+  }
+
+  // Turn user input into an FTS query of quoted prefix terms, or null if it has no words.
+  // Quoting keeps words like "or" and "not" from being read as operators.
+  private static String toMatchQuery(@NotNull String query) {
+    StringBuilder matchQuery = new StringBuilder();
+    int length = query.length();
+    int index = 0;
+    while (index < length) {
+      while (index < length && !Character.isLetterOrDigit(query.charAt(index))) {
+        index++;
+      }
+      int start = index;
+      while (index < length && Character.isLetterOrDigit(query.charAt(index))) {
+        index++;
+      }
+      if (index > start) {
+        if (matchQuery.length() > 0) {
+          matchQuery.append(' ');
+        }
+        matchQuery
+            .append('"')
+            .append(query.substring(start, index).toLowerCase(Locale.ROOT))
+            .append("*\"");
+      }
+    }
+    return matchQuery.length() == 0 ? null : matchQuery.toString();
+  }
+
+  // Relevance from matchinfo 'pcnx' (32-bit native-order integers): each query word scores its
+  // hits in this label, weighted by how rare the word is across all labels
+  private static double scoreMatch(byte[] matchInfo) {
+    if (matchInfo == null) {
+      return 0;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+    int phraseCount = buffer.getInt(0);
+    int columnCount = buffer.getInt(4);
+    int rowCount = buffer.getInt(8);
+    double score = 0;
+    for (int phrase = 0; phrase < phraseCount; phrase++) {
+      for (int column = 0; column < columnCount; column++) {
+        int offset = 12 + 12 * (phrase * columnCount + column);
+        int hitsInRow = buffer.getInt(offset);
+        int rowsWithHits = buffer.getInt(offset + 8);
+        if (hitsInRow > 0 && rowsWithHits > 0) {
+          score += hitsInRow * Math.log(1 + (double) rowCount / rowsWithHits);
+        }
+      }
+    }
+    return score;
+  }
+
+  // CHANGE LOG METHODS
+  // (the change log assumes a single reader, which prunes entries once it has read them)
+
+  // Get the sequence number of the newest change (0 if nothing has changed yet)
+  public long getLatestChangeSeq() {
+    return DatabaseUtils.longForQuery(getReadableDatabase(), ChangeLog.QUERY_LATEST_SEQ, null);
+  }
+
+  // Whether every change after the given sequence number can still be read from the log
+  // (false if some have been pruned, or if the log has never reached that number, as happens
+  // when the database is replaced)
+  public boolean hasChangesSince(long seq) {
+    SQLiteDatabase database = getReadableDatabase();
+    long lastAssignedSeq =
+        DatabaseUtils.longForQuery(database, ChangeLog.QUERY_LAST_ASSIGNED_SEQ, null);
+    long oldestSeq = DatabaseUtils.longForQuery(database, ChangeLog.QUERY_OLDEST_SEQ, null);
+    if (oldestSeq == -1) {
+      oldestSeq = lastAssignedSeq + 1; // everything has been pruned
+    }
+    return seq <= lastAssignedSeq && oldestSeq <= seq + 1;
+  }
+
+  // Stream the current state of every task changed after the given sequence number, returning
+  // the newest sequence number seen (the given one if nothing changed)
+  public long forEachChangeSince(long seq, @NotNull ChangeConsumer changeConsumer) {
+
+    // Get database
+    SQLiteDatabase database = getReadableDatabase();
+
+    Cursor cursor =
+        database.rawQuery(ChangeLog.QUERY_CHANGES_SINCE, new String[] {Long.toString(seq)});
+    long latestSeq = seq;
+    try {
+      int[] columns = getTaskColumns(cursor);
+      int taskIdColumn = cursor.getColumnIndexOrThrow(ChangeLog.COLUMN_NAME_TASK_ID);
+      int seqColumn = cursor.getColumnIndexOrThrow(ChangeLog.COLUMN_NAME_SEQ);
 
-    // Create insert entries
-    ContentValues values = new ContentValues();
-    values.put(COLUMN_NAME_TASK, newTask.getLabel());
-    values.put(COLUMN_NAME_URGENCY, newTask.getUrgency());
-    values.put(COLUMN_NAME_IMPORTANCE, newTask.getImportance());
-    values.put(COLUMN_NAME_COMPLETED, newTask.getCompleted());
+      TaskRow row = new TaskRow();
+      while (cursor.moveToNext()) {
+        latestSeq = Math.max(latestSeq, cursor.getLong(seqColumn));
 
-    // Insert the new row, returning the primary key value of the new row
-	  database.insert(TABLE_NAME, null, values);
+        // Tasks missing from the table were deleted (or archived)
+        if (cursor.isNull(columns[0])) {
+          changeConsumer.removed(cursor.getLong(taskIdColumn));
+        } else {
+          readTaskRow(cursor, columns, row);
+          changeConsumer.changed(row);
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+    return latestSeq;
+  }
+
+  // Forget every change up to and including the given sequence number
+  public void pruneChangesThrough(long seq) {
+    synchronized (writeLock) {
+      getWritableDatabase().execSQL(ChangeLog.DELETE_THROUGH_SEQ, new Object[] {seq});
+    }
+  }
+
+  // SETTER METHODS
+
+  // Add a new task to the database, returning the row ID assigned to it
+  public long addTask(@NotNull Task newTask) {
+    synchronized (writeLock) {
+      prepareStatements();
+      bindLabel(insertStatement, 1, newTask.getLabel());
+      insertStatement.bindLong(2, newTask.getUrgency());
+      insertStatement.bindLong(3, newTask.getImportance());
+      insertStatement.bindLong(4, newTask.getCompleted() ? 1 : 0);
+      long id = insertStatement.executeInsert();
+      writeGeneration++;
+      return id;
+    }
   }
 
   // Update a task's information (used to modify task and also mark complete/incomplete
   public void updateTask(@NotNull Task task) {
+    synchronized (writeLock) {
+      prepareStatements();
+      bindLabel(updateStatement, 1, task.getLabel());
+      updateStatement.bindLong(2, task.getUrgency());
+      updateStatement.bindLong(3, task.getImportance());
+      updateStatement.bindLong(4, task.getCompleted() ? 1 : 0);
+      updateStatement.bindLong(5, task.getID());
+      // A task that was archived while still in memory is restored, then updated
+      if (updateStatement.executeUpdateDelete() == 0 && restoreFromArchive(task.getID())) {
+        updateStatement.executeUpdateDelete();
+      }
+      writeGeneration++;
+    }
+  }
 
-    // Get the database
-    SQLiteDatabase database = getWritableDatabase();
+  // Update only whether a task is completed (the common case of checking a box)
+  public void updateTaskCompleted(@NotNull Task task) {
+    synchronized (writeLock) {
+      prepareStatements();
+      updateCompletedStatement.bindLong(1, task.getCompleted() ? 1 : 0);
+      updateCompletedStatement.bindLong(2, task.getID());
+      if (updateCompletedStatement.executeUpdateDelete() == 0
+          && restoreFromArchive(task.getID())) {
+        updateCompletedStatement.executeUpdateDelete();
+      }
+      writeGeneration++;
+    }
+  }
+
+  // Delete a task outright, wherever it is (tasks table or archive)
+  public void deleteTask(long id) {
+    runInTransaction(
+        () -> {
+          SQLiteDatabase database = getWritableDatabase();
+          database.execSQL(DELETE_TASK, new Object[] {id});
+          database.execSQL(Archive.DELETE_TASK, new Object[] {id});
+        });
+  }
+
+  // Reserve count IDs in a row for new tasks, returning the first.  No other insert will get
+  // them, so the tasks can be written later with insertTaskWithID() (IDs left unused are
+  // simply skipped, as AUTOINCREMENT IDs can always be).
+  public long reserveTaskIDs(int count) {
+    long[] firstID = new long[1];
+    runInTransaction(
+        () -> {
+          SQLiteDatabase database = getWritableDatabase();
+          long lastID = DatabaseUtils.longForQuery(database, QUERY_LAST_ID, null);
+          SQLiteStatement statement = database.compileStatement(UPDATE_LAST_ID);
+          try {
+            statement.bindLong(1, lastID + count);
+            if (statement.executeUpdateDelete() == 0) {
+              database.execSQL(INSERT_LAST_ID, new Object[] {lastID + count});
+            }
+          } finally {
+            statement.close();
+          }
+          firstID[0] = lastID + 1;
+        });
+    return firstID[0];
+  }
+
+  // Put a task in the table under an ID it already has: a deleted task's old one, so anything
+  // referring to that ID (such as the undo history) still finds it, or a reserved one
+  public void insertTaskWithID(@NotNull Task task) {
+    synchronized (writeLock) {
+      getWritableDatabase()
+          .execSQL(
+              INSERT_TASK_WITH_ID,
+              new Object[] {
+                task.getID(),
+                task.getLabel(),
+                task.getUrgency(),
+                task.getImportance(),
+                task.getCompleted() ? 1 : 0
+              });
+      writeGeneration++;
+    }
+  }
 
-    // Match fields to new information
-    ContentValues values = new ContentValues();
-    values.put(COLUMN_NAME_TASK, task.getLabel());
-    values.put(COLUMN_NAME_URGENCY, task.getUrgency());
-    values.put(COLUMN_NAME_IMPORTANCE, task.getImportance());
-    values.put(COLUMN_NAME_COMPLETED, task.getCompleted());
+  // STREAMING READ TYPES
 
-    // Update the database
-    database.update(TABLE_NAME, values, ID_CLAUSE, new String[] {Long.toString(task.getID())});
+  // Receives tasks one at a time as they are read by forEachTask()
+  public interface TaskConsumer {
+    // The row is reused for the next task, so copy out anything that needs to be kept
+    void accept(@NotNull TaskRow row);
+  }
+
+  // Receives changed tasks one at a time as they are read by forEachChangeSince()
+  public interface ChangeConsumer {
+    // The task's current values (the row is reused, as with TaskConsumer)
+    void changed(@NotNull TaskRow row);
+
+    // The task is gone from the tasks table
+    void removed(long id);
+  }
+
+  // Mutable holder for the columns of one task row
+  public static final class TaskRow {
+    public long id;
+    public String label;
+    public int urgency;
+    public int importance;
+    public boolean completed;
+
+    // Create a task from the current values
+    public @NotNull Task toTask() {
+      return new Task(id, label, urgency, importance, completed);
+    }
+  }
+
+  // Totals for each quadrant of the matrix (see getQuadrantSummary())
+  public static final class QuadrantSummary {
+    // Quadrant numbers (important adds 2, urgent adds 1)
+    public static final int ELIMINATE = 0;
+    public static final int DELEGATE = 1; // urgent, not important
+    public static final int SCHEDULE = 2; // important, not urgent
+    public static final int DO_FIRST = 3; // important and urgent
+
+    private final long generation; // write generation the totals were read at
+    private final int[] taskCounts = new int[4];
+    private final int[] completedCounts = new int[4];
+    private final long[] importanceSums = new long[4];
+    private final long[] urgencySums = new long[4];
+
+    private QuadrantSummary(long generation) {
+      this.generation = generation;
+    }
+
+    public int getTaskCount(int quadrant) {
+      return taskCounts[quadrant];
+    }
+
+    public int getCompletedCount(int quadrant) {
+      return completedCounts[quadrant];
+    }
+
+    public int getIncompleteCount(int quadrant) {
+      return taskCounts[quadrant] - completedCounts[quadrant];
+    }
+
+    // Fraction of the quadrant's tasks that are completed (0 if it has none)
+    public float getCompletionRatio(int quadrant) {
+      if (taskCounts[quadrant] == 0) {
+        return 0;
+      }
+      return completedCounts[quadrant] / (float) taskCounts[quadrant];
+    }
+
+    public float getAverageImportance(int quadrant) {
+      if (taskCounts[quadrant] == 0) {
+        return 0;
+      }
+      return importanceSums[quadrant] / (float) taskCounts[quadrant];
+    }
+
+    public float getAverageUrgency(int quadrant) {
+      if (taskCounts[quadrant] == 0) {
+        return 0;
+      }
+      return urgencySums[quadrant] / (float) taskCounts[quadrant];
+    }
+
+    public int getTotalTaskCount() {
+      return taskCounts[0] + taskCounts[1] + taskCounts[2] + taskCounts[3];
+    }
+
+    public int getTotalCompletedCount() {
+      return completedCounts[0] + completedCounts[1] + completedCounts[2] + completedCounts[3];
+    }
+  }
+
+  // A search match and its relevance (ordered weakest first; newer tasks win ties)
+  private static final class SearchResult implements Comparable<SearchResult> {
+    final Task task;
+    final double score;
+
+    SearchResult(@NotNull Task task, double score) {
+      this.task = task;
+      this.score = score;
+    }
+
+    boolean isBeatenBy(double otherScore, long otherID) {
+      return otherScore > score || (otherScore == score && otherID > task.getID());
+    }
+
+    @Override
+    public int compareTo(@NotNull SearchResult other) {
+      int byScore = Double.compare(score, other.score);
+      if (byScore != 0) {
+        return byScore;
+      }
+      return task.getID() < other.task.getID() ? -1 : (task.getID() == other.task.getID() ? 0 : 1);
+    }
+  }
+
+  // Position in the incomplete task ordering, used to ask for the page that follows it
+  public static final class PageKey {
+    public final int importance;
+    public final int urgency;
+    public final long id;
+
+    public PageKey(int importance, int urgency, long id) {
+      this.importance = importance;
+      this.urgency = urgency;
+      this.id = id;
+    }
+
+    // Whether a task with these values sorts no later than this key (so its page has been read)
+    public boolean covers(int taskImportance, int taskUrgency, long taskID) {
+      if (taskImportance != importance) {
+        return taskImportance > importance;
+      }
+      if (taskUrgency != urgency) {
+        return taskUrgency > urgency;
+      }
+      return taskID >= id;
+    }
   }
 }
@@ -11,12 +11,14 @@ import android.view.View;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
 
-import static android.graphics.Rect.intersects;
-
 // Class to perform all graphic operations (drawing on canvas, etc)
 public class TaskDraw extends View {
 
@@ -35,12 +37,14 @@ public class TaskDraw extends View {
   protected static final float arrowLength = 50;
   protected static final float arrowPointLength = 20;
   protected static final float maxNudgeRatio = (float) 0.25; // Only nudge up to 25% importance
+  protected static final int maxRelayoutRounds = 4; // before a one-task relayout does them all
   protected static final String labelHorizontal = "URGENCY";
   protected static final String labelVertical = "IMPORTANCE";
   // Paint objects used for drawing on canvas
   protected Paint paintRect;
   protected Paint paintCheckMark;
   protected Paint paintText;
+  protected Paint paintHighlight; // task labels that match the current search
 
   // Values for vertical and horizontal labels
   protected Paint paintAxisLabels;
@@ -59,6 +63,38 @@ public class TaskDraw extends View {
 
   // Store a taskViewModel passed in from MainActivity, because views cannot initiate view models
   private TaskViewModel taskViewModel;
+  // IDs of the tasks matching the current search (empty when there is no search)
+  private Set<Long> highlightedTaskIDs = Collections.emptySet();
+  // Label widths already measured (shared with every other TaskDraw, including GroupPopup)
+  private final LabelWidthCache labelWidths = LabelWidthCache.getInstance();
+
+  // Scratch objects reused by the layout pass, so laying out a board that is already on screen
+  // doesn't allocate (main thread only)
+  private final float[] scratchCoordinates = new float[2];
+  private final Rect scratchTouchArea = new Rect();
+  private final Rect scratchOldTouchArea = new Rect();
+  private final List<Task> scratchOrderedTasks = new ArrayList<>();
+  private final List<TaskGroup> scratchNewTaskGroups = new ArrayList<>();
+  private final List<Task> scratchNearbyTasks = new ArrayList<>();
+  private final List<TaskGroup> scratchNearbyTaskGroups = new ArrayList<>();
+  private final Set<Task> scratchTasksToRemove = new HashSet<>();
+  private final Set<TaskGroup> scratchTaskGroupsToRemove = new HashSet<>();
+  private final List<TaskGroup> scratchTakenOutTaskGroups = new ArrayList<>();
+  // Touch areas of the ungrouped tasks and of the groups, and the group each grouped task is in.
+  // Built by overlappingTasks and kept up to date by relayoutTask.
+  private final TaskGrid<Task> taskGrid = new TaskGrid<>();
+  private final TaskGrid<TaskGroup> taskGroupGrid = new TaskGrid<>();
+  private final IdentityHashMap<Task, TaskGroup> taskGroupOfTask = new IdentityHashMap<>();
+  private boolean gridsReady = false; // once the first layout has built them
+  // Finds the groups of overlapping tasks
+  private final TaskClusterer taskClusterer = new TaskClusterer();
+  private final TaskClusterer.GroupLayout groupLayout = this::setTaskGroupGraphic;
+  // Nudges groups' tasks apart, checking against the grids above
+  private final TaskNudger taskNudger = new TaskNudger(taskGrid, taskGroupGrid, taskGroupOfTask);
+  private final TaskNudger.Origin taskGroupOrigin =
+      (TaskGroup taskGroup) ->
+          getPixelCoordinates(
+              taskGroup.getUrgency(), taskGroup.getImportance(), scratchCoordinates)[1];
 
   // CONSTRUCTOR
 
@@ -70,11 +106,13 @@ public class TaskDraw extends View {
   }
 
   // Function to determine the relative position on the urgency vs importance graphic
-  @Contract(value = "_, _ -> new", pure = true)
-  public static float @NotNull [] getPercentCoordinates(int urgency, int importance) {
-    float x = (100 - (float) urgency) / 100;
-    float y = (100 - (float) importance) / 100;
-    return new float[] {x, y};
+  // (written into coordinates as {x, y}, which is also returned)
+  @Contract(value = "_, _, _ -> param3")
+  public static float @NotNull [] getPercentCoordinates(
+      int urgency, int importance, float @NotNull [] coordinates) {
+    coordinates[0] = (100 - (float) urgency) / 100;
+    coordinates[1] = (100 - (float) importance) / 100;
+    return coordinates;
   }
 
   // SETTER FUNCTIONS
@@ -124,11 +162,21 @@ public class TaskDraw extends View {
     fontBottom = paintText.getFontMetrics().bottom;
     margin = marginOuter - fontTop + marginInner;
 
+    // Paint object for search matches (same text, different color)
+    paintHighlight = new Paint(paintText);
+    paintHighlight.setColor(Color.YELLOW);
+
     // Paint object for axis label text
     paintAxisLabels = new Paint(paintText);
     paintAxisLabels.setUnderlineText(true);
   }
 
+  // Highlight the tasks (and groups holding them) that match a search, then redraw
+  public void setHighlightedTaskIDs(@NotNull Set<Long> newHighlightedTaskIDs) {
+    highlightedTaskIDs = newHighlightedTaskIDs;
+    invalidate();
+  }
+
   // Set the overall dimensions of the graphic
   public void setDimensions(float width, float height) {
     widthCanvas = width;
@@ -137,16 +185,23 @@ public class TaskDraw extends View {
 
   // GETTER FUNCTIONS
 
+  // How much work the grouping in the last layout did
+  public @NotNull TaskClusterer.Stats getClusterStats() {
+    return taskClusterer.getStats();
+  }
+
   // Function to determine the absolute distance position on the urgency vs importance graphic
-  protected float[] getPixelCoordinates(int urgency, int importance) {
-    float[] percentCoordinates = getPercentCoordinates(urgency, importance);
-    float x = percentCoordinates[0] * (widthCanvas - 2 * margin) + margin;
-    float y =
-        percentCoordinates[1] * (heightCanvas - 2 * margin - (fontBottom - fontTop))
+  // (written into coordinates as {x, y}, which is also returned)
+  protected float @NotNull [] getPixelCoordinates(
+      int urgency, int importance, float @NotNull [] coordinates) {
+    getPercentCoordinates(urgency, importance, coordinates);
+    coordinates[0] = coordinates[0] * (widthCanvas - 2 * margin) + margin;
+    coordinates[1] =
+        coordinates[1] * (heightCanvas - 2 * margin - (fontBottom - fontTop))
             + margin
             + padding
             - fontTop;
-    return new float[] {x, y};
+    return coordinates;
   }
 
   // Inverse of function above
@@ -251,36 +306,37 @@ public class TaskDraw extends View {
         };
   }
 
+  // The graphic is only created the first time; after that it is updated in place
   public void setTaskGraphic(@NotNull Task task) {
-    String label = task.getLabel();
-    int urgency = task.getUrgency();
-    int importance = task.getImportance();
-    task.setTaskGraphic(setGraphic(label, urgency, importance));
+    TaskGraphic graphic = task.getTaskGraphic();
+    if (graphic == null) {
+      graphic = new TaskGraphic();
+      task.setTaskGraphic(graphic);
+    }
+    setGraphic(graphic, task.getLabel(), task.getUrgency(), task.getImportance());
   }
 
   public void setTaskGroupGraphic(@NotNull TaskGroup taskGroup) {
-    String label = taskGroup.getLabel();
-    int urgency = taskGroup.getUrgency();
-    int importance = taskGroup.getImportance();
-    taskGroup.setTaskGraphic(setGraphic(label, urgency, importance));
+    TaskGraphic graphic = taskGroup.getTaskGraphic();
+    if (graphic == null) {
+      graphic = new TaskGraphic();
+      taskGroup.setTaskGraphic(graphic);
+    }
+    setGraphic(graphic, taskGroup.getLabel(), taskGroup.getUrgency(), taskGroup.getImportance());
   }
 
   // Function to get all the necessary dimensions for the task label, check box, and check mark.
-  // These metrics are stored in hash maps in taskViewModel to be pulled during an 'onDraw()' call
-  @Contract("_, _, _ -> new")
-  protected @NotNull TaskGraphic setGraphic(String label, int urgency, int importance) {
+  // They are written into the given graphic, to be pulled during an 'onDraw()' call
+  protected void setGraphic(
+      @NotNull TaskGraphic graphic, String label, int urgency, int importance) {
 
     // Get the position on the canvas for the given task
-    float[] coordinates = getPixelCoordinates(urgency, importance);
+    float[] coordinates = getPixelCoordinates(urgency, importance, scratchCoordinates);
     float x = coordinates[0]; // The horizontal position of the left side of the checkbox
     float y = coordinates[1]; // The baseline for text and checkbox
 
-    // Create the dimensions for the task text on the canvas
-    Rect rectText = new Rect(); // Outlines the text
-
-    // Get text dimensions using two different approaches
-    paintText.getTextBounds(label, 0, label.length(), rectText);
-    float textWidth = rectText.width();
+    // Get the width of the task text on the canvas (measured once per label and font)
+    float textWidth = labelWidths.getWidth(paintText, label);
 
     float width = checkBoxSide + spacing + textWidth;
 
@@ -309,88 +365,43 @@ public class TaskDraw extends View {
     left = rectLeft;
     right = textRight;
 
-    Rect touchArea = new Rect((int) left, (int) top, (int) right, (int) bottom);
-
-    // Increase the touch area a little bit for smoother response
-    touchArea.inset(-(int) padding, -(int) padding);
-
-    // Update measurements in taskViewModel (so they don't have to be recalculated on drawing)
-    return new TaskGraphic(y, checkBoxStart, textLeft, touchArea);
+    // Update measurements in the graphic (so they don't have to be recalculated on drawing),
+    // increasing the touch area a little bit for smoother response
+    graphic.setBaseline(y);
+    graphic.setCheckBoxStart(checkBoxStart);
+    graphic.setTextStart(textLeft);
+    graphic.setTouchArea(
+        (int) left - (int) padding,
+        (int) top - (int) padding,
+        (int) right + (int) padding,
+        (int) bottom + (int) padding);
   }
 
   // This function moves ("nudges") individual tasks that overlap so they are next to each other
-  // but not overlapping.
-  // Todo: change code so that tasks can fit in the negative spaces of task groups
+  // but not overlapping (see TaskNudger).
   protected boolean nudgeTasks(@NotNull TaskGroup taskGroup, boolean forceNudge) {
+    taskNudger.setMetrics(fontTop, fontBottom, padding, margin, heightCanvas, maxNudgeRatio);
+    return taskNudger.nudgeTasks(taskGroup, taskGroupOrigin.getBaseline(taskGroup), forceNudge);
+  }
 
-    // Get the position on the canvas for the given task
-    float[] coordinates = getPixelCoordinates(taskGroup.getUrgency(), taskGroup.getImportance());
-    float yOrigin = coordinates[1]; // The vertical position of the baseline
-    // (lower edge of checkbox and baseline for text)
-
-    // Setting up task measurements (including totals)
-    int numTasks = taskGroup.getTasks().size();
-    float taskHeight = fontBottom - fontTop;
-    float paddedTaskHeight = taskHeight + 2 * padding;
-    float totalTaskHeight = numTasks * paddedTaskHeight;
-    float topOfTasks = (float) (yOrigin - totalTaskHeight / 2.0);
-    float bottomOfTasks = (float) (yOrigin + totalTaskHeight / 2.0);
-
-    // Adjust so margins are not crossed
-    // (Note that we assume that the tasks don't cross both the top and bottom, that they fit)
-    if (topOfTasks < margin) {
-      topOfTasks = margin;
-      bottomOfTasks = topOfTasks + totalTaskHeight;
-    }
-    if (bottomOfTasks > heightCanvas - margin) {
-      bottomOfTasks = heightCanvas - margin;
-      topOfTasks = bottomOfTasks - totalTaskHeight;
-    }
+  // Nudge apart every group there is room for, collecting the ones nudged (see TaskNudger)
+  private void nudgeTaskGroups(
+      @NotNull Collection<TaskGroup> taskGroups, @NotNull Collection<TaskGroup> nudgedTaskGroups) {
+    taskNudger.setMetrics(fontTop, fontBottom, padding, margin, heightCanvas, maxNudgeRatio);
+    taskNudger.nudgeTaskGroups(taskGroups, taskGroupOrigin, nudgedTaskGroups);
+  }
 
-    if (!forceNudge) {
-      // Test dimensions to see if nudging would produce any unwanted overlap of graphics
-      int counter = 0;
+  // Take apart the groups whose tasks were nudged, now that every group has been tried (the
+  // tasks' grid entries were already moved)
+  private void ungroupNudgedTasks(@NotNull Collection<TaskGroup> nudgedTaskGroups) {
+    for (TaskGroup taskGroup : nudgedTaskGroups) {
+      taskViewModel.getTaskGroups().remove(taskGroup);
+      taskGroupGrid.remove(taskGroup);
       for (Task task : taskGroup.getTasks()) {
-
-        // See if the minimum required nudging exceeds the predetermined movement limit
-        float yBaseline = task.getTaskGraphic().getBaseline();
-        float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
-        float nudgeY = yBaselineDest - yBaseline;
-        if (Math.abs(nudgeY) / heightCanvas > maxNudgeRatio) { // Only move tasks so far
-          return false;
-        }
-
-        // Check and see if there is any overlap with other tasks for dedicated touch area
-        Rect testRect = new Rect(task.getTaskGraphic().getTouchArea());
-        testRect.offset(0, (int) nudgeY);
-        for (Task checkTask : taskViewModel.getTasks()) {
-          if (!taskGroup.isTaskInGroup(checkTask)
-              && testRect.intersect(checkTask.getTaskGraphic().getTouchArea())) {
-            return false;
-          }
-        }
-
-        // Check task group touch areas as well
-        for (TaskGroup checkTaskGroup : taskViewModel.getTaskGroups()) {
-          if (taskGroup != checkTaskGroup
-              && testRect.intersect(checkTaskGroup.getTaskGraphic().getTouchArea())) {
-            return false;
-          }
-        }
-        counter++;
+        taskGroupOfTask.remove(task);
+        taskViewModel.getTasks().add(task);
       }
     }
-
-    // If the tests were passed, then nudge each task to an unoccupied location
-    int counter = 0;
-    for (Task task : taskGroup.getTasks()) {
-      float yBaseline = task.getTaskGraphic().getBaseline();
-      float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
-      float nudgeY = yBaselineDest - yBaseline;
-      task.getTaskGraphic().move(0, (int) nudgeY);
-      counter++;
-    }
-    return true;
   }
 
   // Collects pairs of tasks whose touch areas overlap and turns them into a group of items
@@ -398,7 +409,6 @@ public class TaskDraw extends View {
   protected void overlappingTasks() {
 
     taskViewModel.deGroupTasks();
-    boolean newPairingFound;
     Set<Task> tasks = taskViewModel.getTasks();
     Set<TaskGroup> taskGroups = taskViewModel.getTaskGroups();
 
@@ -407,88 +417,208 @@ public class TaskDraw extends View {
       setTaskGraphic(task);
     }
 
-    // Loop through possible pairs until two that overlap are found,
-    // then queue the group to be created and the tasks to be moved to a group list
-    do {
-      TaskGroup taskGroupToAdd = new TaskGroup();
-      Set<Task> tasksToRemove = new HashSet<>();
-      Set<Task> otherTasks = new HashSet<>(tasks);
-      newPairingFound = false;
-
-      // Loop through every possible combination of tasks
-      for (Task task : tasks) {
-        if (otherTasks.size() > 0) {
-          otherTasks.remove(task);
-        }
-        // (Note that the lower bound of this loop increases with the first loop.
-        //   This is to prevent redundancy, ex: #1 & #2 vs #2 & #1.  Only first will occur)
-        for (Task otherTask : Collections.unmodifiableSet(otherTasks)) {
-
-          // See if item touch areas overlap and group them together (groups and/or tasks)
-          Rect touchArea = task.getTaskGraphic().getTouchArea();
-          Rect otherTouchArea = otherTask.getTaskGraphic().getTouchArea();
-          if (intersects(touchArea, otherTouchArea)) {
-            newPairingFound = true; // Break while loop to start over with new info
-
-            // Combine into groups:
-            // (item + item, item + group, group + item, or group + group)
-            taskGroupToAdd.addTask(task);
-            taskGroupToAdd.addTask(otherTask);
-            setTaskGroupGraphic(taskGroupToAdd);
-            tasksToRemove.add(task);
-            tasksToRemove.add(otherTask);
-          }
-          // Stop looking for pairs and process this pair
-          // NOTE: the reason we break the double for-loop instead of marking all
-          // combinations and processing them in the end is that grouping changes the
-          // initial conditions of the process, so we start over for each pair found
-          if (newPairingFound) {
-            break;
-          }
-        }
-        if (newPairingFound) {
-          break;
-        }
+    // Group the overlapping tasks, in the order the set gives them (see TaskClusterer)
+    List<Task> orderedTasks = scratchOrderedTasks;
+    List<TaskGroup> newTaskGroups = scratchNewTaskGroups;
+    orderedTasks.addAll(tasks);
+    taskClusterer.cluster(orderedTasks, groupLayout, newTaskGroups);
+
+    // Add new groups to the master list for groups and remove grouped tasks from master
+    // list for tasks (because they are now a part of a group, eliminates redundancy)
+    Set<Task> tasksToRemove = scratchTasksToRemove;
+    for (TaskGroup taskGroup : newTaskGroups) {
+      taskGroups.add(taskGroup);
+      tasksToRemove.addAll(taskGroup.getTasks());
+    }
+    tasks.removeAll(tasksToRemove);
+
+    // Index what is left in grids, with cells about a task high and a few tasks wide, so the
+    // nudging checks below only look at neighbours
+    float paddedTaskHeight = fontBottom - fontTop + 2 * padding;
+    taskGrid.reset(widthCanvas, heightCanvas, 4 * paddedTaskHeight, paddedTaskHeight);
+    taskGroupGrid.reset(widthCanvas, heightCanvas, 4 * paddedTaskHeight, paddedTaskHeight);
+    for (Task task : tasks) {
+      taskGrid.add(task, task.getTaskGraphic());
+    }
+    taskGroupOfTask.clear();
+    for (TaskGroup taskGroup : taskGroups) {
+      taskGroupGrid.add(taskGroup, taskGroup.getTaskGraphic());
+      for (Task task : taskGroup.getTasks()) {
+        taskGroupOfTask.put(task, taskGroup);
       }
+    }
+    gridsReady = true;
 
-      // Todo: this area below needs be organized better (check first, then add/remove, not vice versa)
-
-      // Add new groups to the master list for groups and remove grouped tasks from master
-      // list for tasks (because they are now a part of a group, eliminates redundancy)
-      if (newPairingFound) {
-        taskGroups.add(taskGroupToAdd);
-        tasks.removeAll(tasksToRemove);
-
-        // See if the newly formed group overlaps any other tasks
-        for (Task task : tasks) {
-          if (taskGroupToAdd
-              .getTaskGraphic()
-              .getTouchArea()
-              .intersect(task.getTaskGraphic().getTouchArea())) {
-            taskGroupToAdd.addTask(task);
-            setTaskGroupGraphic(taskGroupToAdd);
-            tasksToRemove.add(task);
-          }
-        }
+    // If nudging the tasks worked, then no need for a group
+    Set<TaskGroup> taskGroupsToRemove = scratchTaskGroupsToRemove;
+    nudgeTaskGroups(taskGroups, taskGroupsToRemove);
+    ungroupNudgedTasks(taskGroupsToRemove);
+
+    taskGroupsToRemove.clear();
+    tasksToRemove.clear();
+    orderedTasks.clear();
+    newTaskGroups.clear();
+    scratchNearbyTasks.clear();
+    scratchNearbyTaskGroups.clear();
+    taskViewModel.publishBoard(); // drawing and touch handling switch to the new layout
+    invalidate(); // force a re-draw
+  }
 
-        tasks.removeAll(tasksToRemove);
-      }
+  // INCREMENTAL LAYOUT
+
+  // Lay the board out again after one task changed (it was dropped somewhere new, or its label
+  // changed), leaving alone everything that isn't near its old or new position.  The task is
+  // taken out along with its old group, and so is anything its old spot overlaps.  Every task
+  // taken out goes back to its own position, and whatever it then overlaps is taken out too.
+  // Those tasks are grouped again, pulling in anything the new groups overlap, then put back and
+  // nudged like a full layout would.  The cost depends on how crowded that part of the board is,
+  // not on how many tasks there are.  If the neighbourhood keeps growing, or the board changed in
+  // ways the grids don't know about, everything is laid out again instead.
+  public void relayoutTask(long id) {
+    Task changedTask = taskViewModel.getTask(id);
+    Set<Task> tasks = taskViewModel.getTasks();
+    Set<TaskGroup> taskGroups = taskViewModel.getTaskGroups();
+    if (changedTask == null || !gridsReady) {
+      overlappingTasks();
+      return;
+    }
+    TaskGroup oldTaskGroup = taskGroupOfTask.get(changedTask);
+    if (oldTaskGroup == null ? !tasks.contains(changedTask) : !taskGroups.contains(oldTaskGroup)) {
+      overlappingTasks();
+      return;
+    }
 
-    } while (newPairingFound); // Keep going until no more overlaps are detected
+    // Take out the changed task (with its group) and whatever sat near its old spot
+    List<Task> localTasks = scratchOrderedTasks;
+    List<TaskGroup> newTaskGroups = scratchNewTaskGroups;
+    Rect area = scratchTouchArea;
+    changedTask.getTaskGraphic().getTouchArea(scratchOldTouchArea);
+    takeOut(changedTask, localTasks);
+    takeOutOverlapping(scratchOldTouchArea, localTasks);
+
+    // Grow the neighbourhood until the regrouped tasks overlap nothing outside it
+    int laidOutCount = 0;
+    int rounds = 0;
+    while (true) {
+      for (; laidOutCount < localTasks.size(); laidOutCount++) {
+        Task task = localTasks.get(laidOutCount);
+        setTaskGraphic(task);
+        task.getTaskGraphic().getTouchArea(area);
+        takeOutOverlapping(area, localTasks);
+      }
+      taskClusterer.cluster(localTasks, groupLayout, newTaskGroups);
+      boolean grew = false;
+      for (TaskGroup taskGroup : newTaskGroups) {
+        taskGroup.getTaskGraphic().getTouchArea(area);
+        grew |= takeOutOverlapping(area, localTasks);
+      }
+      if (!grew) {
+        break;
+      }
+      if (++rounds == maxRelayoutRounds) {
+        tasks.addAll(localTasks); // (any groups they were in are already gone)
+        localTasks.clear();
+        newTaskGroups.clear();
+        scratchTakenOutTaskGroups.clear();
+        overlappingTasks();
+        return;
+      }
+    }
 
-    // If nudging the tasks worked, then no need for a group
-    Set<TaskGroup> taskGroupsToRemove = new HashSet<>();
-    Set<Task> tasksToAdd = new HashSet<>();
-    for (TaskGroup taskGroup : taskGroups) {
-      if (nudgeTasks(taskGroup, false)) {
-        taskGroupsToRemove.add(taskGroup);
-        tasksToAdd.addAll(taskGroup.getTasks());
+    // Put everything back, then nudge the new groups apart where there is room
+    for (TaskGroup taskGroup : newTaskGroups) {
+      taskGroups.add(taskGroup);
+      taskGroupGrid.add(taskGroup, taskGroup.getTaskGraphic());
+      for (Task task : taskGroup.getTasks()) {
+        taskGroupOfTask.put(task, taskGroup);
+      }
+    }
+    for (Task task : localTasks) {
+      if (!taskGroupOfTask.containsKey(task)) {
+        tasks.add(task);
+        taskGrid.add(task, task.getTaskGraphic());
       }
     }
+    Set<TaskGroup> taskGroupsToRemove = scratchTaskGroupsToRemove;
+    nudgeTaskGroups(newTaskGroups, taskGroupsToRemove);
+    ungroupNudgedTasks(taskGroupsToRemove);
+
+    // Publish only what changed: the neighbourhood's old entries come off the board and its new
+    // ones go on (tasks that were grouped have no entry to take off)
+    BoardSnapshot board = taskViewModel.editBoard();
+    for (TaskGroup taskGroup : scratchTakenOutTaskGroups) {
+      board.removeTaskGroup(taskGroup);
+    }
+    for (Task task : localTasks) {
+      board.removeTask(task);
+    }
+    for (Task task : localTasks) {
+      if (!taskGroupOfTask.containsKey(task)) {
+        board.addTask(task);
+      }
+    }
+    for (TaskGroup taskGroup : newTaskGroups) {
+      if (!taskGroupsToRemove.contains(taskGroup)) {
+        board.addTaskGroup(taskGroup);
+      }
+    }
+    taskViewModel.publishEditedBoard(board);
+    invalidate();
+
+    taskGroupsToRemove.clear();
+    localTasks.clear();
+    newTaskGroups.clear();
+    scratchTakenOutTaskGroups.clear();
+    scratchNearbyTasks.clear();
+    scratchNearbyTaskGroups.clear();
+  }
 
-    taskGroups.removeAll(taskGroupsToRemove);
-    tasks.addAll(tasksToAdd);
-    invalidate(); // force a re-draw
+  // Redraw after a change to one task that doesn't move anything (a check mark, being dragged)
+  public void refreshTask(@NotNull Task task) {
+    taskViewModel.publishTask(task);
+    invalidate();
+  }
+
+  // Take a task off the board for relayoutTask (a grouped task takes its whole group with it)
+  private void takeOut(@NotNull Task task, @NotNull List<Task> localTasks) {
+    TaskGroup taskGroup = taskGroupOfTask.get(task);
+    if (taskGroup != null) {
+      takeOut(taskGroup, localTasks);
+    } else if (taskViewModel.getTasks().remove(task)) {
+      taskGrid.remove(task);
+      localTasks.add(task);
+    }
+  }
+
+  private void takeOut(@NotNull TaskGroup taskGroup, @NotNull List<Task> localTasks) {
+    taskGroupGrid.remove(taskGroup);
+    if (!taskViewModel.getTaskGroups().remove(taskGroup)) {
+      return; // no longer on the board
+    }
+    scratchTakenOutTaskGroups.add(taskGroup);
+    for (Task task : taskGroup.getTasks()) {
+      taskGroupOfTask.remove(task);
+      localTasks.add(task);
+    }
+  }
+
+  // Take out every task and group whose touch area overlaps the area, returning whether any
+  // were found.  (Anything the grids still hold that has left the board is just dropped.)
+  private boolean takeOutOverlapping(@NotNull Rect area, @NotNull List<Task> localTasks) {
+    int countBefore = localTasks.size();
+    taskGrid.query(area.left, area.top, area.right, area.bottom, scratchNearbyTasks);
+    for (Task task : scratchNearbyTasks) {
+      if (!taskViewModel.getTasks().contains(task)) {
+        taskGrid.remove(task);
+      } else {
+        takeOut(task, localTasks);
+      }
+    }
+    taskGroupGrid.query(area.left, area.top, area.right, area.bottom, scratchNearbyTaskGroups);
+    for (TaskGroup taskGroup : scratchNearbyTaskGroups) {
+      takeOut(taskGroup, localTasks);
+    }
+    return localTasks.size() > countBefore;
   }
 
   // DRAW FUNCTION (THE HEART OF THE CLASS AND MAY BE CALLED VERY FREQUENTLY)
@@ -497,16 +627,26 @@ public class TaskDraw extends View {
   // It sets up every graphic on the screen (except the background)
   protected void onDraw(Canvas canvas) {
 
-    // Draw each task individually
+    // Draw each task individually, from the latest published board
     // Make sure the taskViewModel exists (not too early in program)
     if (taskViewModel != null) {
+      BoardSnapshot board = taskViewModel.getBoardSnapshot();
       // For each and every task...
-      for (TaskGroup taskGroup : taskViewModel.getTaskGroups()) {
-        drawTaskGroup(canvas, taskGroup);
+      for (int i = 0; i < board.groupCount; i++) {
+        drawTaskGroup(canvas, board, i);
       }
-      for (Task task : taskViewModel.getTasks()) {
-        if (!task.getMoving()){
-          drawTask(canvas, task, scaleAdjustment, false);
+      for (int i = 0; i < board.taskCount; i++) {
+        if (!board.moving[i]) {
+          drawTask(
+              canvas,
+              board.ids[i],
+              board.labels[i],
+              board.completed[i],
+              board.baselines[i],
+              board.checkBoxStarts[i],
+              board.textStarts[i],
+              scaleAdjustment,
+              false);
         }
       }
       setupCanvas(canvas); // Draw axes elements
@@ -570,24 +710,45 @@ public class TaskDraw extends View {
   // Draw the task onto the canvas (because this function has the potential to be
   // called very frequently, no calculations or large allocations are performed here)
   protected void drawTask(@NotNull Canvas canvas, @NotNull Task task, float scaleFactor, boolean center) {
+    TaskGraphic graphic = task.getTaskGraphic();
+    drawTask(
+        canvas,
+        task.getID(),
+        task.getLabel(),
+        task.getCompleted(),
+        graphic.getBaseline(),
+        graphic.getCheckBoxStart(),
+        graphic.getTextStart(),
+        scaleFactor,
+        center);
+  }
+
+  // Same as above, from values already pulled out of a task (such as from a board snapshot)
+  protected void drawTask(
+      @NotNull Canvas canvas,
+      long id,
+      String label,
+      boolean completed,
+      float baseline,
+      float checkBoxStart,
+      float textStart,
+      float scaleFactor,
+      boolean center) {
 
     // Modify to center, not align to origin
 
     float displacementX = 1;
 
-    TaskGraphic graphic = task.getTaskGraphic();
-    String label = task.getLabel();
-
     // Pull the pre-determined position information for the task
     float yBaseline;
     if (center) {
       yBaseline = canvas.getHeight()-scaleFactor*(padding + fontBottom);
     }
     else {
-      yBaseline = graphic.getBaseline();
+      yBaseline = baseline;
     }
-    float xCheckbox = scaleFactor*graphic.getCheckBoxStart() + displacementX;
-    float xText = scaleFactor*graphic.getTextStart() + displacementX;
+    float xCheckbox = scaleFactor*checkBoxStart + displacementX;
+    float xText = scaleFactor*textStart + displacementX;
 
 
     if (center) {
@@ -605,14 +766,15 @@ public class TaskDraw extends View {
         xCheckbox, yBaseline - scaleFactor*checkBoxSide,
         xCheckbox + scaleFactor*checkBoxSide, yBaseline, paintRect);
 
-    // Display the label in the pre-determined position
-    float originalTextSize = paintText.getTextSize();
-    paintText.setTextSize(paintText.getTextSize()*scaleFactor);
-    canvas.drawText(label, xText, yBaseline, paintText);
-    paintText.setTextSize(originalTextSize);
+    // Display the label in the pre-determined position (highlighted if it matches the search)
+    Paint paintLabel = highlightedTaskIDs.contains(id) ? paintHighlight : paintText;
+    float originalTextSize = paintLabel.getTextSize();
+    paintLabel.setTextSize(paintLabel.getTextSize()*scaleFactor);
+    canvas.drawText(label, xText, yBaseline, paintLabel);
+    paintLabel.setTextSize(originalTextSize);
 
     // If task is completed, add a check mark
-    if (task.getCompleted()) {
+    if (completed) {
       canvas.drawLine(
           scaleFactor*(xCheckbox + checkBoxSide),
           (float) (yBaseline - (1.5 * scaleFactor * checkBoxSide)),
@@ -628,15 +790,15 @@ public class TaskDraw extends View {
     }
   }
 
-  protected void drawTaskGroup(@NotNull Canvas canvas, @NotNull TaskGroup taskGroup) {
+  protected void drawTaskGroup(@NotNull Canvas canvas, @NotNull BoardSnapshot board, int index) {
 
-    TaskGraphic graphic = taskGroup.getTaskGraphic();
-    String label = taskGroup.getLabel();
+    int entry = board.groupEntry(index);
+    String label = board.labels[entry];
 
     // Pull the pre-determined position information for the task
-    float yBaseline = graphic.getBaseline();
-    float xCheckbox = graphic.getCheckBoxStart();
-    float xText = graphic.getTextStart();
+    float yBaseline = board.baselines[entry];
+    float xCheckbox = board.checkBoxStarts[entry];
+    float xText = board.textStarts[entry];
 
     // Display cross (plus sign) instead of checkbox for task group
     canvas.drawLine(
@@ -652,8 +814,19 @@ public class TaskDraw extends View {
         yBaseline - (checkBoxSide / 2),
         paintRect);
 
-    // Display the label in the pre-determined position
-    canvas.drawText(label, xText, yBaseline, paintText);
+    // Display the label in the pre-determined position (highlighted if any task in the group
+    // matches the search)
+    Paint paintLabel = paintText;
+    if (!highlightedTaskIDs.isEmpty()) {
+      List<Task> groupTasks = board.getTaskGroup(index).getTasks();
+      for (int i = 0; i < groupTasks.size(); i++) {
+        if (highlightedTaskIDs.contains(groupTasks.get(i).getID())) {
+          paintLabel = paintHighlight;
+          break;
+        }
+      }
+    }
+    canvas.drawText(label, xText, yBaseline, paintLabel);
   }
 
   // TOUCH RESPONSE FUNCTION (WHICH, IF ANY, TASK(S) WERE TOUCHED?)
@@ -661,22 +834,17 @@ public class TaskDraw extends View {
   // This function returns a list of tasks that were touched by the user on the canvas
   public Task getTouchedTask(float x, float y) {
 
-    // Loop through all tasks (groups, too) and see if touch coordinates are inside a touch area
-    for (Task task : taskViewModel.getTasks()) {
-      if (task.getTaskGraphic().getTouchArea().contains((int) x, (int) y)) {
-        return task;
-      }
-    }
-    return null; // return null if no tasks were found
+    // Loop through all tasks on the latest published board and see if touch coordinates are
+    // inside a touch area
+    BoardSnapshot board = taskViewModel.getBoardSnapshot();
+    int index = board.findTask((int) x, (int) y);
+    return index < 0 ? null : board.getTask(index); // return null if no tasks were found
   }
 
   public TaskGroup getTouchedTaskGroup(float x, float y) {
-    for (TaskGroup taskGroup : taskViewModel.getTaskGroups()) {
-      if (taskGroup.getTaskGraphic().getTouchArea().contains((int) x, (int) y)) {
-        return taskGroup;
-      }
-    }
-    return null;
+    BoardSnapshot board = taskViewModel.getBoardSnapshot();
+    int index = board.findTaskGroup((int) x, (int) y);
+    return index < 0 ? null : board.getTaskGroup(index);
   }
 
   // DEBUG
@@ -4,66 +4,163 @@ import android.graphics.Rect;
 import org.jetbrains.annotations.NotNull;
 
 // Class for task information that is graphical in nature (coordinates, shapes)
+// The values are either the graphic's own (groups, popups) or, for a task on the board, one
+// slot of the TaskStore's layout columns
 public class TaskGraphic {
 
   // PRIVATE MEMBERS
 
-  private Float baseline; // y-value of bottom of task text and checkbox
-  private Float checkBoxStart; // x-value of the beginning (left side) of task checkbox
-  private Float textStart; // x-value of the beginning of task text
-  private Rect touchArea; // rectangular area around task graphic for touch response
+  private final TaskStore store; // null when the values are held here
+  private final int slot;
+
+  private float baseline; // y-value of bottom of task text and checkbox
+  private float checkBoxStart; // x-value of the beginning (left side) of task checkbox
+  private float textStart; // x-value of the beginning of task text
+  // rectangular area around task graphic for touch response
+  private int touchLeft;
+  private int touchTop;
+  private int touchRight;
+  private int touchBottom;
 
   // CONSTRUCTORS
 
+  // All zeros, for a graphic that is filled in place by TaskDraw.setGraphic
+  public TaskGraphic() {
+    store = null;
+    slot = -1;
+  }
+
   public TaskGraphic(
-      Float newBaseline, Float newCheckBoxStart, Float newTextStart, Rect newTouchArea) {
+      float newBaseline, float newCheckBoxStart, float newTextStart, @NotNull Rect newTouchArea) {
+    store = null;
+    slot = -1;
     setBaseline(newBaseline);
     setCheckBoxStart(newCheckBoxStart);
     setTextStart(newTextStart);
     setTouchArea(newTouchArea);
   }
 
+  // View onto a slot of the store's layout columns
+  TaskGraphic(@NotNull TaskStore store, int slot) {
+    this.store = store;
+    this.slot = slot;
+  }
+
   // GETTER METHODS
 
-  public Float getBaseline() {
-    return baseline;
+  public float getBaseline() {
+    return store == null ? baseline : store.baselines[slot];
+  }
+
+  public float getCheckBoxStart() {
+    return store == null ? checkBoxStart : store.checkBoxStarts[slot];
+  }
+
+  public float getTextStart() {
+    return store == null ? textStart : store.textStarts[slot];
+  }
+
+  public int getTouchLeft() {
+    return store == null ? touchLeft : store.touchLefts[slot];
+  }
+
+  public int getTouchTop() {
+    return store == null ? touchTop : store.touchTops[slot];
   }
 
-  public Float getCheckBoxStart() {
-    return checkBoxStart;
+  public int getTouchRight() {
+    return store == null ? touchRight : store.touchRights[slot];
   }
 
-  public Float getTextStart() {
-    return textStart;
+  public int getTouchBottom() {
+    return store == null ? touchBottom : store.touchBottoms[slot];
   }
 
-  public Rect getTouchArea() {
-    return touchArea;
+  // Copy the touch area into the given rectangle
+  public void getTouchArea(@NotNull Rect area) {
+    area.set(getTouchLeft(), getTouchTop(), getTouchRight(), getTouchBottom());
+  }
+
+  public boolean touchAreaContains(int x, int y) {
+    return x >= getTouchLeft() && x < getTouchRight() && y >= getTouchTop() && y < getTouchBottom();
+  }
+
+  // Whether the touch areas overlap (same test as Rect.intersects)
+  public boolean touchAreaIntersects(@NotNull TaskGraphic other) {
+    return touchAreaIntersects(
+        other.getTouchLeft(), other.getTouchTop(), other.getTouchRight(), other.getTouchBottom());
+  }
+
+  public boolean touchAreaIntersects(@NotNull Rect area) {
+    return touchAreaIntersects(area.left, area.top, area.right, area.bottom);
+  }
+
+  private boolean touchAreaIntersects(int left, int top, int right, int bottom) {
+    return getTouchLeft() < right
+        && left < getTouchRight()
+        && getTouchTop() < bottom
+        && top < getTouchBottom();
   }
 
   // SETTER METHODS
 
-  public void setBaseline(Float y) {
-    baseline = y;
+  public void setBaseline(float y) {
+    if (store == null) {
+      baseline = y;
+    } else {
+      store.baselines[slot] = y;
+    }
+  }
+
+  public void setCheckBoxStart(float x) {
+    if (store == null) {
+      checkBoxStart = x;
+    } else {
+      store.checkBoxStarts[slot] = x;
+    }
+  }
+
+  public void setTextStart(float x) {
+    if (store == null) {
+      textStart = x;
+    } else {
+      store.textStarts[slot] = x;
+    }
   }
 
-  public void setCheckBoxStart(Float x) {
-    checkBoxStart = x;
+  public void setTouchArea(@NotNull Rect area) {
+    setTouchArea(area.left, area.top, area.right, area.bottom);
   }
 
-  public void setTextStart(Float x) {
-    textStart = x;
+  public void setTouchArea(int left, int top, int right, int bottom) {
+    if (store == null) {
+      touchLeft = left;
+      touchTop = top;
+      touchRight = right;
+      touchBottom = bottom;
+    } else {
+      store.touchLefts[slot] = left;
+      store.touchTops[slot] = top;
+      store.touchRights[slot] = right;
+      store.touchBottoms[slot] = bottom;
+    }
   }
 
-  public void setTouchArea(Rect area) {
-    touchArea = area;
+  // Copy every value from another graphic
+  public void set(@NotNull TaskGraphic other) {
+    setBaseline(other.getBaseline());
+    setCheckBoxStart(other.getCheckBoxStart());
+    setTextStart(other.getTextStart());
+    setTouchArea(
+        other.getTouchLeft(), other.getTouchTop(), other.getTouchRight(), other.getTouchBottom());
   }
 
   public void move(int dx, int dy) {
     this.setBaseline(getBaseline() + dy);
     this.setCheckBoxStart(getCheckBoxStart() + dx);
     this.setTextStart(getTextStart() + dx);
-    touchArea.offset(dx, dy);
+    setTouchArea(
+        getTouchLeft() + dx, getTouchTop() + dy, getTouchRight() + dx, getTouchBottom() + dy);
   }
 
   // DEBUGGING FUNCTIONS
@@ -72,10 +169,20 @@ public class TaskGraphic {
   public @NotNull String toString() {
     String output = "";
     output = output.concat("CONTENTS OF TaskGraphic INSTANCE:\n");
-    output = output.concat("-baseline: " + baseline + "\n");
-    output = output.concat("-checkBoxStart: " + checkBoxStart + "\n");
-    output = output.concat("-textStart: " + textStart + "\n");
-    output = output.concat("-touchArea: (no good way to display)\n");
+    output = output.concat("-baseline: " + getBaseline() + "\n");
+    output = output.concat("-checkBoxStart: " + getCheckBoxStart() + "\n");
+    output = output.concat("-textStart: " + getTextStart() + "\n");
+    output =
+        output.concat(
+            "-touchArea: ("
+                + getTouchLeft()
+                + ", "
+                + getTouchTop()
+                + ") - ("
+                + getTouchRight()
+                + ", "
+                + getTouchBottom()
+                + ")\n");
     return output;
   }
 }
@@ -0,0 +1,230 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// A uniform grid over the canvas for finding which touch areas overlap a given one, so overlap
+// checks only look at items in nearby cells instead of at every item on the board.  Each item is
+// listed in every cell its area covers (areas past the canvas edge go in the edge cells), and
+// items can be added and removed as the layout changes.  Entries are pooled, so rebuilding the
+// grid for a board of the same size doesn't allocate, and a removed item's entry is handed to
+// the next item added, so moving items around doesn't grow the pool.  Main thread only.
+public class TaskGrid<T> {
+
+  // PRIVATE MEMBERS
+
+  private float cellWidth = 1;
+  private float cellHeight = 1;
+  private int columns = 0;
+  private int rows = 0;
+  private Entry<T>[][] cells = newCells(0);
+  private int[] cellCounts = new int[0];
+
+  private final IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<>();
+  private final List<Entry<T>> entryPool = new ArrayList<>();
+  private int pooledEntriesUsed = 0;
+  private final List<Entry<T>> freeEntries = new ArrayList<>(); // used, then removed
+  private int queryStamp = 0; // marks entries already seen by the current query
+
+  // SETTER FUNCTIONS
+
+  // Empty the grid and size its cells for a canvas of the given dimensions
+  public void reset(float width, float height, float newCellWidth, float newCellHeight) {
+    for (int cell = 0; cell < columns * rows; cell++) {
+      Entry<T>[] cellEntries = cells[cell];
+      for (int i = 0; i < cellCounts[cell]; i++) {
+        cellEntries[i] = null;
+      }
+      cellCounts[cell] = 0;
+    }
+    for (int i = 0; i < pooledEntriesUsed; i++) {
+      entryPool.get(i).item = null;
+    }
+    entries.clear();
+    freeEntries.clear();
+    pooledEntriesUsed = 0;
+
+    cellWidth = Math.max(newCellWidth, 1);
+    cellHeight = Math.max(newCellHeight, 1);
+    columns = Math.max(1, (int) Math.ceil(width / cellWidth));
+    rows = Math.max(1, (int) Math.ceil(height / cellHeight));
+    if (columns * rows > cells.length) {
+      cells = newCells(columns * rows);
+      cellCounts = new int[columns * rows];
+    }
+  }
+
+  // Index the item under its graphic's touch area (an item already in the grid is moved)
+  public void add(@NotNull T item, @NotNull TaskGraphic graphic) {
+    remove(item);
+    Entry<T> entry = obtainEntry();
+    entry.item = item;
+    entry.left = graphic.getTouchLeft();
+    entry.top = graphic.getTouchTop();
+    entry.right = graphic.getTouchRight();
+    entry.bottom = graphic.getTouchBottom();
+    entry.firstColumn = getColumn(entry.left);
+    entry.lastColumn = getColumn(entry.right);
+    entry.firstRow = getRow(entry.top);
+    entry.lastRow = getRow(entry.bottom);
+    entries.put(item, entry);
+
+    for (int row = entry.firstRow; row <= entry.lastRow; row++) {
+      for (int column = entry.firstColumn; column <= entry.lastColumn; column++) {
+        addToCell(row * columns + column, entry);
+      }
+    }
+  }
+
+  public void remove(@NotNull T item) {
+    Entry<T> entry = entries.remove(item);
+    if (entry == null) {
+      return;
+    }
+    for (int row = entry.firstRow; row <= entry.lastRow; row++) {
+      for (int column = entry.firstColumn; column <= entry.lastColumn; column++) {
+        removeFromCell(row * columns + column, entry);
+      }
+    }
+    entry.item = null;
+    freeEntries.add(entry);
+  }
+
+  // GETTER FUNCTIONS
+
+  public boolean contains(@NotNull T item) {
+    return entries.containsKey(item);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  // Entries taken from the pool since the last reset (for tests)
+  int pooledEntryCount() {
+    return pooledEntriesUsed;
+  }
+
+  // Put every item whose touch area intersects the given one (same test as Rect.intersects)
+  // into results, after emptying it
+  public void query(int left, int top, int right, int bottom, @NotNull List<T> results) {
+    results.clear();
+    if (++queryStamp == 0) {
+      // The stamp wrapped around, so old marks could be mistaken for this query's
+      for (int i = 0; i < pooledEntriesUsed; i++) {
+        entryPool.get(i).stamp = 0;
+      }
+      queryStamp = 1;
+    }
+    int lastRow = getRow(bottom);
+    int lastColumn = getColumn(right);
+    for (int row = getRow(top); row <= lastRow; row++) {
+      for (int column = getColumn(left); column <= lastColumn; column++) {
+        int cell = row * columns + column;
+        Entry<T>[] cellEntries = cells[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+          Entry<T> entry = cellEntries[i];
+          if (entry.stamp == queryStamp) {
+            continue; // already looked at in another cell
+          }
+          entry.stamp = queryStamp;
+          if (entry.left < right && left < entry.right && entry.top < bottom && top < entry.bottom) {
+            results.add(entry.item);
+          }
+        }
+      }
+    }
+  }
+
+  public void query(@NotNull TaskGraphic graphic, @NotNull List<T> results) {
+    query(
+        graphic.getTouchLeft(),
+        graphic.getTouchTop(),
+        graphic.getTouchRight(),
+        graphic.getTouchBottom(),
+        results);
+  }
+
+  // PRIVATE FUNCTIONS
+
+  private int getColumn(int x) {
+    return Math.min(columns - 1, Math.max(0, (int) (x / cellWidth)));
+  }
+
+  private int getRow(int y) {
+    return Math.min(rows - 1, Math.max(0, (int) (y / cellHeight)));
+  }
+
+  // A removed item's entry if there is one, otherwise the next one in the pool
+  private @NotNull Entry<T> obtainEntry() {
+    Entry<T> entry;
+    if (!freeEntries.isEmpty()) {
+      entry = freeEntries.remove(freeEntries.size() - 1);
+    } else {
+      if (pooledEntriesUsed == entryPool.size()) {
+        entryPool.add(new Entry<>());
+      }
+      entry = entryPool.get(pooledEntriesUsed++);
+    }
+    entry.stamp = 0;
+    return entry;
+  }
+
+  private void addToCell(int cell, @NotNull Entry<T> entry) {
+    Entry<T>[] cellEntries = cells[cell];
+    int count = cellCounts[cell];
+    if (cellEntries == null || count == cellEntries.length) {
+      Entry<T>[] grown = newEntries(cellEntries == null ? 4 : count << 1);
+      if (cellEntries != null) {
+        System.arraycopy(cellEntries, 0, grown, 0, count);
+      }
+      cellEntries = grown;
+      cells[cell] = grown;
+    }
+    cellEntries[count] = entry;
+    cellCounts[cell] = count + 1;
+  }
+
+  // Swap the last entry of the cell into the removed one's place
+  private void removeFromCell(int cell, @NotNull Entry<T> entry) {
+    Entry<T>[] cellEntries = cells[cell];
+    int last = cellCounts[cell] - 1;
+    for (int i = 0; i <= last; i++) {
+      if (cellEntries[i] == entry) {
+        cellEntries[i] = cellEntries[last];
+        cellEntries[last] = null;
+        cellCounts[cell] = last;
+        return;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Entry<T>[][] newCells(int count) {
+    return (Entry<T>[][]) new Entry[count][];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Entry<T>[] newEntries(int count) {
+    return (Entry<T>[]) new Entry[count];
+  }
+
+  // NESTED TYPES
+
+  // An item and the area (and cells) it was indexed under
+  private static final class Entry<T> {
+    T item;
+    int left;
+    int top;
+    int right;
+    int bottom;
+    int firstColumn;
+    int lastColumn;
+    int firstRow;
+    int lastRow;
+    int stamp;
+  }
+}
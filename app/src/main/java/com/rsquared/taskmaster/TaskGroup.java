@@ -4,16 +4,21 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 // This class for task groups, and is much like the task class
 public class TaskGroup {
 
   // PRIVATE MEMBERS
 
-  private final ArrayList<Task> tasks = new ArrayList<>();
-  private String label;
-  private int averageImportance;
-  private int averageUrgency;
+  private final ArrayList<Task> tasks = new ArrayList<>(); // sorted by importance, descending
+  private final Set<Task> members = Collections.newSetFromMap(new IdentityHashMap<>());
+  // Running totals for the averages (ratings don't change while a task is in a group, since
+  // groups are rebuilt on every layout)
+  private long importanceSum = 0;
+  private long urgencySum = 0;
+  private String label; // built when first asked for after the group changes
   private TaskGraphic taskGraphic;
 
   // CONSTRUCTORS
@@ -27,39 +32,31 @@ public class TaskGroup {
 
   // SETTER METHODS
 
-  // Create a list of groups
+  // Add a task (once) to the group, keeping the list sorted by importance
   public void addTask(@NotNull Task newTask) {
-    boolean addTask = true;
-    for (Task task : tasks) {
-      if (newTask == task) {
-        addTask = false;
-        break;
-      }
-    }
-    if (addTask) {
-      tasks.add(newTask);
-      combine();
+    if (!members.add(newTask)) {
+      return;
     }
+    tasks.add(insertionIndex(newTask.getImportance()), newTask);
+    importanceSum += newTask.getImportance();
+    urgencySum += newTask.getUrgency();
+    label = null;
   }
 
-  // Get average urgency and importance from individual tasks, and sort by importance
-  private void combine() {
-    averageImportance = 0;
-    averageUrgency = 0;
-    for (Task task : tasks) {
-      averageImportance += task.getImportance();
-      averageUrgency += task.getUrgency();
+  // Binary search for where a task of this importance goes: after every task at least as
+  // important, so tasks of equal importance stay in the order they were added
+  private int insertionIndex(int importance) {
+    int low = 0;
+    int high = tasks.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (tasks.get(middle).getImportance() >= importance) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
     }
-    averageImportance = averageImportance / tasks.size();
-    averageUrgency = averageUrgency / tasks.size();
-
-    Collections.sort(
-        tasks,
-        (Task t1, Task t2) -> {
-          return t2.getImportance() - t1.getImportance(); // Descending
-        });
-
-    label = tasks.size() + " tasks";
+    return low;
   }
 
   public void setTaskGraphic(TaskGraphic newTaskGraphic) {
@@ -73,15 +70,18 @@ public class TaskGroup {
   }
 
   public String getLabel() {
+    if (label == null && !tasks.isEmpty()) {
+      label = tasks.size() + " tasks";
+    }
     return label;
   }
 
   public int getImportance() {
-    return averageImportance;
+    return tasks.isEmpty() ? 0 : (int) (importanceSum / tasks.size());
   }
 
   public int getUrgency() {
-    return averageUrgency;
+    return tasks.isEmpty() ? 0 : (int) (urgencySum / tasks.size());
   }
 
   public TaskGraphic getTaskGraphic() {
@@ -89,11 +89,6 @@ public class TaskGroup {
   }
 
   public boolean isTaskInGroup(Task task) {
-    for (Task checkTask : tasks) {
-      if (task == checkTask) {
-        return true;
-      }
-    }
-    return false;
+    return members.contains(task);
   }
 }
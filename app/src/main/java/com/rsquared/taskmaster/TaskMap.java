@@ -0,0 +1,176 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Tasks keyed by their database ID.  IDs are stored as plain longs in an open-addressing table
+// (linear probing), so lookups neither box the key nor allocate map entries.  Not thread-safe.
+public class TaskMap implements Iterable<Task> {
+
+  // PRIVATE MEMBERS
+
+  protected static final int defaultCapacity = 16; // slots (always a power of two)
+  protected static final float maxLoadFactor = 0.5f; // grow before probe runs get long
+
+  private long[] keys;
+  private Task[] values; // a null value marks an empty slot
+  private int size = 0;
+  private int resizeThreshold;
+
+  // CONSTRUCTORS
+
+  public TaskMap() {
+    this(defaultCapacity);
+  }
+
+  public TaskMap(int expectedSize) {
+    int capacity = defaultCapacity;
+    while (capacity * maxLoadFactor < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  // SETTER FUNCTIONS
+
+  // Store the task under the given ID, returning the task it replaced (or null)
+  public Task put(long id, @NotNull Task task) {
+    int slot = findSlot(id);
+    Task replaced = values[slot];
+    if (replaced == null) {
+      keys[slot] = id;
+      size++;
+    }
+    values[slot] = task;
+    if (size > resizeThreshold) {
+      resize(keys.length << 1);
+    }
+    return replaced;
+  }
+
+  // Forget the task with the given ID, returning it (or null if there was none)
+  public Task remove(long id) {
+    int slot = findSlot(id);
+    Task removed = values[slot];
+    if (removed == null) {
+      return null;
+    }
+
+    // Shift later entries of the probe run back into the gap, so lookups never stop early
+    // (this avoids leaving "deleted" markers behind)
+    int mask = keys.length - 1;
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (values[next] != null) {
+      int home = hash(keys[next]) & mask;
+      // Move the entry only if its home slot is not between the gap and where it sits now
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        values[gap] = values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    values[gap] = null;
+    size--;
+    return removed;
+  }
+
+  public void clear() {
+    for (int slot = 0; slot < values.length; slot++) {
+      values[slot] = null;
+    }
+    size = 0;
+  }
+
+  // GETTER FUNCTIONS
+
+  public Task get(long id) {
+    return values[findSlot(id)];
+  }
+
+  public boolean containsKey(long id) {
+    return values[findSlot(id)] != null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // Every task in the map, in no particular order (the map must not change while iterating)
+  @Override
+  public @NotNull Iterator<Task> iterator() {
+    return new Iterator<Task>() {
+      private int slot = nextFilledSlot(0);
+
+      @Override
+      public boolean hasNext() {
+        return slot < values.length;
+      }
+
+      @Override
+      public Task next() {
+        if (slot >= values.length) {
+          throw new NoSuchElementException();
+        }
+        Task task = values[slot];
+        slot = nextFilledSlot(slot + 1);
+        return task;
+      }
+    };
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Spread the bits of the ID, since consecutive IDs would otherwise fill one probe run
+  private static int hash(long id) {
+    long mixed = id * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> 32));
+  }
+
+  // The slot holding the ID, or the empty slot where it would go
+  private int findSlot(long id) {
+    int mask = keys.length - 1;
+    int slot = hash(id) & mask;
+    while (values[slot] != null && keys[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int nextFilledSlot(int slot) {
+    while (slot < values.length && values[slot] == null) {
+      slot++;
+    }
+    return slot;
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Task[capacity];
+    resizeThreshold = (int) (capacity * maxLoadFactor);
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    Task[] oldValues = values;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+      if (oldValues[oldSlot] != null) {
+        int slot = hash(oldKeys[oldSlot]) & mask;
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[oldSlot];
+        values[slot] = oldValues[oldSlot];
+      }
+    }
+  }
+}
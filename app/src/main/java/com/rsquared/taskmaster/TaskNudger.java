@@ -0,0 +1,179 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Moves ("nudges") the tasks of a group into a column around the group's position, so they sit
+// next to each other but not overlapping, for TaskDraw's layout.  Outside the group popup, a group
+// is only taken apart like this if no task would move further than the nudge limit and none of
+// the moved touch areas would overlap an ungrouped task or another group, which are looked up in
+// TaskDraw's grids.  Main thread only.
+public class TaskNudger {
+
+  // PRIVATE MEMBERS
+
+  // The board, shared with TaskDraw: ungrouped tasks, groups, and the group of each grouped task
+  private final TaskGrid<Task> taskGrid;
+  private final TaskGrid<TaskGroup> taskGroupGrid;
+  private final Map<Task, TaskGroup> taskGroupOfTask;
+
+  // Vertical metrics (as in TaskDraw)
+  private float fontTop;
+  private float fontBottom;
+  private float padding;
+  private float margin;
+  private float heightCanvas;
+  private float maxNudgeRatio;
+
+  private final List<Task> nearbyTasks = new ArrayList<>();
+  private final List<TaskGroup> nearbyTaskGroups = new ArrayList<>();
+
+  // Where the column of a group's tasks is centred: the baseline at the group's position
+  public interface Origin {
+    float getBaseline(@NotNull TaskGroup taskGroup);
+  }
+
+  // CONSTRUCTOR
+
+  public TaskNudger(
+      @NotNull TaskGrid<Task> taskGrid,
+      @NotNull TaskGrid<TaskGroup> taskGroupGrid,
+      @NotNull Map<Task, TaskGroup> taskGroupOfTask) {
+    this.taskGrid = taskGrid;
+    this.taskGroupGrid = taskGroupGrid;
+    this.taskGroupOfTask = taskGroupOfTask;
+  }
+
+  // SETTER FUNCTIONS
+
+  public void setMetrics(
+      float newFontTop,
+      float newFontBottom,
+      float newPadding,
+      float newMargin,
+      float newHeightCanvas,
+      float newMaxNudgeRatio) {
+    fontTop = newFontTop;
+    fontBottom = newFontBottom;
+    padding = newPadding;
+    margin = newMargin;
+    heightCanvas = newHeightCanvas;
+    maxNudgeRatio = newMaxNudgeRatio;
+  }
+
+  // NUDGING
+
+  // Nudge apart every group there is room for, in order, adding the ones nudged to
+  // nudgedTaskGroups; the caller then takes those off the board.  Each nudged task's entry moves
+  // in the task grid as it is nudged, but the task still belongs to its group until the caller is
+  // done, so later checks skip it, and the group's own area still counts.  That is how the layout
+  // has always worked: nudged tasks only went back on the board once every group had been tried.
+  // So every group is checked against the board as it was before any nudging, and the result
+  // doesn't depend on which group goes first.
+  public void nudgeTaskGroups(
+      @NotNull Collection<TaskGroup> taskGroups,
+      @NotNull Origin origin,
+      @NotNull Collection<TaskGroup> nudgedTaskGroups) {
+    for (TaskGroup taskGroup : taskGroups) {
+      if (nudgeTasks(taskGroup, origin.getBaseline(taskGroup), false)) {
+        nudgedTaskGroups.add(taskGroup);
+        for (Task task : taskGroup.getTasks()) {
+          taskGrid.add(task, task.getTaskGraphic());
+        }
+      }
+    }
+    nearbyTasks.clear();
+    nearbyTaskGroups.clear();
+  }
+
+  // Move the group's tasks into a column centred on yOrigin, unless (without forceNudge) that
+  // would move one too far or onto something else, returning whether they were moved.  The grids
+  // are left alone.
+  // Todo: change code so that tasks can fit in the negative spaces of task groups
+  public boolean nudgeTasks(@NotNull TaskGroup taskGroup, float yOrigin, boolean forceNudge) {
+
+    // Setting up task measurements (including totals)
+    int numTasks = taskGroup.getTasks().size();
+    float taskHeight = fontBottom - fontTop;
+    float paddedTaskHeight = taskHeight + 2 * padding;
+    float totalTaskHeight = numTasks * paddedTaskHeight;
+    float topOfTasks = (float) (yOrigin - totalTaskHeight / 2.0);
+    float bottomOfTasks = (float) (yOrigin + totalTaskHeight / 2.0);
+
+    // Adjust so margins are not crossed
+    // (Note that we assume that the tasks don't cross both the top and bottom, that they fit)
+    if (topOfTasks < margin) {
+      topOfTasks = margin;
+      bottomOfTasks = topOfTasks + totalTaskHeight;
+    }
+    if (bottomOfTasks > heightCanvas - margin) {
+      bottomOfTasks = heightCanvas - margin;
+      topOfTasks = bottomOfTasks - totalTaskHeight;
+    }
+
+    if (!forceNudge) {
+      // Test dimensions to see if nudging would produce any unwanted overlap of graphics
+      int counter = 0;
+      for (Task task : taskGroup.getTasks()) {
+
+        // See if the minimum required nudging exceeds the predetermined movement limit
+        TaskGraphic graphic = task.getTaskGraphic();
+        float yBaseline = graphic.getBaseline();
+        float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
+        float nudgeY = yBaselineDest - yBaseline;
+        if (Math.abs(nudgeY) / heightCanvas > maxNudgeRatio) { // Only move tasks so far
+          return false;
+        }
+
+        // Check and see if there is any overlap with other tasks for dedicated touch area
+        int offset = (int) nudgeY;
+        if (overlapsOtherItems(
+            taskGroup,
+            graphic.getTouchLeft(),
+            graphic.getTouchTop() + offset,
+            graphic.getTouchRight(),
+            graphic.getTouchBottom() + offset)) {
+          return false;
+        }
+        counter++;
+      }
+    }
+
+    // If the tests were passed, then nudge each task to an unoccupied location
+    int counter = 0;
+    for (Task task : taskGroup.getTasks()) {
+      float yBaseline = task.getTaskGraphic().getBaseline();
+      float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
+      float nudgeY = yBaselineDest - yBaseline;
+      task.getTaskGraphic().move(0, (int) nudgeY);
+      counter++;
+    }
+    return true;
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Whether the area overlaps an ungrouped task or another group.  Grouped tasks in the task
+  // grid (ones nudged earlier in this pass) don't count; their groups still do.
+  private boolean overlapsOtherItems(
+      @NotNull TaskGroup taskGroup, int left, int top, int right, int bottom) {
+    taskGrid.query(left, top, right, bottom, nearbyTasks);
+    for (int i = 0; i < nearbyTasks.size(); i++) {
+      Task checkTask = nearbyTasks.get(i);
+      if (!taskGroupOfTask.containsKey(checkTask) && !taskGroup.isTaskInGroup(checkTask)) {
+        return true;
+      }
+    }
+    taskGroupGrid.query(left, top, right, bottom, nearbyTaskGroups);
+    for (int i = 0; i < nearbyTaskGroups.size(); i++) {
+      if (nearbyTaskGroups.get(i) != taskGroup) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,267 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+// The incomplete tasks on the board, ordered by priority, kept up to date as tasks change so
+// "what matters most right now" never needs a scan of the board.  It is a binary max-heap whose
+// entries remember their heap position (by the task's TaskStore slot), so adding, updating,
+// completing or removing a task costs O(log n).  Only attached tasks can be indexed.  Main
+// thread only.
+public class TaskPriorityIndex {
+
+  // PRIVATE MEMBERS
+
+  protected static final int defaultCapacity = 256;
+
+  // Importance and urgency count the same by default
+  public static final Score defaultScore = (int urgency, int importance) -> urgency + importance;
+
+  private Score score = defaultScore;
+  private Task[] heap = new Task[defaultCapacity];
+  private int[] scores = new int[defaultCapacity]; // score of each heap entry
+  private int size = 0;
+  private int[] positionBySlot = new int[defaultCapacity]; // heap index + 1 (0 when absent)
+
+  // What the head looked like when listeners were last told
+  private Task head;
+  private String headLabel;
+  private int headUrgency;
+  private int headImportance;
+  private OnTopTaskChangedListener onTopTaskChangedListener;
+
+  // SETTER FUNCTIONS
+
+  // Bring a task's place in the index up to date after it was added or changed (completed
+  // tasks are taken out, and put back in if they are unchecked)
+  public void update(@NotNull Task task) {
+    int slot = task.getSlot();
+    if (slot < 0) {
+      return;
+    }
+    int position = getPosition(slot);
+    if (task.getCompleted()) {
+      if (position >= 0) {
+        removeAt(position);
+      }
+    } else if (position >= 0) {
+      scores[position] = score.score(task.getUrgency(), task.getImportance());
+      if (!siftUp(position)) {
+        siftDown(position);
+      }
+    } else {
+      insert(task);
+    }
+    checkHead();
+  }
+
+  // Take a task out of the index (call before the task is detached from the store)
+  public void remove(@NotNull Task task) {
+    int slot = task.getSlot();
+    int position = slot < 0 ? -1 : getPosition(slot);
+    if (position >= 0) {
+      removeAt(position);
+      checkHead();
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      positionBySlot[heap[i].getSlot()] = 0;
+      heap[i] = null;
+    }
+    size = 0;
+    checkHead();
+  }
+
+  // Change how tasks are ranked; everything is re-scored and the heap rebuilt in O(n)
+  public void setScore(@NotNull Score newScore) {
+    score = newScore;
+    for (int i = 0; i < size; i++) {
+      scores[i] = score.score(heap[i].getUrgency(), heap[i].getImportance());
+    }
+    for (int i = size / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+    checkHead();
+  }
+
+  // Told whenever the top task becomes a different task, or its label or ratings change
+  public void setOnTopTaskChangedListener(OnTopTaskChangedListener listener) {
+    onTopTaskChangedListener = listener;
+  }
+
+  // GETTER FUNCTIONS
+
+  public int size() {
+    return size;
+  }
+
+  // The highest priority incomplete task, or null if there is none
+  public Task getTop() {
+    return size == 0 ? null : heap[0];
+  }
+
+  // The k highest priority incomplete tasks, best first.  Only the part of the heap above the
+  // answer is looked at (O(k log k)); the index itself isn't changed.
+  public @NotNull List<Task> topK(int k) {
+    List<Task> top = new ArrayList<>(Math.max(0, Math.min(k, size)));
+    if (k <= 0 || size == 0) {
+      return top;
+    }
+    PriorityQueue<Integer> frontier =
+        new PriorityQueue<>(
+            Math.min(k + 1, size),
+            (Integer a, Integer b) -> isHigher(a, b) ? -1 : (isHigher(b, a) ? 1 : 0));
+    frontier.add(0);
+    while (top.size() < k && !frontier.isEmpty()) {
+      int position = frontier.poll();
+      top.add(heap[position]);
+      int child = 2 * position + 1;
+      if (child < size) {
+        frontier.add(child);
+      }
+      if (child + 1 < size) {
+        frontier.add(child + 1);
+      }
+    }
+    return top;
+  }
+
+  // PRIVATE FUNCTIONS
+
+  private int getPosition(int slot) {
+    return slot < positionBySlot.length ? positionBySlot[slot] - 1 : -1;
+  }
+
+  private void insert(@NotNull Task task) {
+    if (size == heap.length) {
+      Task[] oldHeap = heap;
+      int[] oldScores = scores;
+      heap = new Task[size << 1];
+      scores = new int[size << 1];
+      System.arraycopy(oldHeap, 0, heap, 0, size);
+      System.arraycopy(oldScores, 0, scores, 0, size);
+    }
+    int slot = task.getSlot();
+    if (slot >= positionBySlot.length) {
+      int[] oldPositions = positionBySlot;
+      positionBySlot = new int[Math.max(slot + 1, oldPositions.length << 1)];
+      System.arraycopy(oldPositions, 0, positionBySlot, 0, oldPositions.length);
+    }
+    heap[size] = task;
+    scores[size] = score.score(task.getUrgency(), task.getImportance());
+    positionBySlot[slot] = size + 1;
+    size++;
+    siftUp(size - 1);
+  }
+
+  private void removeAt(int position) {
+    positionBySlot[heap[position].getSlot()] = 0;
+    size--;
+    if (position != size) {
+      // Fill the hole with the last entry, which then moves whichever way it needs to
+      move(size, position);
+      if (!siftUp(position)) {
+        siftDown(position);
+      }
+    }
+    heap[size] = null;
+  }
+
+  // Returns whether the entry moved
+  private boolean siftUp(int position) {
+    int start = position;
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (!isHigher(position, parent)) {
+        break;
+      }
+      swap(position, parent);
+      position = parent;
+    }
+    return position != start;
+  }
+
+  private void siftDown(int position) {
+    while (true) {
+      int highest = position;
+      int left = 2 * position + 1;
+      int right = left + 1;
+      if (left < size && isHigher(left, highest)) {
+        highest = left;
+      }
+      if (right < size && isHigher(right, highest)) {
+        highest = right;
+      }
+      if (highest == position) {
+        return;
+      }
+      swap(position, highest);
+      position = highest;
+    }
+  }
+
+  // Higher score first, then more important, then older (lower ID), so the order is total
+  private boolean isHigher(int a, int b) {
+    if (scores[a] != scores[b]) {
+      return scores[a] > scores[b];
+    }
+    int importanceA = heap[a].getImportance();
+    int importanceB = heap[b].getImportance();
+    if (importanceA != importanceB) {
+      return importanceA > importanceB;
+    }
+    return heap[a].getID() < heap[b].getID();
+  }
+
+  private void swap(int a, int b) {
+    Task task = heap[a];
+    int taskScore = scores[a];
+    move(b, a);
+    heap[b] = task;
+    scores[b] = taskScore;
+    positionBySlot[task.getSlot()] = b + 1;
+  }
+
+  private void move(int from, int to) {
+    heap[to] = heap[from];
+    scores[to] = scores[from];
+    positionBySlot[heap[to].getSlot()] = to + 1;
+  }
+
+  // Tell the listener if the head is no longer what it was last told
+  private void checkHead() {
+    Task top = getTop();
+    if (top == head
+        && (top == null
+            || (Objects.equals(top.getLabel(), headLabel)
+                && top.getUrgency() == headUrgency
+                && top.getImportance() == headImportance))) {
+      return;
+    }
+    head = top;
+    headLabel = top == null ? null : top.getLabel();
+    headUrgency = top == null ? 0 : top.getUrgency();
+    headImportance = top == null ? 0 : top.getImportance();
+    OnTopTaskChangedListener listener = onTopTaskChangedListener;
+    if (listener != null) {
+      listener.onTopTaskChanged(top);
+    }
+  }
+
+  // NESTED TYPES
+
+  // How much a task matters (higher comes first)
+  public interface Score {
+    int score(int urgency, int importance);
+  }
+
+  public interface OnTopTaskChangedListener {
+    void onTopTaskChanged(Task topTask); // null once there are no incomplete tasks
+  }
+}
@@ -0,0 +1,238 @@
+package com.rsquared.taskmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Compact binary copy of the incomplete tasks downloaded so far.  It is written once the paged
+// download stops and again whenever changes reach the database, so the next launch can put tasks
+// on screen before the database is even opened.
+// Layout: a fixed header (magic number, format version, change log position, download position,
+// task count, payload length, payload CRC-32), then for each task its ID, urgency, importance,
+// completed flag, and UTF-8 label.
+public class TaskSnapshot {
+
+  // PRIVATE MEMBERS
+
+  private static final int MAGIC = 0x544D534E; // "TMSN"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 49;
+  private static final int MAX_FILE_SIZE = 64 * 1024 * 1024; // anything bigger is not ours
+  private static final byte FLAG_DOWNLOAD_COMPLETE = 1;
+  private static final byte FLAG_HAS_PAGE_KEY = 2;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final long changeSeq; // newest change log entry the tasks reflect
+  private final TaskDatabaseHelper.PageKey pageKey; // where the paged download had reached
+  private final boolean downloadComplete; // whether the paged download had finished
+  private final long[] ids;
+  private final int[] urgencies;
+  private final int[] importances;
+  private final boolean[] completed;
+  private final String[] labels;
+
+  // CONSTRUCTORS
+
+  private TaskSnapshot(
+      long changeSeq,
+      TaskDatabaseHelper.PageKey pageKey,
+      boolean downloadComplete,
+      int size) {
+    this.changeSeq = changeSeq;
+    this.pageKey = pageKey;
+    this.downloadComplete = downloadComplete;
+    ids = new long[size];
+    urgencies = new int[size];
+    importances = new int[size];
+    completed = new boolean[size];
+    labels = new String[size];
+  }
+
+  // Copy the incomplete tasks (encoding happens in write())
+  public static @NotNull TaskSnapshot capture(
+      @NotNull Iterable<Task> tasks,
+      long changeSeq,
+      TaskDatabaseHelper.PageKey pageKey,
+      boolean downloadComplete) {
+    int size = 0;
+    for (Task task : tasks) {
+      if (!task.getCompleted()) {
+        size++;
+      }
+    }
+    TaskSnapshot snapshot = new TaskSnapshot(changeSeq, pageKey, downloadComplete, size);
+    int index = 0;
+    for (Task task : tasks) {
+      if (!task.getCompleted()) {
+        snapshot.ids[index] = task.getID();
+        snapshot.urgencies[index] = task.getUrgency();
+        snapshot.importances[index] = task.getImportance();
+        snapshot.labels[index] = task.getLabel();
+        index++;
+      }
+    }
+    return snapshot;
+  }
+
+  // FILE FUNCTIONS
+
+  // Write the snapshot so that the file is either entirely the old one or entirely the new one
+  public void write(@NotNull File file) throws IOException {
+
+    // Encode labels first, since the payload size depends on them
+    byte[][] encodedLabels = new byte[labels.length][];
+    int payloadLength = 0;
+    for (int i = 0; i < labels.length; i++) {
+      encodedLabels[i] = labels[i] == null ? new byte[0] : labels[i].getBytes(UTF_8);
+      payloadLength += 8 + 1 + 1 + 1 + 4 + encodedLabels[i].length;
+    }
+
+    ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+    for (int i = 0; i < ids.length; i++) {
+      payload.putLong(ids[i]);
+      payload.put((byte) urgencies[i]);
+      payload.put((byte) importances[i]);
+      payload.put((byte) (completed[i] ? 1 : 0));
+      payload.putInt(encodedLabels[i].length);
+      payload.put(encodedLabels[i]);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload.array(), 0, payloadLength);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putLong(changeSeq);
+    header.put(
+        (byte)
+            ((downloadComplete ? FLAG_DOWNLOAD_COMPLETE : 0)
+                | (pageKey != null ? FLAG_HAS_PAGE_KEY : 0)));
+    header.putInt(pageKey != null ? pageKey.importance : 0);
+    header.putInt(pageKey != null ? pageKey.urgency : 0);
+    header.putLong(pageKey != null ? pageKey.id : 0);
+    header.putInt(ids.length);
+    header.putInt(payloadLength);
+    header.putLong(crc.getValue());
+    header.flip();
+    payload.flip();
+
+    // Write to a temporary file, make sure it is on disk, then swap it in
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+      FileChannel channel = output.getChannel();
+      while (header.hasRemaining() || payload.hasRemaining()) {
+        channel.write(new ByteBuffer[] {header, payload});
+      }
+      channel.force(true);
+    }
+    if (!temporaryFile.renameTo(file)) {
+      throw new IOException("Could not replace task snapshot " + file);
+    }
+  }
+
+  // Read a snapshot in one bulk read, or return null if there is none or it can't be trusted
+  // (wrong format version, truncated, or failing its checksum)
+  public static @Nullable TaskSnapshot read(@NotNull File file) {
+    long fileLength = file.length();
+    if (fileLength < HEADER_SIZE || fileLength > MAX_FILE_SIZE) {
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) fileLength);
+    try (FileInputStream input = new FileInputStream(file)) {
+      FileChannel channel = input.getChannel();
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          return null; // file shrank while reading
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    buffer.flip();
+
+    try {
+      // Check the header
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return null;
+      }
+      long changeSeq = buffer.getLong();
+      byte flags = buffer.get();
+      int keyImportance = buffer.getInt();
+      int keyUrgency = buffer.getInt();
+      long keyID = buffer.getLong();
+      int size = buffer.getInt();
+      int payloadLength = buffer.getInt();
+      long expectedCRC = buffer.getLong();
+      if (size < 0 || payloadLength != fileLength - HEADER_SIZE) {
+        return null;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), HEADER_SIZE, payloadLength);
+      if (crc.getValue() != expectedCRC) {
+        return null;
+      }
+
+      // Decode the tasks
+      TaskDatabaseHelper.PageKey pageKey =
+          (flags & FLAG_HAS_PAGE_KEY) != 0
+              ? new TaskDatabaseHelper.PageKey(keyImportance, keyUrgency, keyID)
+              : null;
+      TaskSnapshot snapshot =
+          new TaskSnapshot(changeSeq, pageKey, (flags & FLAG_DOWNLOAD_COMPLETE) != 0, size);
+      for (int i = 0; i < size; i++) {
+        snapshot.ids[i] = buffer.getLong();
+        snapshot.urgencies[i] = buffer.get();
+        snapshot.importances[i] = buffer.get();
+        snapshot.completed[i] = buffer.get() != 0;
+        int labelLength = buffer.getInt();
+        if (labelLength < 0 || labelLength > buffer.remaining()) {
+          return null;
+        }
+        snapshot.labels[i] = new String(buffer.array(), buffer.position(), labelLength, UTF_8);
+        buffer.position(buffer.position() + labelLength);
+      }
+      return buffer.hasRemaining() ? null : snapshot;
+    } catch (BufferUnderflowException e) {
+      return null;
+    }
+  }
+
+  // GETTER FUNCTIONS
+
+  public long getChangeSeq() {
+    return changeSeq;
+  }
+
+  public TaskDatabaseHelper.PageKey getPageKey() {
+    return pageKey;
+  }
+
+  public boolean getDownloadComplete() {
+    return downloadComplete;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  // Rebuild the tasks themselves
+  public @NotNull List<Task> toTasks() {
+    List<Task> tasks = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      tasks.add(new Task(ids[i], labels[i], urgencies[i], importances[i], completed[i]));
+    }
+    return tasks;
+  }
+}
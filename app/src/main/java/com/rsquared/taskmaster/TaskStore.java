@@ -0,0 +1,125 @@
+package com.rsquared.taskmaster;
+
+import java.util.BitSet;
+
+// Column-oriented storage for the tasks on the board.  Instead of each task carrying its own
+// fields (plus a graphic with its own fields and rectangle), every value lives in a primitive
+// array indexed by slot, and Task and TaskGraphic objects attached to the store are thin views
+// onto one slot.  This keeps large boards to a couple of small objects per task and gives
+// layout passes tightly packed arrays to walk.  Main thread only.
+public class TaskStore {
+
+  // PRIVATE MEMBERS
+
+  protected static final int defaultCapacity = 256; // slots (grows by doubling)
+
+  // Task values
+  long[] ids;
+  String[] labels;
+  int[] urgencies;
+  int[] importances;
+  final BitSet completed = new BitSet();
+  final BitSet moving = new BitSet();
+
+  // Layout values (see TaskGraphic)
+  float[] baselines;
+  float[] checkBoxStarts;
+  float[] textStarts;
+  int[] touchLefts;
+  int[] touchTops;
+  int[] touchRights;
+  int[] touchBottoms;
+
+  private int[] freeSlots; // slots given back by detached tasks, reused first
+  private int freeSlotCount = 0;
+  private int usedSlotCount = 0; // slots ever handed out (the high-water mark)
+
+  // CONSTRUCTORS
+
+  public TaskStore() {
+    this(defaultCapacity);
+  }
+
+  public TaskStore(int capacity) {
+    allocate(Math.max(capacity, 1));
+  }
+
+  // GETTER FUNCTIONS
+
+  // Number of tasks attached to the store
+  public int size() {
+    return usedSlotCount - freeSlotCount;
+  }
+
+  public int getCapacity() {
+    return ids.length;
+  }
+
+  // SLOT FUNCTIONS (used by Task when attaching and detaching)
+
+  // Hand out a slot, growing the columns if they are full
+  int allocateSlot() {
+    if (freeSlotCount > 0) {
+      return freeSlots[--freeSlotCount];
+    }
+    if (usedSlotCount == ids.length) {
+      grow(ids.length << 1);
+    }
+    return usedSlotCount++;
+  }
+
+  // Take a slot back (its label is dropped so the string can be collected)
+  void freeSlot(int slot) {
+    labels[slot] = null;
+    completed.clear(slot);
+    moving.clear(slot);
+    freeSlots[freeSlotCount++] = slot;
+  }
+
+  // PRIVATE FUNCTIONS
+
+  private void allocate(int capacity) {
+    ids = new long[capacity];
+    labels = new String[capacity];
+    urgencies = new int[capacity];
+    importances = new int[capacity];
+    baselines = new float[capacity];
+    checkBoxStarts = new float[capacity];
+    textStarts = new float[capacity];
+    touchLefts = new int[capacity];
+    touchTops = new int[capacity];
+    touchRights = new int[capacity];
+    touchBottoms = new int[capacity];
+    freeSlots = new int[capacity];
+  }
+
+  private void grow(int capacity) {
+    long[] oldIDs = ids;
+    String[] oldLabels = labels;
+    int[] oldUrgencies = urgencies;
+    int[] oldImportances = importances;
+    float[] oldBaselines = baselines;
+    float[] oldCheckBoxStarts = checkBoxStarts;
+    float[] oldTextStarts = textStarts;
+    int[] oldTouchLefts = touchLefts;
+    int[] oldTouchTops = touchTops;
+    int[] oldTouchRights = touchRights;
+    int[] oldTouchBottoms = touchBottoms;
+    int[] oldFreeSlots = freeSlots;
+    int length = oldIDs.length;
+
+    allocate(capacity);
+    System.arraycopy(oldIDs, 0, ids, 0, length);
+    System.arraycopy(oldLabels, 0, labels, 0, length);
+    System.arraycopy(oldUrgencies, 0, urgencies, 0, length);
+    System.arraycopy(oldImportances, 0, importances, 0, length);
+    System.arraycopy(oldBaselines, 0, baselines, 0, length);
+    System.arraycopy(oldCheckBoxStarts, 0, checkBoxStarts, 0, length);
+    System.arraycopy(oldTextStarts, 0, textStarts, 0, length);
+    System.arraycopy(oldTouchLefts, 0, touchLefts, 0, length);
+    System.arraycopy(oldTouchTops, 0, touchTops, 0, length);
+    System.arraycopy(oldTouchRights, 0, touchRights, 0, length);
+    System.arraycopy(oldTouchBottoms, 0, touchBottoms, 0, length);
+    System.arraycopy(oldFreeSlots, 0, freeSlots, 0, freeSlotCount);
+  }
+}
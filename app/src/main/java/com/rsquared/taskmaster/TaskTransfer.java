@@ -0,0 +1,357 @@
+package com.rsquared.taskmaster;
+
+import android.os.SystemClock;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Streaming import and export of whole boards, for moving them between devices.  Both formats
+// hold one task per record (line-delimited JSON objects, or CSV with a header row) with the
+// fields label, urgency, importance and completed.  Imports are read one record at a time and
+// inserted in batches, each batch in its own transaction; exports are written straight from the
+// database cursor.  Either way, memory use doesn't grow with the size of the board.
+public class TaskTransfer {
+
+  // PRIVATE MEMBERS
+
+  protected static final int defaultBatchSize = 1000; // tasks inserted per transaction
+  protected static final String[] csvColumns = {"label", "urgency", "importance", "completed"};
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final TaskDatabaseHelper taskDatabaseHelper;
+  private int batchSize = defaultBatchSize;
+  private ProgressListener progressListener;
+
+  // File formats
+  public enum Format {
+    JSON_LINES,
+    CSV
+  }
+
+  // CONSTRUCTOR
+
+  public TaskTransfer(@NotNull TaskDatabaseHelper taskDatabaseHelper) {
+    this.taskDatabaseHelper = taskDatabaseHelper;
+  }
+
+  // SETTER FUNCTIONS
+
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1");
+    }
+    this.batchSize = batchSize;
+  }
+
+  // Told the running total of tasks after each batch (called on the importing/exporting thread)
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  // IMPORT
+
+  // Add every task in the stream as a new task (IDs in the file are ignored).  Records that
+  // can't be read as a task are skipped and counted.  Call this off the main thread; the
+  // stream is not closed.  Afterwards, TaskViewModel.refreshFromDatabase() brings the new tasks
+  // onto the board.
+  public @NotNull Result importTasks(@NotNull InputStream input, @NotNull Format format)
+      throws IOException {
+    long startTime = SystemClock.elapsedRealtime();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+    List<Task> batch = new ArrayList<>(batchSize);
+    long importedCount = 0;
+    long skippedCount = 0;
+
+    if (format == Format.CSV) {
+      List<String> fields = new ArrayList<>();
+      boolean firstRecord = true;
+      while (readCsvRecord(reader, fields)) {
+        if (firstRecord && fields.equals(Arrays.asList(csvColumns))) {
+          firstRecord = false;
+          continue; // header row
+        }
+        firstRecord = false;
+        Task task = parseCsvTask(fields);
+        if (task == null) {
+          skippedCount++;
+          continue;
+        }
+        batch.add(task);
+        if (batch.size() >= batchSize) {
+          importedCount += insertBatch(batch);
+          reportProgress(importedCount);
+        }
+      }
+    } else {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        Task task = parseJsonTask(line);
+        if (task == null) {
+          skippedCount++;
+          continue;
+        }
+        batch.add(task);
+        if (batch.size() >= batchSize) {
+          importedCount += insertBatch(batch);
+          reportProgress(importedCount);
+        }
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      importedCount += insertBatch(batch);
+      reportProgress(importedCount);
+    }
+    return new Result(importedCount, skippedCount, SystemClock.elapsedRealtime() - startTime);
+  }
+
+  // EXPORT
+
+  // Write every task, archived ones included, to the stream as they come off the cursor.
+  // Call this off the main thread; the stream is flushed but not closed.
+  public @NotNull Result exportTasks(@NotNull OutputStream output, @NotNull Format format)
+      throws IOException {
+    long startTime = SystemClock.elapsedRealtime();
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+    if (format == Format.CSV) {
+      for (int i = 0; i < csvColumns.length; i++) {
+        writer.write(i == 0 ? "" : ",");
+        writer.write(csvColumns[i]);
+      }
+      writer.write('\n');
+    }
+
+    // The consumer can't throw IOException, so carry it out and rethrow it
+    long[] exportedCount = {0};
+    IOException[] writeError = {null};
+    taskDatabaseHelper.forEachTask(
+        false,
+        (TaskDatabaseHelper.TaskRow row) -> {
+          if (writeError[0] != null) {
+            return;
+          }
+          try {
+            if (format == Format.CSV) {
+              writeCsvTask(writer, row);
+            } else {
+              writeJsonTask(writer, row);
+            }
+          } catch (IOException e) {
+            writeError[0] = e;
+            return;
+          }
+          exportedCount[0]++;
+          if (exportedCount[0] % batchSize == 0) {
+            reportProgress(exportedCount[0]);
+          }
+        });
+    if (writeError[0] != null) {
+      throw writeError[0];
+    }
+    writer.flush();
+
+    reportProgress(exportedCount[0]);
+    return new Result(exportedCount[0], 0, SystemClock.elapsedRealtime() - startTime);
+  }
+
+  // PRIVATE FUNCTIONS
+
+  // Insert the batch in one transaction through the helper's compiled insert, then empty it
+  private int insertBatch(@NotNull List<Task> batch) {
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (Task task : batch) {
+            taskDatabaseHelper.addTask(task);
+          }
+        });
+    int size = batch.size();
+    batch.clear();
+    return size;
+  }
+
+  private void reportProgress(long taskCount) {
+    ProgressListener listener = progressListener;
+    if (listener != null) {
+      listener.onProgress(taskCount);
+    }
+  }
+
+  // Returns null if the line isn't a task
+  private static Task parseJsonTask(@NotNull String line) {
+    try {
+      JSONObject object = new JSONObject(line);
+      return makeTask(
+          object.isNull("label") ? null : object.getString("label"),
+          object.getInt("urgency"),
+          object.getInt("importance"),
+          object.optBoolean("completed", false));
+    } catch (JSONException e) {
+      return null;
+    }
+  }
+
+  // Returns null if the record isn't a task
+  private static Task parseCsvTask(@NotNull List<String> fields) {
+    if (fields.size() != 4) {
+      return null;
+    }
+    try {
+      String completed = fields.get(3).trim();
+      return makeTask(
+          fields.get(0),
+          Integer.parseInt(fields.get(1).trim()),
+          Integer.parseInt(fields.get(2).trim()),
+          completed.equals("1") || completed.equalsIgnoreCase("true"));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  // Returns null if the ratings are out of range (1-100)
+  private static Task makeTask(String label, int urgency, int importance, boolean completed) {
+    if (urgency < 1 || urgency > 100 || importance < 1 || importance > 100) {
+      return null;
+    }
+    return new Task(label, urgency, importance, completed);
+  }
+
+  private static void writeJsonTask(@NotNull Writer writer, @NotNull TaskDatabaseHelper.TaskRow row)
+      throws IOException {
+    writer.write("{\"id\":");
+    writer.write(Long.toString(row.id));
+    writer.write(",\"label\":");
+    writer.write(row.label == null ? "null" : JSONObject.quote(row.label));
+    writer.write(",\"urgency\":");
+    writer.write(Integer.toString(row.urgency));
+    writer.write(",\"importance\":");
+    writer.write(Integer.toString(row.importance));
+    writer.write(",\"completed\":");
+    writer.write(row.completed ? "true" : "false");
+    writer.write("}\n");
+  }
+
+  private static void writeCsvTask(@NotNull Writer writer, @NotNull TaskDatabaseHelper.TaskRow row)
+      throws IOException {
+    writeCsvField(writer, row.label == null ? "" : row.label);
+    writer.write(',');
+    writer.write(Integer.toString(row.urgency));
+    writer.write(',');
+    writer.write(Integer.toString(row.importance));
+    writer.write(',');
+    writer.write(row.completed ? '1' : '0');
+    writer.write('\n');
+  }
+
+  // Quote the field only if it needs it, doubling any quotes inside
+  private static void writeCsvField(@NotNull Writer writer, @NotNull String field)
+      throws IOException {
+    boolean needsQuotes = false;
+    for (int i = 0; i < field.length() && !needsQuotes; i++) {
+      char c = field.charAt(i);
+      needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!needsQuotes) {
+      writer.write(field);
+      return;
+    }
+    writer.write('"');
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '"') {
+        writer.write('"');
+      }
+      writer.write(c);
+    }
+    writer.write('"');
+  }
+
+  // Read the next CSV record into fields (quoted fields may hold commas, quotes and line
+  // breaks).  Returns false once the stream is used up.
+  private static boolean readCsvRecord(@NotNull Reader reader, @NotNull List<String> fields)
+      throws IOException {
+    fields.clear();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    int c = reader.read();
+    if (c == -1) {
+      return false;
+    }
+    while (c != -1) {
+      if (quoted) {
+        if (c == '"') {
+          c = reader.read();
+          if (c != '"') {
+            quoted = false; // closing quote; look at the character after it normally
+            continue;
+          }
+        }
+        field.append((char) c);
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\n') {
+        break;
+      } else if (c != '\r') {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+    fields.add(field.toString());
+    return true;
+  }
+
+  // NESTED TYPES
+
+  public interface ProgressListener {
+    void onProgress(long taskCount);
+  }
+
+  // How much was moved and how quickly, to compare batch sizes and formats on a device
+  public static final class Result {
+    public final long taskCount;
+    public final long skippedCount; // unreadable records (imports only)
+    public final long elapsedMillis;
+
+    public Result(long taskCount, long skippedCount, long elapsedMillis) {
+      this.taskCount = taskCount;
+      this.skippedCount = skippedCount;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getTasksPerSecond() {
+      return elapsedMillis == 0 ? taskCount * 1000.0 : taskCount * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public @NotNull String toString() {
+      return String.format(
+          Locale.US,
+          "%d tasks (%d skipped) in %d ms, %.0f tasks/s",
+          taskCount,
+          skippedCount,
+          elapsedMillis,
+          getTasksPerSecond());
+    }
+  }
+}
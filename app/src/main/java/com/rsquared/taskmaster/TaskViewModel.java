@@ -1,16 +1,31 @@
 package com.rsquared.taskmaster;
 
 import android.app.Application;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 // View model class to hold all the active tasks, plus update or read from database
 // Note that task groups are not considered because they don't need to survive fragment changes
-// Todo: add ability to revert to database values loaded upon start of app
 public class TaskViewModel extends AndroidViewModel {
 
   // PRIVATE MEMBERS
@@ -18,41 +33,637 @@ public class TaskViewModel extends AndroidViewModel {
   // Database object
   private final TaskDatabaseHelper taskDatabaseHelper =
       TaskDatabaseHelper.getInstance(this.getApplication());
+  // Batches task updates so they are written off the main thread
+  private final TaskWriteQueue taskWriteQueue = new TaskWriteQueue(taskDatabaseHelper);
   // List of tasks
   private final Set<Task> tasks = new HashSet<>();
   private Set<TaskGroup> taskGroups = new HashSet<>();
+  // The laid-out board as last published (drawing and touch handling read this, not the sets)
+  private final AtomicReference<BoardSnapshot> boardSnapshot =
+      new AtomicReference<>(BoardSnapshot.EMPTY);
+  // Every task in memory (grouped or not) by ID: the one canonical instance of each task, which
+  // database changes and edited copies of tasks are matched to
+  private final TaskMap tasksByID = new TaskMap(defaultTaskWindow);
+  // Where the values of every task in memory actually live (the Task objects are views onto it)
+  private final TaskStore taskStore = new TaskStore(defaultTaskWindow);
+  // The incomplete tasks in memory by priority, kept current as tasks change
+  private final TaskPriorityIndex priorityIndex = new TaskPriorityIndex();
   // An extra measure to assure that downloading data from the database only occurs once
   private boolean downloadTasksLocked = false;
+  // Database reads happen here so the main thread never waits on SQLite
+  private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // Lets an in-progress download be abandoned if the view model is cleared
+  private final CancellationSignal downloadCancellationSignal = new CancellationSignal();
+  // Incremented on the main thread each time tasks from the database are added or changed
+  private final MutableLiveData<Integer> taskLoadVersion = new MutableLiveData<>(0);
+  // Tasks edited in place since the board was last laid out, which can be laid out again one at
+  // a time, unless something else changed that calls for a full layout
+  private final Set<Long> editedTaskIDs = new HashSet<>();
+  private boolean fullLayoutNeeded = false;
+  // IDs of the tasks matching the latest search, best match first (empty when not searching)
+  private final MutableLiveData<Set<Long>> searchMatches =
+      new MutableLiveData<>(new LinkedHashSet<>());
+  private int searchVersion = 0; // lets results of an outdated search be dropped (main thread)
+  protected static final int searchLimit = 50;
+  // Undo/redo history of changes made through this view model
+  private final TaskCommandLog commandLog = new TaskCommandLog();
+  // Each task's values from before this session first changed it, and the tasks this session
+  // created, so the whole session can be reverted no matter how far back the history reaches
+  private final TaskMap sessionBaseline = new TaskMap();
+  private final Set<Long> addedThisSession = new HashSet<>();
+  // Tasks stream in a page at a time (most important first) until the window is full
+  protected static final int pageSize = 200;
+  protected static final int defaultTaskWindow = 2000;
+  private volatile int taskWindow = defaultTaskWindow; // most tasks to download
+  private volatile int downloadedTaskCount = 0; // written only by the loader thread
+  private volatile boolean allTasksDownloaded = false; // written only by the loader thread
+  private TaskDatabaseHelper.PageKey nextPageKey; // only touched by the loader thread
+  // Tasks completed longer ago than this are moved to the archive table in the background
+  protected static final long archiveAfterHours = 24;
+  protected static final int archiveBatchSize = 500;
+  // Newest change log entry already reflected in memory (only touched by the loader thread)
+  private long lastChangeSeq = 0;
+  // Binary copy of the incomplete tasks, so the next launch can skip the database at first
+  private final File snapshotFile = new File(getApplication().getFilesDir(), "tasks.snapshot");
+  // The downloaded tasks as the database has them, kept up to date alongside the tasks in memory
+  // so the snapshot can be taken without touching the main thread (only touched by the loader)
+  private final TaskMap downloadedTasks = new TaskMap();
 
   // CONSTRUCTOR
 
   public TaskViewModel(@NonNull Application application) {
     super(application);
+
+    // Whatever was just written may differ from memory (edits arrive as copies), so catch up
+    taskWriteQueue.setOnWrittenListener(() -> runOnLoader(this::refreshChanges));
   }
 
   // SETTER FUNCTIONS
 
-  // Adds new task to task list and database
-
+  // Adds new task to task list and database (the insert is queued like any other write, and
+  // the task is given its row ID right away, so it can be changed or undone before it lands)
   public void addTask(Task task) {
-    tasks.add(task);
-    taskDatabaseHelper.addTask(task);
+    taskWriteQueue.enqueueAdd(task);
+    addToBoard(task);
+    addedThisSession.add(task.getID());
+    commandLog.record(TaskCommandLog.Command.add(task));
   }
 
-  // Update a modified task in the database
+  // Update a modified task in the database.  The task must be an edited copy, not the instance
+  // in memory: the old values are needed for undo, so they are taken from that instance before
+  // the new ones are copied onto it (the write is queued and committed in the background along
+  // with any other recent changes).
   public void updateTask(Task task) {
-    // Since the Task object is actually just a pointer, we only need to update the database
-    taskDatabaseHelper.updateTask(task);
+    Task canonicalTask = tasksByID.get(task.getID());
+    if (canonicalTask == task) {
+      throw new IllegalArgumentException("Pass an edited copy of the task, not the one in memory");
+    }
+    if (canonicalTask == null) {
+      return; // it left memory while it was being edited (deleted), so there is nothing to change
+    }
+
+    recordBaseline(canonicalTask, canonicalTask.getCompleted());
+    commandLog.record(TaskCommandLog.Command.edit(canonicalTask, task));
+    canonicalTask.setLabel(task.getLabel());
+    canonicalTask.setUrgency(task.getUrgency());
+    canonicalTask.setImportance(task.getImportance());
+    canonicalTask.setCompleted(task.getCompleted());
+    taskWriteQueue.enqueue(canonicalTask);
+    priorityIndex.update(canonicalTask);
+    requestTaskLayout(canonicalTask.getID()); // lay out the board around it again
+  }
+
+  // Update a task that was just checked or unchecked (cheaper than a full update)
+  public void updateTaskCompleted(Task task) {
+    Task canonicalTask = tasksByID.get(task.getID());
+    if (canonicalTask == null) {
+      canonicalTask = task;
+    }
+    canonicalTask.setCompleted(task.getCompleted());
+    recordBaseline(canonicalTask, !canonicalTask.getCompleted());
+    commandLog.record(
+        TaskCommandLog.Command.toggle(canonicalTask.getID(), canonicalTask.getCompleted()));
+    taskWriteQueue.enqueueCompleted(canonicalTask);
+    priorityIndex.update(canonicalTask);
+    publishTask(canonicalTask); // the check mark is drawn from the snapshot
+  }
+
+  // Move a task to new ratings (dragging it across the board)
+  public void moveTask(Task task, int urgency, int importance) {
+    Task canonicalTask = tasksByID.get(task.getID());
+    if (canonicalTask == null) {
+      canonicalTask = task;
+    }
+    recordBaseline(canonicalTask, canonicalTask.getCompleted());
+    commandLog.record(
+        TaskCommandLog.Command.move(
+            canonicalTask.getID(),
+            canonicalTask.getUrgency(),
+            canonicalTask.getImportance(),
+            urgency,
+            importance));
+    canonicalTask.setUrgency(urgency);
+    canonicalTask.setImportance(importance);
+    taskWriteQueue.enqueue(canonicalTask);
+    priorityIndex.update(canonicalTask);
+  }
+
+  // Put a task on the board: its values move into the task store and it becomes the canonical
+  // instance for its ID
+  private void addToBoard(@NonNull Task task) {
+    task.attachTo(taskStore);
+    tasks.add(task);
+    tasksByID.put(task.getID(), task);
+    priorityIndex.update(task);
+  }
+
+  // Take a task off the board (it must not be in a group).  The task keeps its values, so any
+  // other references to it stay usable.
+  private void removeFromBoard(@NonNull Task task) {
+    tasks.remove(task);
+    tasksByID.remove(task.getID());
+    priorityIndex.remove(task);
+    task.detach();
+  }
+
+  // Undo the most recent change, returning false if there was nothing to undo
+  public boolean undo() {
+    TaskCommandLog.Command command = commandLog.takeUndo();
+    if (command == null) {
+      return false;
+    }
+    applyCommand(command, false);
+    return true;
+  }
+
+  // Apply the most recently undone change again, returning false if there was nothing to redo
+  public boolean redo() {
+    TaskCommandLog.Command command = commandLog.takeRedo();
+    if (command == null) {
+      return false;
+    }
+    applyCommand(command, true);
+    return true;
+  }
+
+  public boolean canUndo() {
+    return commandLog.canUndo();
+  }
+
+  public boolean canRedo() {
+    return commandLog.canRedo();
+  }
+
+  // Put every task changed this session back the way it was when the session started, and
+  // delete the tasks it created.  All of it is written in one transaction.  (This can't be
+  // undone, so the undo history is cleared.)
+  public void revertToSessionStart() {
+    deGroupTasks(); // tasks being removed may be sitting in a group
+    List<Task> originalTasks = new ArrayList<>(sessionBaseline.size());
+    for (Task originalTask : sessionBaseline) {
+      Task task = tasksByID.get(originalTask.getID());
+      if (task != null) {
+        task.setLabel(originalTask.getLabel());
+        task.setUrgency(originalTask.getUrgency());
+        task.setImportance(originalTask.getImportance());
+        task.setCompleted(originalTask.getCompleted());
+        priorityIndex.update(task);
+      }
+      originalTasks.add(originalTask);
+    }
+    for (long id : addedThisSession) {
+      Task task = tasksByID.get(id);
+      if (task != null) {
+        removeFromBoard(task);
+      }
+    }
+    taskWriteQueue.enqueueTogether(originalTasks, addedThisSession);
+
+    sessionBaseline.clear();
+    addedThisSession.clear();
+    commandLog.clear();
+    requestLayout();
+  }
+
+  // Remember a task's values from before this session's first change to it.  The completed flag
+  // is passed separately since a check mark has usually been toggled already.
+  private void recordBaseline(@NonNull Task task, boolean completed) {
+    long id = task.getID();
+    if (!sessionBaseline.containsKey(id) && !addedThisSession.contains(id)) {
+      sessionBaseline.put(
+          id,
+          new Task(id, task.getLabel(), task.getUrgency(), task.getImportance(), completed));
+    }
+  }
+
+  // Patch memory and queue the database write for one step of undo (forward is false) or redo.
+  // A task that has left memory since (e.g. removed elsewhere) is skipped, except for re-adds.
+  private void applyCommand(@NonNull TaskCommandLog.Command command, boolean forward) {
+    Task task = tasksByID.get(command.id);
+    switch (command.type) {
+      case TaskCommandLog.Command.TOGGLE:
+        if (task != null) {
+          task.setCompleted(forward ? command.newCompleted : !command.newCompleted);
+          taskWriteQueue.enqueueCompleted(task);
+          priorityIndex.update(task);
+        }
+        break;
+
+      case TaskCommandLog.Command.MOVE:
+      case TaskCommandLog.Command.EDIT:
+        if (task != null) {
+          String label = forward ? command.newLabel : command.oldLabel;
+          if (label != null) {
+            task.setLabel(label);
+          }
+          task.setUrgency(forward ? command.getNewUrgency() : command.getOldUrgency());
+          task.setImportance(forward ? command.getNewImportance() : command.getOldImportance());
+          if (command.type == TaskCommandLog.Command.EDIT) {
+            task.setCompleted(forward ? command.newCompleted : command.oldCompleted);
+          }
+          taskWriteQueue.enqueue(task);
+          priorityIndex.update(task);
+        }
+        break;
+
+      case TaskCommandLog.Command.ADD:
+        if (forward) {
+          Task addedTask =
+              new Task(
+                  command.id,
+                  command.newLabel,
+                  command.getNewUrgency(),
+                  command.getNewImportance(),
+                  command.newCompleted);
+          addToBoard(addedTask);
+          addedThisSession.add(command.id);
+          taskWriteQueue.enqueueInsert(addedTask);
+        } else {
+          if (task != null) {
+            deGroupTasks(); // the task may be sitting in a group
+            removeFromBoard(task);
+          }
+          taskWriteQueue.enqueueDelete(command.id);
+        }
+        break;
+    }
+    if (task != null && command.type != TaskCommandLog.Command.ADD) {
+      requestTaskLayout(task.getID()); // lay out the board around it again
+    } else {
+      requestLayout(); // lay the board out again
+    }
+  }
+
+  // Write all queued task updates to the database and wait for them to finish
+  public void flush() {
+    taskWriteQueue.flush();
   }
 
-  // Store all incomplete tasks from the database to the task list array (used at the beginning)
+  // Store incomplete tasks from the database to the task list array (used at the beginning)
+  // Pages are queried in the background; observers of getTaskLoadVersion() hear as each arrives
   public void downloadIncompleteTasks() {
     if (!downloadTasksLocked) {
       tasks.clear();
       taskGroups.clear();
-      tasks.addAll(taskDatabaseHelper.getTasks(true));
       downloadTasksLocked = true;
+      loadExecutor.execute(this::startDownload);
+      loadExecutor.execute(this::downloadPages);
+      loadExecutor.execute(this::archiveCompletedTasks); // after the first pages are on screen
+    }
+  }
+
+  // Runs on the loader thread: keep the tasks table small by archiving long-completed tasks
+  private void archiveCompletedTasks() {
+    if (!downloadCancellationSignal.isCanceled()) {
+      long completedBefore = System.currentTimeMillis() - archiveAfterHours * 60 * 60 * 1000;
+      taskDatabaseHelper.archiveCompletedTasks(completedBefore, archiveBatchSize);
+    }
+  }
+
+  // Search task labels in the background; observers of getSearchMatches() get the results.
+  // Each word matches the start of a word in the label.  A blank query clears the search.
+  public void searchTasks(String query) {
+    int version = ++searchVersion;
+    if (query == null || query.trim().isEmpty()) {
+      searchMatches.setValue(new LinkedHashSet<>());
+      return;
+    }
+    runOnLoader(
+        () -> {
+          taskWriteQueue.flush(); // so labels edited a moment ago are searched as they are now
+          Set<Long> matchingIDs = new LinkedHashSet<>();
+          for (Task task : taskDatabaseHelper.searchTasks(query, searchLimit)) {
+            matchingIDs.add(task.getID());
+          }
+          mainHandler.post(
+              () -> {
+                if (version == searchVersion) {
+                  searchMatches.setValue(matchingIDs);
+                }
+              });
+        });
+  }
+
+  // Change how many tasks may be downloaded, resuming the download if there is room for more
+  public void setTaskWindow(int maxTasks) {
+    taskWindow = maxTasks;
+    if (downloadTasksLocked && !allTasksDownloaded) {
+      runOnLoader(this::downloadPages);
+    }
+  }
+
+  // Runs on the loader thread: download pages until the window is full or no tasks are left
+  private void downloadPages() {
+    boolean downloaded = false;
+    try {
+      while (!allTasksDownloaded && downloadedTaskCount < taskWindow) {
+        int limit = Math.min(pageSize, taskWindow - downloadedTaskCount);
+        List<Task> page = new ArrayList<>(limit);
+        TaskDatabaseHelper.PageKey lastKey =
+            taskDatabaseHelper.forEachIncompleteTaskPage(
+                nextPageKey,
+                limit,
+                downloadCancellationSignal,
+                (TaskDatabaseHelper.TaskRow row) -> {
+                  page.add(row.toTask());
+                  downloadedTasks.put(row.id, row.toTask());
+                });
+        if (lastKey != null) {
+          nextPageKey = lastKey;
+        }
+        allTasksDownloaded = page.size() < limit;
+        downloadedTaskCount += page.size();
+
+        // Hand the page to the main thread, which owns the task list
+        if (!page.isEmpty()) {
+          mainHandler.post(() -> addDownloadedTasks(page));
+          downloaded = true;
+        }
+      }
+      // A fresh install has no snapshot until one is written, so don't wait for the first edit
+      if (downloaded) {
+        saveSnapshot();
+      }
+    } catch (OperationCanceledException e) {
+      // view model was cleared mid-query
+    }
+  }
+
+  // Pick up tasks written to the database by something other than this view model (such as
+  // an import)
+  public void refreshFromDatabase() {
+    runOnLoader(this::refreshChanges);
+  }
+
+  // Pull only the tasks changed since the given change log sequence number and patch them into
+  // the tasks in memory (runs in the background; observers of getTaskLoadVersion() hear of it)
+  public void refreshSince(long seq) {
+    runOnLoader(() -> pullChangesSince(seq));
+  }
+
+  // Add downloaded tasks to the task list (main thread)
+  private void addDownloadedTasks(@NonNull List<Task> newTasks) {
+    if (downloadCancellationSignal.isCanceled()) {
+      return;
+    }
+    // (a task whose ratings changed after its page was read could come around again)
+    for (Task task : newTasks) {
+      if (!tasksByID.containsKey(task.getID())) {
+        addToBoard(task);
+      }
+    }
+    requestLayout();
+  }
+
+  // Runs on the loader thread: show the snapshot from the last run right away (it is read before
+  // the database is opened), then check it against the database and catch up on anything newer.
+  // Without a snapshot that can be caught up, start a fresh download instead.
+  private void startDownload() {
+    TaskSnapshot snapshot = TaskSnapshot.read(snapshotFile);
+    if (snapshot != null) {
+      List<Task> snapshotTasks = snapshot.toTasks();
+      mainHandler.post(() -> addDownloadedTasks(snapshotTasks));
+      for (Task task : snapshot.toTasks()) {
+        downloadedTasks.put(task.getID(), task);
+      }
+
+      if (taskDatabaseHelper.hasChangesSince(snapshot.getChangeSeq())) {
+        lastChangeSeq = snapshot.getChangeSeq();
+        nextPageKey = snapshot.getPageKey();
+        allTasksDownloaded = snapshot.getDownloadComplete();
+        downloadedTaskCount = snapshot.size();
+        pullChangesSince(lastChangeSeq);
+        return; // the page download carries on from where the snapshot left off
+      }
+
+      // The snapshot is stale beyond repair, so drop its tasks and start over
+      downloadedTasks.clear();
+      mainHandler.post(this::clearDownloadedTasks);
+    }
+    startChangeTracking();
+  }
+
+  // Runs on the loader thread: nothing older than the download needs to be caught up on
+  private void startChangeTracking() {
+    long seq = taskDatabaseHelper.getLatestChangeSeq();
+    lastChangeSeq = seq;
+    taskDatabaseHelper.pruneChangesThrough(seq);
+  }
+
+  // Forget every task in memory, before downloading them again (main thread)
+  private void clearDownloadedTasks() {
+    priorityIndex.clear();
+    for (Task task : tasksByID) {
+      task.detach();
+    }
+    tasks.clear();
+    taskGroups.clear();
+    tasksByID.clear();
+    requestLayout();
+  }
+
+  // Runs on the loader thread: write the downloaded tasks to the snapshot file, as the database
+  // has them (newer values still queued for writing reach the change log, and so the next launch,
+  // after they are written)
+  private void saveSnapshot() {
+    TaskSnapshot snapshot =
+        TaskSnapshot.capture(downloadedTasks, lastChangeSeq, nextPageKey, allTasksDownloaded);
+    try {
+      snapshot.write(snapshotFile);
+    } catch (IOException e) {
+      // Purposefully empty (the next launch just reads from the database instead)
+    }
+  }
+
+  // Runs on the loader thread: catch up from wherever memory currently is
+  private void refreshChanges() {
+    pullChangesSince(lastChangeSeq);
+  }
+
+  // Runs on the loader thread: read what changed and hand it to the main thread to apply
+  private void pullChangesSince(long seq) {
+    if (downloadCancellationSignal.isCanceled()) {
+      return;
+    }
+    List<Task> changedTasks = new ArrayList<>();
+    List<Task> downloadableTasks = new ArrayList<>(); // changed tasks the download already passed
+    List<Long> removedIDs = new ArrayList<>();
+    long latestSeq =
+        taskDatabaseHelper.forEachChangeSince(
+            seq,
+            new TaskDatabaseHelper.ChangeConsumer() {
+              @Override
+              public void changed(@NonNull TaskDatabaseHelper.TaskRow row) {
+                // New tasks only belong in memory if their page has already been downloaded
+                // (otherwise the download will bring them in when it gets there)
+                boolean downloadable =
+                    allTasksDownloaded
+                        || (nextPageKey != null
+                            && nextPageKey.covers(row.importance, row.urgency, row.id));
+                if (downloadable) {
+                  downloadableTasks.add(row.toTask());
+                } else {
+                  changedTasks.add(row.toTask());
+                }
+                if (downloadedTasks.containsKey(row.id) || (downloadable && !row.completed)) {
+                  downloadedTasks.put(row.id, row.toTask());
+                }
+              }
+
+              @Override
+              public void removed(long id) {
+                removedIDs.add(id);
+                downloadedTasks.remove(id);
+              }
+            });
+    if (latestSeq <= seq) {
+      return; // nothing new
+    }
+    lastChangeSeq = Math.max(lastChangeSeq, latestSeq);
+    taskDatabaseHelper.pruneChangesThrough(latestSeq);
+    mainHandler.post(() -> applyChanges(changedTasks, downloadableTasks, removedIDs));
+
+    // Memory is about to match the database as of this change (tasks with unwritten changes
+    // will come around again), so this is a good moment to refresh the snapshot
+    saveSnapshot();
+  }
+
+  // Patch database changes into the tasks in memory (main thread), in time proportional to the
+  // number of changes
+  private void applyChanges(
+      @NonNull List<Task> changedTasks,
+      @NonNull List<Task> downloadableTasks,
+      @NonNull List<Long> removedIDs) {
+    if (downloadCancellationSignal.isCanceled()) {
+      return;
+    }
+    boolean modified = false;
+
+    // Removed tasks may be sitting in a group, so put everything back in the main list first
+    // (only if one of them is actually in memory, since ungrouping calls for a new layout)
+    for (Long id : removedIDs) {
+      Task task = tasksByID.get(id);
+      if (task != null && !taskWriteQueue.hasUnwrittenChanges(id)) {
+        if (!modified) {
+          deGroupTasks();
+        }
+        removeFromBoard(task);
+        modified = true;
+      }
+    }
+
+    for (Task changedTask : changedTasks) {
+      modified |= updateFromDatabase(changedTask, false);
+    }
+    for (Task changedTask : downloadableTasks) {
+      modified |= updateFromDatabase(changedTask, true);
+    }
+
+    if (modified) {
+      requestLayout();
+    }
+  }
+
+  // Copy a task's database values onto the one in memory, returning whether anything changed
+  private boolean updateFromDatabase(@NonNull Task changedTask, boolean addIfMissing) {
+    Task task = tasksByID.get(changedTask.getID());
+
+    // Unknown tasks are added only if they would have been downloaded (and are incomplete)
+    if (task == null) {
+      if (addIfMissing && !changedTask.getCompleted()) {
+        addToBoard(changedTask);
+        return true;
+      }
+      return false;
+    }
+
+    // Newer values for this task are still on their way to the database
+    if (taskWriteQueue.hasUnwrittenChanges(task.getID())) {
+      return false;
+    }
+
+    boolean modified =
+        !Objects.equals(task.getLabel(), changedTask.getLabel())
+            || task.getUrgency() != changedTask.getUrgency()
+            || task.getImportance() != changedTask.getImportance()
+            || task.getCompleted() != changedTask.getCompleted();
+    if (modified) {
+      task.setLabel(changedTask.getLabel());
+      task.setUrgency(changedTask.getUrgency());
+      task.setImportance(changedTask.getImportance());
+      task.setCompleted(changedTask.getCompleted());
+      priorityIndex.update(task);
     }
+    return modified;
+  }
+
+  // Have the board laid out again in full
+  private void requestLayout() {
+    fullLayoutNeeded = true;
+    taskLoadVersion.setValue(taskLoadVersion.getValue() + 1);
+  }
+
+  // Have the board laid out again around one task that was edited in place
+  private void requestTaskLayout(long id) {
+    editedTaskIDs.add(id);
+    taskLoadVersion.setValue(taskLoadVersion.getValue() + 1);
+  }
+
+  // Hand work to the loader thread, unless the view model has already been cleared
+  private void runOnLoader(@NonNull Runnable work) {
+    try {
+      loadExecutor.execute(work);
+    } catch (RejectedExecutionException e) {
+      // Purposefully empty (nobody is left to use the result)
+    }
+  }
+
+  // Publish the tasks and groups as they are now (with their graphics) as the next version of
+  // the board.  Call this once a layout is finished; until then readers keep the previous one.
+  public void publishBoard() {
+    BoardSnapshot next = new BoardSnapshot();
+    next.fill(boardSnapshot.get().getVersion() + 1, tasks, taskGroups);
+    boardSnapshot.set(next);
+  }
+
+  // Publish a change to one task that leaves the layout alone (a check mark, being dragged):
+  // the next version is the current one with just that task's entry copied again
+  public void publishTask(@NonNull Task task) {
+    BoardSnapshot next = editBoard();
+    next.updateTask(task);
+    publishEditedBoard(next);
+  }
+
+  // Start the next version of the board as a copy of the current one, for a layout that only
+  // changed part of the board to patch (then hand it to publishEditedBoard)
+  public @NonNull BoardSnapshot editBoard() {
+    BoardSnapshot current = boardSnapshot.get();
+    return new BoardSnapshot(current, current.getVersion() + 1);
+  }
+
+  public void publishEditedBoard(@NonNull BoardSnapshot next) {
+    boardSnapshot.set(next);
   }
 
   public void deGroupTasks() {
@@ -62,6 +673,15 @@ public class TaskViewModel extends AndroidViewModel {
     taskGroups = new HashSet<>();
   }
 
+  // Make sure queued updates still reach the database when the view model goes away
+  @Override
+  protected void onCleared() {
+    downloadCancellationSignal.cancel();
+    loadExecutor.shutdown();
+    taskWriteQueue.close();
+    super.onCleared();
+  }
+
   // GETTER FUNCTIONS
 
   public Set<Task> getTasks() {
@@ -71,4 +691,48 @@ public class TaskViewModel extends AndroidViewModel {
   public Set<TaskGroup> getTaskGroups() {
     return taskGroups;
   }
+
+  // The task in memory with this ID (null if there is none)
+  public Task getTask(long id) {
+    return tasksByID.get(id);
+  }
+
+  // The k highest priority incomplete tasks, best first (no scan of the board)
+  public @NonNull List<Task> getTopTasks(int k) {
+    return priorityIndex.topK(k);
+  }
+
+  // Told (on the main thread) whenever the highest priority incomplete task changes
+  public void setOnTopTaskChangedListener(TaskPriorityIndex.OnTopTaskChangedListener listener) {
+    priorityIndex.setOnTopTaskChangedListener(listener);
+  }
+
+  // Change how tasks are ranked for getTopTasks
+  public void setPriorityScore(@NonNull TaskPriorityIndex.Score score) {
+    priorityIndex.setScore(score);
+  }
+
+  // The latest published board, safe to read from any thread without locking
+  public @NonNull BoardSnapshot getBoardSnapshot() {
+    return boardSnapshot.get();
+  }
+
+  public LiveData<Set<Long>> getSearchMatches() {
+    return searchMatches;
+  }
+
+  // Changes whenever tasks downloaded from the database become available for drawing, or tasks
+  // are edited
+  public LiveData<Integer> getTaskLoadVersion() {
+    return taskLoadVersion;
+  }
+
+  // The IDs of the tasks edited in place since the last call, if that is all that changed, or
+  // null if the board needs a full layout.  Either way, the next call starts over.
+  public Set<Long> takeEditedTaskIDs() {
+    Set<Long> ids = fullLayoutNeeded ? null : new HashSet<>(editedTaskIDs);
+    editedTaskIDs.clear();
+    fullLayoutNeeded = false;
+    return ids;
+  }
 }
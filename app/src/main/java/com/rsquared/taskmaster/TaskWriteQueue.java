@@ -0,0 +1,405 @@
+package com.rsquared.taskmaster;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind queue for task updates, new tasks, and the deletes and re-inserts that undo
+// needs.  Repeated writes to the same task are merged, and the pending writes are committed
+// together in one database transaction on a background thread, either once enough of them pile
+// up or shortly after the first one arrives.  A batch that fails to commit is put back in the
+// queue (behind any newer writes to the same tasks) and tried again later.  New tasks get their
+// IDs straight away, from a block the queue reserves in the database ahead of time.
+public class TaskWriteQueue {
+
+  // PRIVATE MEMBERS
+
+  protected static final int flushThreshold = 64; // pending tasks that force an immediate flush
+  protected static final long flushDelayMillis = 500; // longest a write waits before flushing
+  protected static final long maxRetryDelayMillis = 60_000; // longest wait after failed writes
+  protected static final int reservedIDCount = 32; // IDs for new tasks reserved at a time
+  private static final String logTag = "TaskWriteQueue";
+
+  private final TaskDatabaseHelper taskDatabaseHelper;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+  private final Object lock = new Object();
+  // Latest copy of each modified task, keyed by ID (guarded by lock)
+  private Map<Long, Task> pendingTasks = new LinkedHashMap<>();
+  // IDs of pending tasks whose only change is being checked/unchecked (guarded by lock)
+  private Set<Long> completedOnlyIDs = new HashSet<>();
+  // IDs of pending tasks that have to be inserted again rather than updated (guarded by lock)
+  private Set<Long> insertIDs = new HashSet<>();
+  // IDs of tasks waiting to be deleted (guarded by lock)
+  private Set<Long> deletedIDs = new HashSet<>();
+  // Tasks taken from the pending map and currently being written (guarded by lock)
+  private Map<Long, Task> writingTasks = new LinkedHashMap<>();
+  private Set<Long> writingDeletedIDs = new HashSet<>();
+  private ScheduledFuture<?> scheduledFlush; // delayed flush, if one is waiting (guarded by lock)
+  private volatile Runnable onWrittenListener; // told (on the executor) after each batch commits
+  private boolean closed = false;
+  private int failedWrites = 0; // batches that failed in a row (guarded by lock)
+  // Reserved IDs not yet handed out (nextReservedID up to endOfReservedIDs, exclusive), and the
+  // next block, which is asked for once half of this one is used (guarded by lock)
+  private long nextReservedID = 0;
+  private long endOfReservedIDs = 0;
+  private Future<Long> nextReservation;
+
+  // CONSTRUCTOR
+
+  public TaskWriteQueue(@NotNull TaskDatabaseHelper taskDatabaseHelper) {
+    this.taskDatabaseHelper = taskDatabaseHelper;
+    synchronized (lock) {
+      nextReservation = reserveIDs(); // ready before the first new task, as a rule
+    }
+  }
+
+  // SETTER FUNCTIONS
+
+  // Queue a task to be written.  The task's values are copied now, so later changes to the task
+  // need to be queued again (which simply replaces this copy if it hasn't been written yet)
+  public void enqueue(@NotNull Task task) {
+    enqueue(task, false);
+  }
+
+  // Queue a task whose only change is being checked or unchecked, which is a cheaper write
+  public void enqueueCompleted(@NotNull Task task) {
+    enqueue(task, true);
+  }
+
+  private void enqueue(@NotNull Task task, boolean completedOnly) {
+    Task copy = copyOf(task);
+    synchronized (lock) {
+      checkOpen();
+      addPending(copy, completedOnly, false);
+      scheduleWrite();
+    }
+  }
+
+  // Queue a task to be deleted (dropping any writes still waiting for it)
+  public void enqueueDelete(long id) {
+    synchronized (lock) {
+      checkOpen();
+      addDelete(id);
+      scheduleWrite();
+    }
+  }
+
+  // Queue a new task to be inserted, giving it its ID now, so it can be changed (or deleted
+  // again) before it is written.  Only waits for the database if no IDs are reserved yet.
+  public void enqueueAdd(@NotNull Task task) {
+    task.setID(takeReservedID());
+    enqueueInsert(task);
+  }
+
+  // Queue a deleted task to be inserted again under its old ID
+  public void enqueueInsert(@NotNull Task task) {
+    Task copy = copyOf(task);
+    synchronized (lock) {
+      checkOpen();
+      addPending(copy, false, true);
+      scheduleWrite();
+    }
+  }
+
+  // Queue updates and deletes that must land together, and write them right away (they share
+  // one transaction, along with anything else already waiting)
+  public void enqueueTogether(@NotNull Collection<Task> tasks, @NotNull Collection<Long> ids) {
+    List<Task> copies = new ArrayList<>(tasks.size());
+    for (Task task : tasks) {
+      copies.add(copyOf(task));
+    }
+    synchronized (lock) {
+      checkOpen();
+      for (Task copy : copies) {
+        addPending(copy, false, false);
+      }
+      for (long id : ids) {
+        addDelete(id);
+      }
+      cancelScheduledFlush();
+      executor.execute(this::writePendingTasks);
+    }
+  }
+
+  // Run something on the queue's thread after every batch of writes is committed
+  public void setOnWrittenListener(Runnable listener) {
+    onWrittenListener = listener;
+  }
+
+  // GETTER FUNCTIONS
+
+  // Whether the database is still behind on changes queued for this task
+  public boolean hasUnwrittenChanges(long id) {
+    synchronized (lock) {
+      return pendingTasks.containsKey(id)
+          || writingTasks.containsKey(id)
+          || deletedIDs.contains(id)
+          || writingDeletedIDs.contains(id);
+    }
+  }
+
+  // Write everything queued so far and wait for it to reach the database (mostly for testing).
+  // Throws if the write fails (the writes stay queued and are retried later).
+  public void flush() {
+    Future<?> result;
+    synchronized (lock) {
+      if (closed) {
+        return; // the final write was already handed to the executor by close()
+      }
+      cancelScheduledFlush();
+      result = executor.submit(this::writePendingTasks);
+    }
+    try {
+      result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  // Write any remaining tasks and stop accepting new ones (does not wait for the final write)
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      cancelScheduledFlush();
+      executor.execute(this::writePendingTasks);
+      executor.execute(taskDatabaseHelper::checkpoint); // nothing more is coming, so tidy the log
+    }
+    executor.shutdown();
+  }
+
+  // PRIVATE FUNCTIONS
+
+  private static @NotNull Task copyOf(@NotNull Task task) {
+    return new Task(
+        task.getID(), task.getLabel(), task.getUrgency(), task.getImportance(), task.getCompleted());
+  }
+
+  // Hand out the next reserved ID, waiting for a block to be reserved if there are none left
+  private long takeReservedID() {
+    boolean failedBefore = false;
+    while (true) {
+      Future<Long> reservation;
+      synchronized (lock) {
+        checkOpen();
+        if (nextReservedID < endOfReservedIDs) {
+          long id = nextReservedID++;
+          if (nextReservation == null
+              && endOfReservedIDs - nextReservedID <= reservedIDCount / 2) {
+            nextReservation = reserveIDs();
+          }
+          return id;
+        }
+        if (nextReservation == null) {
+          nextReservation = reserveIDs();
+        }
+        reservation = nextReservation;
+      }
+
+      // (Waiting without the lock, which the queue's thread may need to finish what it's doing)
+      long firstID;
+      try {
+        firstID = reservation.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while reserving task IDs", e);
+      } catch (ExecutionException e) {
+        synchronized (lock) {
+          if (nextReservation == reservation) {
+            nextReservation = null;
+          }
+        }
+        if (failedBefore) {
+          throw new RuntimeException(e.getCause());
+        }
+        failedBefore = true; // (the block may have been asked for long ago, so try once more)
+        continue;
+      }
+      synchronized (lock) {
+        if (nextReservation == reservation) {
+          nextReservation = null;
+          nextReservedID = firstID;
+          endOfReservedIDs = firstID + reservedIDCount;
+        }
+      }
+    }
+  }
+
+  // Reserve the next block of IDs on the queue's thread (must be called while holding the lock)
+  private @NotNull Future<Long> reserveIDs() {
+    return executor.submit(() -> taskDatabaseHelper.reserveTaskIDs(reservedIDCount));
+  }
+
+  // Must be called while holding the lock
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Task write queue has already been closed");
+    }
+  }
+
+  // Must be called while holding the lock
+  private void addPending(@NotNull Task copy, boolean completedOnly, boolean insert) {
+    long id = copy.getID();
+    Task replaced = pendingTasks.put(id, copy);
+    // A delete still waiting for this task stays queued: deletes are written first, so a task
+    // deleted and then inserted again (undo, then redo) really is deleted before the insert
+    if (insert) {
+      insertIDs.add(id);
+    }
+    // A full update (or insert) already waiting for this task still has to write every field
+    if (completedOnly
+        && !insertIDs.contains(id)
+        && (replaced == null || completedOnlyIDs.contains(id))) {
+      completedOnlyIDs.add(id);
+    } else {
+      completedOnlyIDs.remove(id);
+    }
+  }
+
+  // Must be called while holding the lock
+  private void addDelete(long id) {
+    pendingTasks.remove(id);
+    completedOnlyIDs.remove(id);
+    insertIDs.remove(id);
+    deletedIDs.add(id);
+  }
+
+  // Flush right away once enough writes have piled up, otherwise wait a little for more
+  // (must be called while holding the lock)
+  private void scheduleWrite() {
+    if (pendingTasks.size() + deletedIDs.size() >= flushThreshold) {
+      cancelScheduledFlush();
+      executor.execute(this::writePendingTasks);
+    } else if (scheduledFlush == null) {
+      scheduledFlush =
+          executor.schedule(this::writePendingTasks, flushDelayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Must be called while holding the lock
+  private void cancelScheduledFlush() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+  }
+
+  // Put a batch that failed to commit back in the queue.  Writes queued since the batch was
+  // taken are newer and win, but they still have to do whatever the batch didn't get to: a
+  // task that was to be inserted again still needs inserting, and a full update can't shrink to
+  // a completed-only one.  The batch's deletes all stay queued (deletes go first, so they come
+  // before any newer insert of the same task).  Must be called while holding the lock.
+  private void requeue(
+      @NotNull Map<Long, Task> batchTasks,
+      @NotNull Set<Long> batchCompletedOnlyIDs,
+      @NotNull Set<Long> batchInsertIDs,
+      @NotNull Set<Long> batchDeletedIDs) {
+    for (Task task : batchTasks.values()) {
+      long id = task.getID();
+      if (deletedIDs.contains(id)) {
+        continue; // deleted since, which makes the failed write moot
+      }
+      if (!pendingTasks.containsKey(id)) {
+        pendingTasks.put(id, task);
+        if (batchCompletedOnlyIDs.contains(id)) {
+          completedOnlyIDs.add(id);
+        }
+      } else if (!batchCompletedOnlyIDs.contains(id)) {
+        completedOnlyIDs.remove(id);
+      }
+      if (batchInsertIDs.contains(id)) {
+        insertIDs.add(id);
+        completedOnlyIDs.remove(id);
+      }
+    }
+    deletedIDs.addAll(batchDeletedIDs);
+  }
+
+  // Runs on the executor: take everything pending and commit it in a single transaction
+  private void writePendingTasks() {
+    Map<Long, Task> tasksToWrite;
+    Set<Long> completedOnlyIDsToWrite;
+    Set<Long> insertIDsToWrite;
+    Set<Long> deletedIDsToWrite;
+    synchronized (lock) {
+      cancelScheduledFlush();
+      if (pendingTasks.isEmpty() && deletedIDs.isEmpty()) {
+        return;
+      }
+      tasksToWrite = pendingTasks;
+      completedOnlyIDsToWrite = completedOnlyIDs;
+      insertIDsToWrite = insertIDs;
+      deletedIDsToWrite = deletedIDs;
+      writingTasks = tasksToWrite;
+      writingDeletedIDs = deletedIDsToWrite;
+      pendingTasks = new LinkedHashMap<>();
+      completedOnlyIDs = new HashSet<>();
+      insertIDs = new HashSet<>();
+      deletedIDs = new HashSet<>();
+    }
+    try {
+      taskDatabaseHelper.runInTransaction(
+          () -> {
+            for (long id : deletedIDsToWrite) {
+              taskDatabaseHelper.deleteTask(id);
+            }
+            for (Task task : tasksToWrite.values()) {
+              if (insertIDsToWrite.contains(task.getID())) {
+                taskDatabaseHelper.insertTaskWithID(task);
+              } else if (completedOnlyIDsToWrite.contains(task.getID())) {
+                taskDatabaseHelper.updateTaskCompleted(task);
+              } else {
+                taskDatabaseHelper.updateTask(task);
+              }
+            }
+          });
+    } catch (RuntimeException e) {
+      synchronized (lock) {
+        requeue(tasksToWrite, completedOnlyIDsToWrite, insertIDsToWrite, deletedIDsToWrite);
+        failedWrites++;
+        if (closed) {
+          Log.e(logTag, "Failed to write tasks; the queue is closed, so not retrying", e);
+        } else {
+          long retryDelayMillis =
+              Math.min(flushDelayMillis << Math.min(failedWrites, 16), maxRetryDelayMillis);
+          Log.e(logTag, "Failed to write tasks; retrying in " + retryDelayMillis + " ms", e);
+          cancelScheduledFlush();
+          scheduledFlush =
+              executor.schedule(this::writePendingTasks, retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+      }
+      throw e; // so flush() reports it
+    } finally {
+      synchronized (lock) {
+        writingTasks = new LinkedHashMap<>();
+        writingDeletedIDs = new HashSet<>();
+      }
+    }
+    synchronized (lock) {
+      failedWrites = 0;
+    }
+
+    Runnable listener = onWrittenListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+}
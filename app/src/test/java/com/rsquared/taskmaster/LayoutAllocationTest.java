@@ -0,0 +1,149 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+// Once warm, laying out an unchanged board should allocate nothing.  This covers the parts of
+// TaskDraw's layout that don't need a View: positioning graphics, grouping, and the grids used
+// for nudging.  Publishing the result does allocate, since every version is a new snapshot that
+// readers may hold on to, but only about one copy of the board's values.  Allocations are
+// counted with HotSpot's per-thread allocation counter, so the test is skipped on JVMs without
+// one.
+public class LayoutAllocationTest {
+
+  private static final int taskCount = 300;
+  private static final float width = 1_080;
+  private static final float height = 1_600;
+  private static final int warmUpRounds = 500;
+  private static final int maxBytesPerTask = 128; // about 60 bytes of values, with headers
+
+  private com.sun.management.ThreadMXBean threadBean;
+  private final TaskStore taskStore = new TaskStore();
+  private final List<Task> tasks = new ArrayList<>();
+  private final List<TaskGroup> taskGroups = new ArrayList<>();
+  private final List<Task> nearbyTasks = new ArrayList<>();
+  private final TaskClusterer taskClusterer = new TaskClusterer();
+  private final TaskGrid<Task> taskGrid = new TaskGrid<>();
+  private final float[] coordinates = new float[2];
+  private BoardSnapshot current = new BoardSnapshot();
+  private long version = 0;
+
+  @Before
+  public void setUp() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threadBean = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+
+    // A steady board: tasks on a lattice of ratings, so none of them overlap
+    for (int i = 0; i < taskCount; i++) {
+      Task task = new Task(i + 1, "Task " + (i + 1), 100 - (i % 10) * 10, 100 - i / 10 * 3, false);
+      task.setTaskGraphic(new TaskGraphic());
+      task.attachTo(taskStore);
+      tasks.add(task);
+    }
+    current.fill(0, tasks, taskGroups);
+  }
+
+  private long allocatedBytes() {
+    return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // What TaskDraw.setGraphic does with a task's position, minus measuring the text
+  private void layOut(TaskGraphic graphic, int urgency, int importance, int labelWidth) {
+    TaskDraw.getPercentCoordinates(urgency, importance, coordinates);
+    float x = coordinates[0] * (width - 200) + 50;
+    float y = coordinates[1] * (height - 200) + 100;
+    graphic.setBaseline(y);
+    graphic.setCheckBoxStart(x);
+    graphic.setTextStart(x + 40);
+    graphic.setTouchArea((int) x, (int) y - 30, (int) x + labelWidth, (int) y + 10);
+  }
+
+  private final TaskClusterer.GroupLayout groupLayout =
+      (TaskGroup taskGroup) -> {
+        if (taskGroup.getTaskGraphic() == null) {
+          taskGroup.setTaskGraphic(new TaskGraphic());
+        }
+        layOut(taskGroup.getTaskGraphic(), taskGroup.getUrgency(), taskGroup.getImportance(), 80);
+      };
+
+  // One pass over the board, in the order overlappingTasks does it
+  private void relayout() {
+    for (int i = 0; i < tasks.size(); i++) {
+      Task task = tasks.get(i);
+      layOut(task.getTaskGraphic(), task.getUrgency(), task.getImportance(), 80);
+    }
+    taskClusterer.cluster(tasks, groupLayout, taskGroups);
+    taskGrid.reset(width, height, 4 * 40, 40);
+    for (int i = 0; i < tasks.size(); i++) {
+      taskGrid.add(tasks.get(i), tasks.get(i).getTaskGraphic());
+    }
+    for (int i = 0; i < tasks.size(); i++) {
+      taskGrid.query(tasks.get(i).getTaskGraphic(), nearbyTasks);
+    }
+  }
+
+  // Check a task off and publish the board, as a tap does (copy, patch, publish)
+  private void checkOff() {
+    Task checkedTask = tasks.get((int) (++version % taskCount));
+    checkedTask.setCompleted(!checkedTask.getCompleted());
+    BoardSnapshot next = new BoardSnapshot(current, version);
+    next.updateTask(checkedTask);
+    current = next;
+  }
+
+  // The fewest bytes allocated by ten runs of the work, over several tries.  The JIT can
+  // allocate on this thread now and then while it swaps in compiled code, so the quietest of
+  // several windows is taken (a real allocation would show up in every one).  Reading the
+  // counter may itself allocate, so that is measured and taken off as well.
+  private long fewestBytesPerTenRuns(Runnable work) {
+    long fewest = Long.MAX_VALUE;
+    for (int window = 0; window < 5 && fewest > 0; window++) {
+      long before = allocatedBytes();
+      long overhead = allocatedBytes() - before;
+      before = allocatedBytes();
+      for (int round = 0; round < 10; round++) {
+        work.run();
+      }
+      fewest = Math.min(fewest, allocatedBytes() - before - overhead);
+    }
+    return fewest;
+  }
+
+  @Test
+  public void warmRelayoutAllocatesNothing() {
+    for (int round = 0; round < warmUpRounds; round++) {
+      relayout();
+    }
+    assertEquals(0, taskClusterer.getStats().groupCount);
+    assertEquals(0, fewestBytesPerTenRuns(this::relayout));
+  }
+
+  @Test
+  public void checkingOffCopiesTheBoardOnce() {
+    for (int round = 0; round < warmUpRounds; round++) {
+      checkOff();
+    }
+
+    // Each version is a new snapshot, with nothing per task beyond its share of the arrays
+    long bytesPerVersion = fewestBytesPerTenRuns(this::checkOff) / 10;
+    assertTrue(bytesPerVersion + " bytes", bytesPerVersion <= maxBytesPerTask * taskCount);
+
+    // A reader still holding an older version sees it as it was
+    BoardSnapshot older = current;
+    boolean olderCompleted = older.completed[(int) ((version + 1) % taskCount)];
+    checkOff();
+    assertEquals(version - 1, older.getVersion());
+    assertEquals(olderCompleted, older.completed[(int) (version % taskCount)]);
+    assertTrue(olderCompleted != current.completed[(int) (version % taskCount)]);
+  }
+}
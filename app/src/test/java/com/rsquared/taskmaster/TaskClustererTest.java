@@ -0,0 +1,297 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+// TaskClusterer against the grouping it replaced, on the boards in cluster_boards.txt (each lists
+// its tasks, by ratings and label width, and the groups the baseline grouping made of them) and on
+// random boards in several orders.  Any difference from the baseline fails.
+public class TaskClustererTest {
+
+  private static final int pixelsPerRating = 10;
+  private static final int groupWidth = 80; // about the width of "12 tasks"
+
+  // Stand-in for TaskDraw.setGraphic: the touch area sits to the right of the ratings' position,
+  // as wide as the label
+  static void setTouchArea(TaskGraphic graphic, int urgency, int importance, int width) {
+    int x = (100 - urgency) * pixelsPerRating;
+    int y = (100 - importance) * pixelsPerRating;
+    graphic.setTouchArea(x, y - 30, x + width, y + 10);
+  }
+
+  static final TaskClusterer.GroupLayout groupLayout =
+      (TaskGroup taskGroup) -> {
+        if (taskGroup.getTaskGraphic() == null) {
+          taskGroup.setTaskGraphic(new TaskGraphic());
+        }
+        setTouchArea(
+            taskGroup.getTaskGraphic(),
+            taskGroup.getUrgency(),
+            taskGroup.getImportance(),
+            groupWidth);
+      };
+
+  static Task task(long id, int urgency, int importance, int width) {
+    Task task = new Task(id, "Task " + id, urgency, importance, false);
+    TaskGraphic graphic = new TaskGraphic();
+    setTouchArea(graphic, urgency, importance, width);
+    task.setTaskGraphic(graphic);
+    return task;
+  }
+
+  private static boolean intersects(TaskGraphic a, TaskGraphic b) {
+    return a.getTouchLeft() < b.getTouchRight()
+        && b.getTouchLeft() < a.getTouchRight()
+        && a.getTouchTop() < b.getTouchBottom()
+        && b.getTouchTop() < a.getTouchBottom();
+  }
+
+  // The baseline overlappingTasks grouping, with board order in place of HashSet order: find
+  // the first overlapping pair, group it, then go once through the remaining tasks adding each
+  // one the group (laid out again after every addition) overlaps; repeat until no pair is left
+  static List<TaskGroup> baselineGrouping(List<Task> board) {
+    List<Task> tasks = new ArrayList<>(board);
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    while (true) {
+      Task first = null;
+      Task second = null;
+      for (int i = 0; i < tasks.size() && first == null; i++) {
+        for (int j = i + 1; j < tasks.size(); j++) {
+          if (intersects(tasks.get(i).getTaskGraphic(), tasks.get(j).getTaskGraphic())) {
+            first = tasks.get(i);
+            second = tasks.get(j);
+            break;
+          }
+        }
+      }
+      if (first == null) {
+        return taskGroups;
+      }
+      TaskGroup taskGroup = new TaskGroup();
+      taskGroup.addTask(first);
+      taskGroup.addTask(second);
+      groupLayout.layOut(taskGroup);
+      tasks.remove(first);
+      tasks.remove(second);
+      for (Iterator<Task> iterator = tasks.iterator(); iterator.hasNext(); ) {
+        Task task = iterator.next();
+        if (intersects(taskGroup.getTaskGraphic(), task.getTaskGraphic())) {
+          taskGroup.addTask(task);
+          groupLayout.layOut(taskGroup);
+          iterator.remove();
+        }
+      }
+      taskGroups.add(taskGroup);
+    }
+  }
+
+  // Groups as sorted ID lists ("1 4 7 | 2 3"), so that order doesn't matter
+  static String describe(List<TaskGroup> taskGroups) {
+    List<long[]> groups = new ArrayList<>();
+    for (TaskGroup taskGroup : taskGroups) {
+      long[] ids = new long[taskGroup.getTasks().size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = taskGroup.getTasks().get(i).getID();
+      }
+      Arrays.sort(ids);
+      groups.add(ids);
+    }
+    Collections.sort(groups, (long[] a, long[] b) -> Long.compare(a[0], b[0]));
+    StringBuilder description = new StringBuilder();
+    for (long[] ids : groups) {
+      if (description.length() > 0) {
+        description.append(" | ");
+      }
+      for (int i = 0; i < ids.length; i++) {
+        description.append(i == 0 ? "" : " ").append(ids[i]);
+      }
+    }
+    return description.toString();
+  }
+
+  // BOARDS
+
+  static final class Board {
+    final String name;
+    final List<Task> tasks = new ArrayList<>();
+    String groups = "";
+
+    Board(String name) {
+      this.name = name;
+    }
+  }
+
+  static List<Board> readBoards() throws IOException {
+    List<Board> boards = new ArrayList<>();
+    InputStream input = TaskClustererTest.class.getResourceAsStream("cluster_boards.txt");
+    assertNotNull("cluster_boards.txt is missing", input);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"))) {
+      Board board = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] words = line.split(" ", 2);
+        String rest = words.length > 1 ? words[1].trim() : "";
+        switch (words[0]) {
+          case "board":
+            board = new Board(rest);
+            boards.add(board);
+            break;
+          case "task":
+            String[] values = rest.split(" ");
+            board.tasks.add(
+                task(
+                    Long.parseLong(values[0]),
+                    Integer.parseInt(values[1]),
+                    Integer.parseInt(values[2]),
+                    Integer.parseInt(values[3])));
+            break;
+          case "groups":
+            board.groups = rest;
+            break;
+          default:
+            throw new IOException("Unexpected line in cluster_boards.txt: " + line);
+        }
+      }
+    }
+    return boards;
+  }
+
+  // A board of tasks scattered around a few centres, like the random boards in the corpus
+  static List<Task> randomBoard(Random random, int taskCount, int centreCount, int spread) {
+    int[][] centres = new int[centreCount][2];
+    for (int[] centre : centres) {
+      centre[0] = 1 + random.nextInt(100);
+      centre[1] = 1 + random.nextInt(100);
+    }
+    List<Task> board = new ArrayList<>(taskCount);
+    for (int id = 1; id <= taskCount; id++) {
+      int[] centre = centres[random.nextInt(centreCount)];
+      int urgency = clampRating(centre[0] + random.nextInt(2 * spread + 1) - spread);
+      int importance = clampRating(centre[1] + random.nextInt(2 * spread + 1) - spread);
+      board.add(task(id, urgency, importance, 40 + random.nextInt(200)));
+    }
+    return board;
+  }
+
+  private static int clampRating(int rating) {
+    return Math.max(1, Math.min(100, rating));
+  }
+
+  // TESTS
+
+  @Test
+  public void baselineGroupingMatchesTheCorpus() throws IOException {
+    List<Board> boards = readBoards();
+    assertFalse(boards.isEmpty());
+    for (Board board : boards) {
+      assertEquals(board.name, board.groups, describe(baselineGrouping(board.tasks)));
+    }
+  }
+
+  @Test
+  public void clustererMatchesTheCorpus() throws IOException {
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    for (Board board : readBoards()) {
+      TaskClusterer clusterer = new TaskClusterer();
+      clusterer.cluster(board.tasks, groupLayout, taskGroups);
+      assertEquals(board.name, board.groups, describe(taskGroups));
+      assertEquals(board.name, taskGroups.size(), clusterer.getStats().groupCount);
+    }
+  }
+
+  @Test
+  public void clustererMatchesTheBaselineInAnyOrder() throws IOException {
+    // Reversed and shuffled corpus boards: the groups change with the order, the same way
+    TaskClusterer clusterer = new TaskClusterer();
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    Random random = new Random(24);
+    for (Board board : readBoards()) {
+      List<Task> tasks = new ArrayList<>(board.tasks);
+      Collections.reverse(tasks);
+      clusterer.cluster(tasks, groupLayout, taskGroups);
+      assertEquals(board.name, describe(baselineGrouping(tasks)), describe(taskGroups));
+      Collections.shuffle(tasks, random);
+      clusterer.cluster(tasks, groupLayout, taskGroups);
+      assertEquals(board.name, describe(baselineGrouping(tasks)), describe(taskGroups));
+    }
+  }
+
+  @Test
+  public void clustererMatchesTheBaselineOnRandomBoards() {
+    TaskClusterer clusterer = new TaskClusterer();
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    Random random = new Random(2_024);
+    for (int round = 0; round < 200; round++) {
+      int taskCount = 1 + random.nextInt(400);
+      List<Task> board = randomBoard(random, taskCount, 1 + random.nextInt(6), random.nextInt(30));
+      clusterer.cluster(board, groupLayout, taskGroups);
+      assertEquals("round " + round, describe(baselineGrouping(board)), describe(taskGroups));
+    }
+  }
+
+  @Test
+  public void ungroupedTasksDoNotOverlapEachOther() throws IOException {
+    // (They can still be under a group: a group only takes in tasks once, as it forms)
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    for (Board board : readBoards()) {
+      new TaskClusterer().cluster(board.tasks, groupLayout, taskGroups);
+      List<Task> ungrouped = new ArrayList<>(board.tasks);
+      for (TaskGroup taskGroup : taskGroups) {
+        ungrouped.removeAll(taskGroup.getTasks());
+      }
+      for (Task task : ungrouped) {
+        for (Task otherTask : ungrouped) {
+          assertTrue(
+              board.name + ": " + task.getID() + " overlaps " + otherTask.getID(),
+              task == otherTask || !intersects(task.getTaskGraphic(), otherTask.getTaskGraphic()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void oneClustererGivesTheSameGroupsForEveryBoard() throws IOException {
+    // Arrays are kept between calls, so run big and small boards through a single instance
+    TaskClusterer clusterer = new TaskClusterer();
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    List<Board> boards = readBoards();
+    for (int pass = 0; pass < 2; pass++) {
+      for (Board board : boards) {
+        clusterer.cluster(board.tasks, groupLayout, taskGroups);
+        assertEquals(board.name, board.groups, describe(taskGroups));
+      }
+      Collections.reverse(boards);
+    }
+  }
+
+  @Test
+  public void emptyAndFarApartBoards() {
+    TaskClusterer clusterer = new TaskClusterer();
+    List<TaskGroup> taskGroups = new ArrayList<>();
+    clusterer.cluster(new ArrayList<>(), groupLayout, taskGroups);
+    assertTrue(taskGroups.isEmpty());
+
+    // Two tasks in opposite corners make a large box with a coarse grid; the pair still groups
+    List<Task> board = Arrays.asList(task(1, 1, 1, 60), task(2, 100, 100, 60), task(3, 1, 1, 60));
+    clusterer.cluster(board, groupLayout, taskGroups);
+    assertEquals("1 3", describe(taskGroups));
+  }
+}
@@ -0,0 +1,139 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// Undo/redo order, the entry and size caps, and what each kind of command keeps
+public class TaskCommandLogTest {
+
+  private static String longLabel(int length) {
+    StringBuilder label = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      label.append('x');
+    }
+    return label.toString();
+  }
+
+  @Test
+  public void undoAndRedoWalkTheHistoryInOrder() {
+    TaskCommandLog log = new TaskCommandLog();
+    assertFalse(log.canUndo());
+    assertNull(log.takeUndo());
+    assertNull(log.takeRedo());
+
+    TaskCommandLog.Command first = TaskCommandLog.Command.toggle(1, true);
+    TaskCommandLog.Command second = TaskCommandLog.Command.move(2, 10, 20, 30, 40);
+    log.record(first);
+    log.record(second);
+
+    assertSame(second, log.takeUndo());
+    assertSame(first, log.takeUndo());
+    assertFalse(log.canUndo());
+    assertTrue(log.canRedo());
+    assertSame(first, log.takeRedo());
+    assertSame(second, log.takeRedo());
+    assertFalse(log.canRedo());
+  }
+
+  @Test
+  public void recordingForgetsTheRedoHistory() {
+    TaskCommandLog log = new TaskCommandLog();
+    log.record(TaskCommandLog.Command.toggle(1, true));
+    log.record(TaskCommandLog.Command.toggle(2, true));
+    log.takeUndo();
+    assertTrue(log.canRedo());
+
+    TaskCommandLog.Command replacement = TaskCommandLog.Command.toggle(3, false);
+    log.record(replacement);
+    assertFalse(log.canRedo());
+    assertSame(replacement, log.takeUndo());
+  }
+
+  @Test
+  public void oldestEntriesAreDroppedPastTheEntryCap() {
+    TaskCommandLog log = new TaskCommandLog();
+    for (long id = 0; id < TaskCommandLog.maxEntries + 50; id++) {
+      log.record(TaskCommandLog.Command.toggle(id, true));
+    }
+    int undoable = 0;
+    TaskCommandLog.Command command;
+    long lastID = -1;
+    while ((command = log.takeUndo()) != null) {
+      undoable++;
+      lastID = command.id;
+    }
+    assertEquals(TaskCommandLog.maxEntries, undoable);
+    assertEquals(50, lastID); // the first 50 were dropped
+  }
+
+  @Test
+  public void sizeStaysUnderTheByteCap() {
+    TaskCommandLog log = new TaskCommandLog();
+    Task oldTask = new Task(1, "Before", 10, 10, false);
+    for (int i = 0; i < 100; i++) {
+      Task newTask = new Task(1, longLabel(1_000) + i, 20, 20, false);
+      log.record(TaskCommandLog.Command.edit(oldTask, newTask));
+      assertTrue(log.getSizeInBytes() <= TaskCommandLog.maxBytes);
+    }
+    assertTrue(log.canUndo());
+
+    // Moving entries between the stacks doesn't change the total
+    long size = log.getSizeInBytes();
+    log.takeUndo();
+    log.takeUndo();
+    assertEquals(size, log.getSizeInBytes());
+    log.clear();
+    assertEquals(0, log.getSizeInBytes());
+    assertFalse(log.canUndo() || log.canRedo());
+  }
+
+  @Test
+  public void anOversizedEntryIsStillKept() {
+    TaskCommandLog log = new TaskCommandLog();
+    log.record(TaskCommandLog.Command.toggle(1, true));
+    Task huge = new Task(2, longLabel((int) TaskCommandLog.maxBytes), 50, 50, false);
+    TaskCommandLog.Command add = TaskCommandLog.Command.add(huge);
+    log.record(add);
+    assertSame(add, log.takeUndo());
+    assertFalse(log.canUndo());
+  }
+
+  @Test
+  public void commandsKeepOnlyWhatTheyNeed() {
+    TaskCommandLog.Command move = TaskCommandLog.Command.move(5, 1, 2, 99, 100);
+    assertEquals(TaskCommandLog.Command.MOVE, move.type);
+    assertEquals(1, move.getOldUrgency());
+    assertEquals(2, move.getOldImportance());
+    assertEquals(99, move.getNewUrgency());
+    assertEquals(100, move.getNewImportance());
+
+    Task oldTask = new Task(6, "Same", 30, 40, false);
+    Task newTask = new Task(6, "Same", 50, 60, true);
+    TaskCommandLog.Command edit = TaskCommandLog.Command.edit(oldTask, newTask);
+    assertNull(edit.oldLabel);
+    assertNull(edit.newLabel);
+    assertFalse(edit.oldCompleted);
+    assertTrue(edit.newCompleted);
+    assertEquals(move.getSizeInBytes(), edit.getSizeInBytes());
+
+    newTask.setLabel("Renamed");
+    edit = TaskCommandLog.Command.edit(oldTask, newTask);
+    assertEquals("Same", edit.oldLabel);
+    assertEquals("Renamed", edit.newLabel);
+    assertTrue(edit.getSizeInBytes() > move.getSizeInBytes());
+
+    TaskCommandLog.Command toggle = TaskCommandLog.Command.toggle(7, false);
+    assertTrue(toggle.oldCompleted);
+    assertFalse(toggle.newCompleted);
+
+    TaskCommandLog.Command add = TaskCommandLog.Command.add(newTask);
+    assertEquals(6, add.id);
+    assertNull(add.oldLabel);
+    assertEquals("Renamed", add.newLabel);
+  }
+}
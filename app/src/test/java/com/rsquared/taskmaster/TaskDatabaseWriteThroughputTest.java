@@ -0,0 +1,191 @@
+package com.rsquared.taskmaster;
+
+import static com.rsquared.taskmaster.TaskDatabaseContract.DATABASE_NAME;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_COMPLETED;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_IMPORTANCE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_TASK;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.COLUMN_NAME_URGENCY;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.ID_CLAUSE;
+import static com.rsquared.taskmaster.TaskDatabaseContract.Table.TABLE_NAME;
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+// The helper's writes go through statements compiled once and bound again for every row, in
+// place of building ContentValues and having insert()/update() put the SQL together each time.
+// Both ways must store the same rows.  The timing comparison only reports rows/s: each way runs
+// on a fresh table, and the order is swapped every round so neither always goes first.
+@RunWith(RobolectricTestRunner.class)
+public class TaskDatabaseWriteThroughputTest {
+
+  private static final int rowCount = 100_000;
+  private static final int rounds = 2;
+
+  private Context context;
+  private TaskDatabaseHelper taskDatabaseHelper;
+
+  // One way of writing tasks (each call is made inside a transaction)
+  private interface WritePath {
+    long insert(Task task);
+
+    void update(Task task);
+  }
+
+  // The way the helper used to write: a fresh ContentValues per row
+  private final WritePath contentValuesPath =
+      new WritePath() {
+        @Override
+        public long insert(Task task) {
+          return taskDatabaseHelper.getWritableDatabase().insert(TABLE_NAME, null, values(task));
+        }
+
+        @Override
+        public void update(Task task) {
+          taskDatabaseHelper
+              .getWritableDatabase()
+              .update(
+                  TABLE_NAME, values(task), ID_CLAUSE, new String[] {String.valueOf(task.getID())});
+        }
+      };
+
+  private final WritePath compiledPath =
+      new WritePath() {
+        @Override
+        public long insert(Task task) {
+          return taskDatabaseHelper.addTask(task);
+        }
+
+        @Override
+        public void update(Task task) {
+          taskDatabaseHelper.updateTask(task);
+        }
+      };
+
+  @Before
+  public void createDatabase() {
+    context = ApplicationProvider.getApplicationContext();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+  }
+
+  @After
+  public void closeAndDeleteDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  private void resetDatabase() {
+    taskDatabaseHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+    taskDatabaseHelper = new TaskDatabaseHelper(context);
+  }
+
+  private static ContentValues values(Task task) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_NAME_TASK, task.getLabel());
+    values.put(COLUMN_NAME_URGENCY, task.getUrgency());
+    values.put(COLUMN_NAME_IMPORTANCE, task.getImportance());
+    values.put(COLUMN_NAME_COMPLETED, task.getCompleted());
+    return values;
+  }
+
+  // Insert rowCount tasks in one transaction, then change every one of them in another,
+  // returning the tasks as they should now be stored
+  private List<Task> insertAndUpdate(WritePath path, long[] elapsedNanos) {
+    List<Task> tasks = new ArrayList<>(rowCount);
+    long start = System.nanoTime();
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (int i = 0; i < rowCount; i++) {
+            Task task = new Task("Task " + i, i % 100 + 1, i * 7 % 100 + 1, i % 5 == 0);
+            long id = path.insert(task);
+            String label = "Task " + i + " renamed";
+            tasks.add(new Task(id, label, 100 - i % 100, i * 7 % 100 + 1, i % 5 != 0));
+          }
+        });
+    elapsedNanos[0] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    taskDatabaseHelper.runInTransaction(
+        () -> {
+          for (Task task : tasks) {
+            path.update(task);
+          }
+        });
+    elapsedNanos[1] = System.nanoTime() - start;
+    return tasks;
+  }
+
+  // Every task as "id/label/urgency/importance/completed", sorted
+  private static List<String> describe(Iterable<Task> taskList) {
+    List<String> tasks = new ArrayList<>();
+    for (Task task : taskList) {
+      tasks.add(
+          task.getID()
+              + "/"
+              + task.getLabel()
+              + "/"
+              + task.getUrgency()
+              + "/"
+              + task.getImportance()
+              + "/"
+              + task.getCompleted());
+    }
+    Collections.sort(tasks);
+    return tasks;
+  }
+
+  private static long rowsPerSecond(long nanos) {
+    return rowCount * 1_000_000_000L / Math.max(1, nanos);
+  }
+
+  @Test
+  public void bothWaysStoreTheSameRows() {
+    long[] elapsedNanos = new long[2];
+    List<String> contentValuesRows = describe(insertAndUpdate(contentValuesPath, elapsedNanos));
+    assertEquals(contentValuesRows, describe(taskDatabaseHelper.getTasks(false)));
+
+    resetDatabase();
+    List<String> compiledRows = describe(insertAndUpdate(compiledPath, elapsedNanos));
+    assertEquals(compiledRows, describe(taskDatabaseHelper.getTasks(false)));
+    assertEquals(contentValuesRows, compiledRows);
+  }
+
+  @Test
+  public void compareThroughput() {
+    long[] contentValuesNanos = new long[2];
+    long[] compiledNanos = new long[2];
+    long[] elapsedNanos = new long[2];
+    for (int round = 0; round < rounds; round++) {
+      for (int turn = 0; turn < 2; turn++) {
+        boolean compiled = (round + turn) % 2 == 1;
+        resetDatabase();
+        insertAndUpdate(compiled ? compiledPath : contentValuesPath, elapsedNanos);
+        long[] total = compiled ? compiledNanos : contentValuesNanos;
+        total[0] += elapsedNanos[0];
+        total[1] += elapsedNanos[1];
+      }
+    }
+    System.out.println(
+        "Inserts: "
+            + rowsPerSecond(contentValuesNanos[0] / rounds)
+            + " rows/s with ContentValues, "
+            + rowsPerSecond(compiledNanos[0] / rounds)
+            + " rows/s compiled; updates: "
+            + rowsPerSecond(contentValuesNanos[1] / rounds)
+            + " rows/s with ContentValues, "
+            + rowsPerSecond(compiledNanos[1] / rounds)
+            + " rows/s compiled");
+    assertEquals(rowCount, taskDatabaseHelper.getTasks(false).size());
+  }
+}
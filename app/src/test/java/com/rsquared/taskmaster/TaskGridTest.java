@@ -0,0 +1,163 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+// TaskGrid queries against a scan of every item, including areas past the canvas edges
+public class TaskGridTest {
+
+  private static final float width = 1_000;
+  private static final float height = 800;
+
+  private static TaskGraphic graphic(int left, int top, int right, int bottom) {
+    TaskGraphic graphic = new TaskGraphic();
+    graphic.setTouchArea(left, top, right, bottom);
+    return graphic;
+  }
+
+  private static TaskGraphic randomGraphic(Random random) {
+    // Some areas hang off the canvas, which the grid files under its edge cells
+    int left = random.nextInt((int) width + 200) - 100;
+    int top = random.nextInt((int) height + 200) - 100;
+    return graphic(left, top, left + 1 + random.nextInt(150), top + 1 + random.nextInt(60));
+  }
+
+  private static boolean intersects(TaskGraphic a, TaskGraphic b) {
+    return a.getTouchLeft() < b.getTouchRight()
+        && b.getTouchLeft() < a.getTouchRight()
+        && a.getTouchTop() < b.getTouchBottom()
+        && b.getTouchTop() < a.getTouchBottom();
+  }
+
+  @Test
+  public void queryFindsExactlyTheIntersectingItems() {
+    Random random = new Random(42);
+    TaskGrid<Integer> grid = new TaskGrid<>();
+    grid.reset(width, height, 60, 25);
+    List<TaskGraphic> graphics = new ArrayList<>();
+    for (int item = 0; item < 500; item++) {
+      TaskGraphic graphic = randomGraphic(random);
+      graphics.add(graphic);
+      grid.add(item, graphic);
+    }
+
+    List<Integer> results = new ArrayList<>();
+    for (int query = 0; query < 500; query++) {
+      TaskGraphic area = randomGraphic(random);
+      grid.query(area, results);
+      Set<Integer> expected = new HashSet<>();
+      for (int item = 0; item < graphics.size(); item++) {
+        if (intersects(graphics.get(item), area)) {
+          expected.add(item);
+        }
+      }
+      assertEquals(expected.size(), results.size()); // each item reported once
+      assertEquals(expected, new HashSet<>(results));
+    }
+  }
+
+  @Test
+  public void addingAgainMovesTheItem() {
+    TaskGrid<String> grid = new TaskGrid<>();
+    grid.reset(width, height, 50, 50);
+    grid.add("task", graphic(10, 10, 40, 30));
+    grid.add("task", graphic(700, 500, 760, 520));
+    assertEquals(1, grid.size());
+
+    List<String> results = new ArrayList<>();
+    grid.query(0, 0, 100, 100, results);
+    assertTrue(results.isEmpty());
+    grid.query(690, 490, 710, 510, results);
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void removedItemsAreNotFound() {
+    TaskGrid<Integer> grid = new TaskGrid<>();
+    grid.reset(width, height, 40, 40);
+    for (int item = 0; item < 50; item++) {
+      grid.add(item, graphic(item * 10, 100, item * 10 + 200, 140));
+    }
+    for (int item = 0; item < 50; item += 2) {
+      grid.remove(item);
+    }
+    grid.remove(1_000); // not in the grid
+
+    List<Integer> results = new ArrayList<>();
+    grid.query(0, 0, (int) width, (int) height, results);
+    assertEquals(25, results.size());
+    for (int item : results) {
+      assertEquals(1, item % 2);
+    }
+    assertFalse(grid.contains(0));
+    assertTrue(grid.contains(1));
+  }
+
+  @Test
+  public void movingItemsReusesTheirEntries() {
+    // Incremental layouts move the same few items again and again without a reset
+    Random random = new Random(25);
+    TaskGrid<Integer> grid = new TaskGrid<>();
+    grid.reset(width, height, 60, 25);
+    List<TaskGraphic> graphics = new ArrayList<>();
+    for (int item = 0; item < 100; item++) {
+      graphics.add(randomGraphic(random));
+      grid.add(item, graphics.get(item));
+    }
+    for (int move = 0; move < 10_000; move++) {
+      int item = random.nextInt(100);
+      graphics.set(item, randomGraphic(random));
+      if (move % 2 == 0) {
+        grid.add(item, graphics.get(item)); // moved in place
+      } else {
+        grid.remove(item);
+        grid.add(item, graphics.get(item));
+      }
+    }
+    assertEquals(100, grid.size());
+    assertEquals(100, grid.pooledEntryCount());
+
+    // The reused entries are found where they now are
+    List<Integer> results = new ArrayList<>();
+    for (int item = 0; item < 100; item++) {
+      grid.query(graphics.get(item), results);
+      assertTrue(results.contains(item));
+    }
+  }
+
+  @Test
+  public void resetEmptiesTheGridAndResizesIt() {
+    TaskGrid<Integer> grid = new TaskGrid<>();
+    grid.reset(width, height, 100, 100);
+    grid.add(1, graphic(0, 0, 50, 50));
+    grid.reset(2 * width, 2 * height, 30, 30);
+    assertEquals(0, grid.size());
+    assertFalse(grid.contains(1));
+
+    grid.add(2, graphic(1_900, 1_500, 1_950, 1_550));
+    List<Integer> results = new ArrayList<>();
+    grid.query(1_940, 1_540, 1_945, 1_545, results);
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void touchingEdgesDoNotCountAsOverlap() {
+    // Same rule as Rect.intersects: areas that only share an edge don't intersect
+    TaskGrid<Integer> grid = new TaskGrid<>();
+    grid.reset(width, height, 50, 50);
+    grid.add(1, graphic(100, 100, 200, 150));
+    List<Integer> results = new ArrayList<>();
+    grid.query(200, 100, 300, 150, results);
+    assertTrue(results.isEmpty());
+    grid.query(199, 149, 300, 200, results);
+    assertEquals(1, results.size());
+  }
+}
@@ -0,0 +1,105 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+// TaskMap against a HashMap, with enough churn to exercise growing and the backward-shift delete
+public class TaskMapTest {
+
+  private static Task task(long id) {
+    return new Task(id, "Task " + id, 50, 50, false);
+  }
+
+  @Test
+  public void putGetAndReplace() {
+    TaskMap map = new TaskMap();
+    Task first = task(7);
+    Task second = task(7);
+    assertNull(map.put(7, first));
+    assertSame(first, map.get(7));
+    assertSame(first, map.put(7, second));
+    assertSame(second, map.get(7));
+    assertEquals(1, map.size());
+    assertNull(map.get(8));
+    assertFalse(map.containsKey(8));
+  }
+
+  @Test
+  public void removeKeepsTheRestOfAProbeRunReachable() {
+    // A small map with consecutive IDs, so removals land in the middle of probe runs
+    TaskMap map = new TaskMap(4);
+    for (long id = 0; id < 6; id++) {
+      map.put(id, task(id));
+    }
+    assertEquals(2, map.remove(2).getID());
+    assertNull(map.remove(2));
+    for (long id = 0; id < 6; id++) {
+      assertEquals(id != 2, map.containsKey(id));
+    }
+    assertEquals(5, map.size());
+  }
+
+  @Test
+  public void matchesHashMapUnderRandomChurn() {
+    Random random = new Random(1234);
+    TaskMap map = new TaskMap();
+    Map<Long, Task> expected = new HashMap<>();
+    for (int step = 0; step < 100_000; step++) {
+      long id = random.nextInt(2_000) - 100; // includes negative IDs and zero
+      if (random.nextInt(3) == 0) {
+        assertSame(expected.remove(id), map.remove(id));
+      } else {
+        Task task = task(id);
+        assertSame(expected.put(id, task), map.put(id, task));
+      }
+      if (step % 10_000 == 0) {
+        assertEquals(expected.size(), map.size());
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, Task> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void iteratesOverEveryTaskOnce() {
+    TaskMap map = new TaskMap();
+    for (long id = 1; id <= 1_000; id++) {
+      map.put(id, task(id));
+    }
+    for (long id = 1; id <= 1_000; id += 3) {
+      map.remove(id);
+    }
+    Set<Long> seen = new HashSet<>();
+    for (Task task : map) {
+      assertTrue(seen.add(task.getID()));
+      assertTrue(task.getID() % 3 != 1);
+    }
+    assertEquals(map.size(), seen.size());
+  }
+
+  @Test
+  public void clearEmptiesTheMap() {
+    TaskMap map = new TaskMap();
+    for (long id = 0; id < 100; id++) {
+      map.put(id, task(id));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.iterator().hasNext());
+    assertNull(map.get(42));
+    map.put(42, task(42));
+    assertEquals(1, map.size());
+  }
+}
@@ -0,0 +1,308 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+// TaskNudger's pass over a board's groups against the baseline layout's, which scanned every task
+// and group for each check, on random boards.  Both must nudge the same groups and leave every
+// task in the same place; and afterwards the grid must hold each nudged task where it now is.
+public class TaskNudgerTest {
+
+  private static final float fontTop = -20;
+  private static final float fontBottom = 0;
+  private static final float padding = 10;
+  private static final float margin = 30;
+  private static final float width = 1_100;
+  private static final float height = 1_060;
+  private static final float maxNudgeRatio = (float) 0.25;
+  private static final int pixelsPerRating = 10;
+  private static final int groupWidth = 80;
+
+  // Stand-in for TaskDraw.setGraphic, with the same vertical layout as the metrics above
+  private static void layOut(TaskGraphic graphic, int urgency, int importance, int labelWidth) {
+    int x = (100 - urgency) * pixelsPerRating;
+    int y = (int) baseline(importance);
+    graphic.setBaseline(y);
+    graphic.setTouchArea(
+        x, y + (int) (fontTop - padding), x + labelWidth, y + (int) (fontBottom + padding));
+  }
+
+  private static float baseline(int importance) {
+    return margin + padding - fontTop + (100 - importance) * pixelsPerRating;
+  }
+
+  private static final TaskClusterer.GroupLayout groupLayout =
+      (TaskGroup taskGroup) -> {
+        if (taskGroup.getTaskGraphic() == null) {
+          taskGroup.setTaskGraphic(new TaskGraphic());
+        }
+        layOut(
+            taskGroup.getTaskGraphic(),
+            taskGroup.getUrgency(),
+            taskGroup.getImportance(),
+            groupWidth);
+      };
+
+  private static final TaskNudger.Origin origin =
+      (TaskGroup taskGroup) -> baseline(taskGroup.getImportance());
+
+  // A laid-out, grouped board (the same seed always gives the same board)
+  private static final class Board {
+    final Set<Task> tasks = new LinkedHashSet<>(); // ungrouped
+    final List<TaskGroup> taskGroups = new ArrayList<>();
+    final List<Task> allTasks = new ArrayList<>();
+
+    Board(long seed) {
+      Random random = new Random(seed);
+      int taskCount = 2 + random.nextInt(150);
+      int centreCount = 1 + random.nextInt(8);
+      int spread = 2 + random.nextInt(25);
+      int[][] centres = new int[centreCount][2];
+      for (int[] centre : centres) {
+        centre[0] = 1 + random.nextInt(100);
+        centre[1] = 1 + random.nextInt(100);
+      }
+      for (int id = 1; id <= taskCount; id++) {
+        int[] centre = centres[random.nextInt(centreCount)];
+        int urgency = clampRating(centre[0] + random.nextInt(2 * spread + 1) - spread);
+        int importance = clampRating(centre[1] + random.nextInt(2 * spread + 1) - spread);
+        Task task = new Task(id, "Task " + id, urgency, importance, false);
+        task.setTaskGraphic(new TaskGraphic());
+        layOut(task.getTaskGraphic(), urgency, importance, 40 + random.nextInt(160));
+        allTasks.add(task);
+      }
+      new TaskClusterer().cluster(allTasks, groupLayout, taskGroups);
+      tasks.addAll(allTasks);
+      for (TaskGroup taskGroup : taskGroups) {
+        tasks.removeAll(taskGroup.getTasks());
+      }
+    }
+  }
+
+  private static int clampRating(int rating) {
+    return Math.max(1, Math.min(100, rating));
+  }
+
+  private static boolean intersects(
+      TaskGraphic graphic, int left, int top, int right, int bottom) {
+    return graphic.getTouchLeft() < right
+        && left < graphic.getTouchRight()
+        && graphic.getTouchTop() < bottom
+        && top < graphic.getTouchBottom();
+  }
+
+  // BASELINE
+
+  // The baseline overlappingTasks nudging: each group in turn, checked against every ungrouped
+  // task and every other group (nudged groups stayed in the set, and their tasks out of it,
+  // until the loop was over)
+  private static List<TaskGroup> baselineNudging(Board board) {
+    List<TaskGroup> nudged = new ArrayList<>();
+    for (TaskGroup taskGroup : board.taskGroups) {
+      if (baselineNudgeTasks(taskGroup, board)) {
+        nudged.add(taskGroup);
+      }
+    }
+    return nudged;
+  }
+
+  // TaskDraw.nudgeTasks as it was (without forceNudge), with scans in place of the grids
+  private static boolean baselineNudgeTasks(TaskGroup taskGroup, Board board) {
+    float yOrigin = baseline(taskGroup.getImportance());
+    int numTasks = taskGroup.getTasks().size();
+    float taskHeight = fontBottom - fontTop;
+    float paddedTaskHeight = taskHeight + 2 * padding;
+    float totalTaskHeight = numTasks * paddedTaskHeight;
+    float topOfTasks = (float) (yOrigin - totalTaskHeight / 2.0);
+    float bottomOfTasks = (float) (yOrigin + totalTaskHeight / 2.0);
+    if (topOfTasks < margin) {
+      topOfTasks = margin;
+      bottomOfTasks = topOfTasks + totalTaskHeight;
+    }
+    if (bottomOfTasks > height - margin) {
+      bottomOfTasks = height - margin;
+      topOfTasks = bottomOfTasks - totalTaskHeight;
+    }
+
+    int counter = 0;
+    for (Task task : taskGroup.getTasks()) {
+      TaskGraphic graphic = task.getTaskGraphic();
+      float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
+      float nudgeY = yBaselineDest - graphic.getBaseline();
+      if (Math.abs(nudgeY) / height > maxNudgeRatio) {
+        return false;
+      }
+      int left = graphic.getTouchLeft();
+      int top = graphic.getTouchTop() + (int) nudgeY;
+      int right = graphic.getTouchRight();
+      int bottom = graphic.getTouchBottom() + (int) nudgeY;
+      for (Task checkTask : board.tasks) {
+        if (!taskGroup.isTaskInGroup(checkTask)
+            && intersects(checkTask.getTaskGraphic(), left, top, right, bottom)) {
+          return false;
+        }
+      }
+      for (TaskGroup checkTaskGroup : board.taskGroups) {
+        if (taskGroup != checkTaskGroup
+            && intersects(checkTaskGroup.getTaskGraphic(), left, top, right, bottom)) {
+          return false;
+        }
+      }
+      counter++;
+    }
+
+    counter = 0;
+    for (Task task : taskGroup.getTasks()) {
+      float yBaselineDest = topOfTasks + padding - fontTop + counter * paddedTaskHeight;
+      float nudgeY = yBaselineDest - task.getTaskGraphic().getBaseline();
+      task.getTaskGraphic().move(0, (int) nudgeY);
+      counter++;
+    }
+    return true;
+  }
+
+  // Every task's position, and which groups were nudged
+  private static String describe(Board board, List<TaskGroup> nudged) {
+    StringBuilder description = new StringBuilder();
+    for (Task task : board.allTasks) {
+      TaskGraphic graphic = task.getTaskGraphic();
+      description
+          .append(task.getID())
+          .append('@')
+          .append(graphic.getBaseline())
+          .append('/')
+          .append(graphic.getTouchTop())
+          .append('/')
+          .append(graphic.getTouchBottom())
+          .append(' ');
+    }
+    description.append("nudged");
+    for (TaskGroup taskGroup : nudged) {
+      description.append(' ').append(board.taskGroups.indexOf(taskGroup));
+    }
+    return description.toString();
+  }
+
+  // TESTS
+
+  @Test
+  public void nudgingMatchesTheBaseline() {
+    int nudgedCount = 0;
+    int keptCount = 0;
+    List<Task> results = new ArrayList<>();
+    for (long seed = 0; seed < 300; seed++) {
+      Board baselineBoard = new Board(seed);
+      List<TaskGroup> baselineNudged = baselineNudging(baselineBoard);
+
+      Board board = new Board(seed);
+      TaskGrid<Task> taskGrid = new TaskGrid<>();
+      TaskGrid<TaskGroup> taskGroupGrid = new TaskGrid<>();
+      IdentityHashMap<Task, TaskGroup> taskGroupOfTask = new IdentityHashMap<>();
+      float paddedTaskHeight = fontBottom - fontTop + 2 * padding;
+      taskGrid.reset(width, height, 4 * paddedTaskHeight, paddedTaskHeight);
+      taskGroupGrid.reset(width, height, 4 * paddedTaskHeight, paddedTaskHeight);
+      for (Task task : board.tasks) {
+        taskGrid.add(task, task.getTaskGraphic());
+      }
+      for (TaskGroup taskGroup : board.taskGroups) {
+        taskGroupGrid.add(taskGroup, taskGroup.getTaskGraphic());
+        for (Task task : taskGroup.getTasks()) {
+          taskGroupOfTask.put(task, taskGroup);
+        }
+      }
+      TaskNudger nudger = new TaskNudger(taskGrid, taskGroupGrid, taskGroupOfTask);
+      nudger.setMetrics(fontTop, fontBottom, padding, margin, height, maxNudgeRatio);
+      List<TaskGroup> nudged = new ArrayList<>();
+      nudger.nudgeTaskGroups(board.taskGroups, origin, nudged);
+
+      assertEquals(
+          "seed " + seed, describe(baselineBoard, baselineNudged), describe(board, nudged));
+      nudgedCount += nudged.size();
+      keptCount += board.taskGroups.size() - nudged.size();
+
+      // Each nudged task's grid entry moved with it
+      for (TaskGroup taskGroup : nudged) {
+        for (Task task : taskGroup.getTasks()) {
+          taskGrid.query(task.getTaskGraphic(), results);
+          assertTrue("seed " + seed, results.contains(task));
+        }
+      }
+    }
+    // (The boards must exercise both outcomes for the comparison to mean anything)
+    assertTrue(nudgedCount > 0);
+    assertTrue(keptCount > 0);
+  }
+
+  @Test
+  public void tasksNudgedEarlierInThePassDoNotCount() {
+    // The first group's column reaches down to where the second group's column goes, but
+    // neither group's own area is in the other's way, so both are nudged, as in the baseline
+    Board board = emptyBoard();
+    TaskGroup first =
+        group(board, new int[][] {{40, 50}, {40, 50}, {40, 50}, {40, 50}}); // x 600, 4 tall
+    TaskGroup second = group(board, new int[][] {{40, 40}, {64, 40}}); // area at x 480
+    Board baselineBoard = emptyBoard();
+    group(baselineBoard, new int[][] {{40, 50}, {40, 50}, {40, 50}, {40, 50}});
+    group(baselineBoard, new int[][] {{40, 40}, {64, 40}});
+
+    TaskGrid<Task> taskGrid = new TaskGrid<>();
+    TaskGrid<TaskGroup> taskGroupGrid = new TaskGrid<>();
+    IdentityHashMap<Task, TaskGroup> taskGroupOfTask = new IdentityHashMap<>();
+    taskGrid.reset(width, height, 160, 40);
+    taskGroupGrid.reset(width, height, 160, 40);
+    for (TaskGroup taskGroup : board.taskGroups) {
+      taskGroupGrid.add(taskGroup, taskGroup.getTaskGraphic());
+      for (Task task : taskGroup.getTasks()) {
+        taskGroupOfTask.put(task, taskGroup);
+      }
+    }
+    TaskNudger nudger = new TaskNudger(taskGrid, taskGroupGrid, taskGroupOfTask);
+    nudger.setMetrics(fontTop, fontBottom, padding, margin, height, maxNudgeRatio);
+    List<TaskGroup> nudged = new ArrayList<>();
+    nudger.nudgeTaskGroups(board.taskGroups, origin, nudged);
+
+    assertEquals(
+        describe(baselineBoard, baselineNudging(baselineBoard)), describe(board, nudged));
+    assertTrue(nudged.contains(first));
+    assertTrue(nudged.contains(second));
+    TaskGraphic lowestOfFirst = first.getTasks().get(3).getTaskGraphic();
+    TaskGraphic topOfSecond = second.getTasks().get(0).getTaskGraphic();
+    assertTrue(lowestOfFirst.touchAreaIntersects(topOfSecond));
+    List<Task> results = new ArrayList<>();
+    taskGrid.query(topOfSecond, results);
+    assertTrue(results.contains(first.getTasks().get(3)));
+    assertTrue(results.contains(second.getTasks().get(0)));
+  }
+
+  private static Board emptyBoard() {
+    Board board = new Board(0);
+    board.tasks.clear();
+    board.taskGroups.clear();
+    board.allTasks.clear();
+    return board;
+  }
+
+  // A group of new tasks at the given {urgency, importance} ratings, 60 wide
+  private static TaskGroup group(Board board, int[][] ratings) {
+    TaskGroup taskGroup = new TaskGroup();
+    for (int[] rating : ratings) {
+      long id = board.allTasks.size() + 1;
+      Task task = new Task(id, "Task " + id, rating[0], rating[1], false);
+      task.setTaskGraphic(new TaskGraphic());
+      layOut(task.getTaskGraphic(), rating[0], rating[1], 60);
+      board.allTasks.add(task);
+      taskGroup.addTask(task);
+    }
+    groupLayout.layOut(taskGroup);
+    board.taskGroups.add(taskGroup);
+    return taskGroup;
+  }
+}
@@ -0,0 +1,153 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+// TaskPriorityIndex against sorting the incomplete tasks, through random adds, edits, checks and
+// removals
+public class TaskPriorityIndexTest {
+
+  // The index's order: higher score, then more important, then lower ID
+  private static Comparator<Task> order(TaskPriorityIndex.Score score) {
+    return (Task a, Task b) -> {
+      int scoreA = score.score(a.getUrgency(), a.getImportance());
+      int scoreB = score.score(b.getUrgency(), b.getImportance());
+      if (scoreA != scoreB) {
+        return scoreA > scoreB ? -1 : 1;
+      }
+      if (a.getImportance() != b.getImportance()) {
+        return a.getImportance() > b.getImportance() ? -1 : 1;
+      }
+      return a.getID() < b.getID() ? -1 : (a.getID() == b.getID() ? 0 : 1);
+    };
+  }
+
+  private static List<Task> expectedTop(List<Task> tasks, int k, TaskPriorityIndex.Score score) {
+    List<Task> incomplete = new ArrayList<>();
+    for (Task task : tasks) {
+      if (!task.getCompleted()) {
+        incomplete.add(task);
+      }
+    }
+    Collections.sort(incomplete, order(score));
+    return incomplete.subList(0, Math.min(k, incomplete.size()));
+  }
+
+  private static Task attachedTask(TaskStore store, long id, Random random) {
+    Task task = new Task(id, "Task " + id, random.nextInt(101), random.nextInt(101), false);
+    task.attachTo(store);
+    return task;
+  }
+
+  @Test
+  public void topKMatchesASortThroughRandomChanges() {
+    Random random = new Random(7);
+    TaskStore store = new TaskStore();
+    TaskPriorityIndex index = new TaskPriorityIndex();
+    List<Task> tasks = new ArrayList<>();
+    long nextID = 1;
+    for (int step = 0; step < 5_000; step++) {
+      int action = random.nextInt(10);
+      if (action < 4 || tasks.isEmpty()) {
+        Task task = attachedTask(store, nextID++, random);
+        tasks.add(task);
+        index.update(task);
+      } else if (action < 7) {
+        Task task = tasks.get(random.nextInt(tasks.size()));
+        task.setUrgency(random.nextInt(101));
+        task.setImportance(random.nextInt(101));
+        index.update(task);
+      } else if (action < 9) {
+        Task task = tasks.get(random.nextInt(tasks.size()));
+        task.setCompleted(!task.getCompleted());
+        index.update(task);
+      } else {
+        Task task = tasks.remove(random.nextInt(tasks.size()));
+        index.remove(task); // before detaching, as the view model does
+        task.detach();
+      }
+
+      if (step % 50 == 0) {
+        List<Task> expected = expectedTop(tasks, 25, TaskPriorityIndex.defaultScore);
+        assertEquals(expected, index.topK(25));
+        assertEquals(expectedTop(tasks, Integer.MAX_VALUE, TaskPriorityIndex.defaultScore).size(),
+            index.size());
+      }
+    }
+  }
+
+  @Test
+  public void topKHandlesSmallAndOversizedRequests() {
+    Random random = new Random(3);
+    TaskStore store = new TaskStore();
+    TaskPriorityIndex index = new TaskPriorityIndex();
+    assertTrue(index.topK(5).isEmpty());
+    assertNull(index.getTop());
+
+    List<Task> tasks = new ArrayList<>();
+    for (long id = 1; id <= 10; id++) {
+      Task task = attachedTask(store, id, random);
+      tasks.add(task);
+      index.update(task);
+    }
+    assertTrue(index.topK(0).isEmpty());
+    assertEquals(expectedTop(tasks, 10, TaskPriorityIndex.defaultScore), index.topK(100));
+    assertSame(index.topK(1).get(0), index.getTop());
+  }
+
+  @Test
+  public void changingTheScoreReordersEverything() {
+    Random random = new Random(11);
+    TaskStore store = new TaskStore();
+    TaskPriorityIndex index = new TaskPriorityIndex();
+    List<Task> tasks = new ArrayList<>();
+    for (long id = 1; id <= 300; id++) {
+      Task task = attachedTask(store, id, random);
+      tasks.add(task);
+      index.update(task);
+    }
+    TaskPriorityIndex.Score urgencyFirst =
+        (int urgency, int importance) -> 3 * urgency + importance;
+    index.setScore(urgencyFirst);
+    assertEquals(expectedTop(tasks, 40, urgencyFirst), index.topK(40));
+  }
+
+  @Test
+  public void listenerHearsOnlyWhenTheTopTaskChanges() {
+    TaskStore store = new TaskStore();
+    TaskPriorityIndex index = new TaskPriorityIndex();
+    List<Task> heard = new ArrayList<>();
+    index.setOnTopTaskChangedListener(heard::add);
+
+    Task important = new Task(1, "Important", 90, 90, false);
+    important.attachTo(store);
+    Task minor = new Task(2, "Minor", 10, 10, false);
+    minor.attachTo(store);
+
+    index.update(important);
+    index.update(minor); // not the top task, so nobody is told
+    assertEquals(1, heard.size());
+    assertSame(important, heard.get(0));
+
+    important.setLabel("Important, renamed"); // same task, but what it shows changed
+    index.update(important);
+    assertEquals(2, heard.size());
+
+    important.setCompleted(true);
+    index.update(important);
+    assertSame(minor, heard.get(2));
+
+    index.remove(minor);
+    assertEquals(4, heard.size());
+    assertNull(heard.get(3));
+  }
+}
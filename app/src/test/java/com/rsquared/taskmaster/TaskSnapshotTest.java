@@ -0,0 +1,138 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Snapshots should round-trip through a file, and anything damaged should read back as null
+public class TaskSnapshotTest {
+
+  private File file;
+
+  @Before
+  public void createFile() throws IOException {
+    file = File.createTempFile("tasks", ".snapshot");
+  }
+
+  @After
+  public void deleteFile() {
+    file.delete();
+    new File(file.getPath() + ".tmp").delete();
+  }
+
+  private static List<Task> tasks() {
+    List<Task> tasks = new ArrayList<>();
+    tasks.add(new Task(1, "Water the plants", 80, 20, false));
+    tasks.add(new Task(2, "Done already", 50, 50, true));
+    tasks.add(new Task(3, "Caf\u00e9 \u2014 \u00fcber \u2713", 0, 100, false));
+    tasks.add(new Task(Long.MAX_VALUE, "", 100, 0, false));
+    return tasks;
+  }
+
+  private TaskSnapshot writeAndRead(TaskSnapshot snapshot) throws IOException {
+    snapshot.write(file);
+    return TaskSnapshot.read(file);
+  }
+
+  private void overwriteByte(long position, int value) throws IOException {
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.seek(position);
+      output.write(value);
+    }
+  }
+
+  @Test
+  public void roundTripKeepsTheIncompleteTasks() throws IOException {
+    TaskDatabaseHelper.PageKey pageKey = new TaskDatabaseHelper.PageKey(40, 60, 123);
+    TaskSnapshot snapshot = writeAndRead(TaskSnapshot.capture(tasks(), 987, pageKey, false));
+    assertNotNull(snapshot);
+    assertEquals(987, snapshot.getChangeSeq());
+    assertFalse(snapshot.getDownloadComplete());
+    assertEquals(40, snapshot.getPageKey().importance);
+    assertEquals(60, snapshot.getPageKey().urgency);
+    assertEquals(123, snapshot.getPageKey().id);
+
+    List<Task> expected = new ArrayList<>();
+    for (Task task : tasks()) {
+      if (!task.getCompleted()) {
+        expected.add(task);
+      }
+    }
+    List<Task> actual = snapshot.toTasks();
+    assertEquals(expected.size(), snapshot.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getID(), actual.get(i).getID());
+      assertEquals(expected.get(i).getLabel(), actual.get(i).getLabel());
+      assertEquals(expected.get(i).getUrgency(), actual.get(i).getUrgency());
+      assertEquals(expected.get(i).getImportance(), actual.get(i).getImportance());
+      assertFalse(actual.get(i).getCompleted());
+    }
+  }
+
+  @Test
+  public void finishedDownloadHasNoPageKey() throws IOException {
+    TaskSnapshot snapshot = writeAndRead(TaskSnapshot.capture(tasks(), 5, null, true));
+    assertNotNull(snapshot);
+    assertTrue(snapshot.getDownloadComplete());
+    assertNull(snapshot.getPageKey());
+  }
+
+  @Test
+  public void emptySnapshotRoundTrips() throws IOException {
+    TaskSnapshot snapshot = writeAndRead(TaskSnapshot.capture(new ArrayList<>(), 0, null, true));
+    assertNotNull(snapshot);
+    assertEquals(0, snapshot.size());
+  }
+
+  @Test
+  public void writingReplacesTheOldSnapshot() throws IOException {
+    TaskSnapshot.capture(tasks(), 1, null, false).write(file);
+    TaskSnapshot snapshot = writeAndRead(TaskSnapshot.capture(new ArrayList<>(), 2, null, true));
+    assertEquals(2, snapshot.getChangeSeq());
+    assertEquals(0, snapshot.size());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void missingOrEmptyFileReadsAsNull() {
+    assertNull(TaskSnapshot.read(file)); // created empty
+    file.delete();
+    assertNull(TaskSnapshot.read(file));
+  }
+
+  @Test
+  public void corruptPayloadReadsAsNull() throws IOException {
+    TaskSnapshot.capture(tasks(), 1, null, true).write(file);
+    long length = file.length();
+    overwriteByte(length - 3, 'Z'); // inside the last task's label length
+    assertNull(TaskSnapshot.read(file));
+  }
+
+  @Test
+  public void truncatedFileReadsAsNull() throws IOException {
+    TaskSnapshot.capture(tasks(), 1, null, true).write(file);
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.setLength(file.length() - 1);
+    }
+    assertNull(TaskSnapshot.read(file));
+  }
+
+  @Test
+  public void otherFormatVersionReadsAsNull() throws IOException {
+    TaskSnapshot.capture(tasks(), 1, null, true).write(file);
+    overwriteByte(7, 2); // low byte of the version, after the 4-byte magic number
+    assertNull(TaskSnapshot.read(file));
+  }
+}
@@ -0,0 +1,138 @@
+package com.rsquared.taskmaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// Tasks attached to a TaskStore should behave exactly like tasks holding their own values
+public class TaskStoreTest {
+
+  private static Task task(long id) {
+    Task task = new Task(id, "Task " + id, (int) (id % 101), (int) (id * 7 % 101), id % 2 == 0);
+    TaskGraphic graphic = new TaskGraphic();
+    graphic.setBaseline(id + 0.5f);
+    graphic.setCheckBoxStart(id + 1.5f);
+    graphic.setTextStart(id + 2.5f);
+    graphic.setTouchArea((int) id, (int) id + 1, (int) id + 2, (int) id + 3);
+    task.setTaskGraphic(graphic);
+    return task;
+  }
+
+  private static void assertSameValues(Task expected, Task actual) {
+    assertEquals(expected.getID(), actual.getID());
+    assertEquals(expected.getLabel(), actual.getLabel());
+    assertEquals(expected.getUrgency(), actual.getUrgency());
+    assertEquals(expected.getImportance(), actual.getImportance());
+    assertEquals(expected.getCompleted(), actual.getCompleted());
+    assertEquals(expected.getMoving(), actual.getMoving());
+    TaskGraphic expectedGraphic = expected.getTaskGraphic();
+    TaskGraphic actualGraphic = actual.getTaskGraphic();
+    assertEquals(expectedGraphic.getBaseline(), actualGraphic.getBaseline(), 0);
+    assertEquals(expectedGraphic.getCheckBoxStart(), actualGraphic.getCheckBoxStart(), 0);
+    assertEquals(expectedGraphic.getTextStart(), actualGraphic.getTextStart(), 0);
+    assertEquals(expectedGraphic.getTouchLeft(), actualGraphic.getTouchLeft());
+    assertEquals(expectedGraphic.getTouchTop(), actualGraphic.getTouchTop());
+    assertEquals(expectedGraphic.getTouchRight(), actualGraphic.getTouchRight());
+    assertEquals(expectedGraphic.getTouchBottom(), actualGraphic.getTouchBottom());
+  }
+
+  @Test
+  public void attachingKeepsEveryValue() {
+    TaskStore store = new TaskStore(4);
+    for (long id = 0; id < 20; id++) {
+      Task task = task(id);
+      task.attachTo(store);
+      assertTrue(task.getSlot() >= 0);
+      assertSameValues(task(id), task);
+    }
+    assertEquals(20, store.size());
+    assertTrue(store.getCapacity() >= 20);
+  }
+
+  @Test
+  public void settersWriteThroughToTheStore() {
+    TaskStore store = new TaskStore();
+    Task task = task(3);
+    task.attachTo(store);
+    task.setLabel("Renamed");
+    task.setUrgency(250); // ratings are still clamped
+    task.setImportance(-4);
+    task.setCompleted(true);
+    task.setMoving(true);
+    task.getTaskGraphic().move(10, 20);
+
+    int slot = task.getSlot();
+    assertEquals("Renamed", store.labels[slot]);
+    assertEquals(100, store.urgencies[slot]);
+    assertEquals(0, store.importances[slot]);
+    assertTrue(store.completed.get(slot));
+    assertTrue(store.moving.get(slot));
+    assertEquals(13, store.touchLefts[slot]);
+    assertEquals(24, store.touchTops[slot]);
+    assertEquals(23.5f, store.baselines[slot], 0);
+  }
+
+  @Test
+  public void detachingCopiesTheValuesBackOut() {
+    TaskStore store = new TaskStore();
+    Task task = task(8);
+    task.attachTo(store);
+    TaskGraphic storeGraphic = task.getTaskGraphic();
+    task.setLabel("Kept");
+    task.detach();
+
+    assertEquals(-1, task.getSlot());
+    assertEquals(0, store.size());
+    assertNotSame(storeGraphic, task.getTaskGraphic());
+    assertEquals("Kept", task.getLabel());
+    Task expected = task(8);
+    expected.setLabel("Kept");
+    assertSameValues(expected, task);
+  }
+
+  @Test
+  public void freedSlotsAreReusedAndCleared() {
+    TaskStore store = new TaskStore(8);
+    List<Task> tasks = new ArrayList<>();
+    for (long id = 0; id < 8; id++) {
+      Task task = task(id);
+      task.setMoving(true);
+      task.attachTo(store);
+      tasks.add(task);
+    }
+    int freedSlot = tasks.get(2).getSlot();
+    tasks.get(2).detach();
+    assertEquals(null, store.labels[freedSlot]);
+    assertFalse(store.completed.get(freedSlot));
+    assertFalse(store.moving.get(freedSlot));
+
+    Task newcomer = task(99);
+    newcomer.attachTo(store);
+    assertEquals(freedSlot, newcomer.getSlot());
+    assertEquals(8, store.getCapacity()); // no growth needed
+    assertSameValues(task(99), newcomer);
+  }
+
+  @Test
+  public void growingKeepsAttachedTasksIntact() {
+    TaskStore store = new TaskStore(2);
+    List<Task> tasks = new ArrayList<>();
+    for (long id = 0; id < 1_000; id++) {
+      Task task = task(id);
+      task.attachTo(store);
+      tasks.add(task);
+      if (id % 5 == 0) {
+        tasks.remove(0).detach();
+      }
+    }
+    assertEquals(tasks.size(), store.size());
+    for (Task task : tasks) {
+      assertSameValues(task(task.getID()), task);
+    }
+  }
+}